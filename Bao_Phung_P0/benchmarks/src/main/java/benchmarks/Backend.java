@@ -0,0 +1,33 @@
+package benchmarks;
+
+import daos.UserDAO;
+import daos.UserDAOImpl;
+import daos.UserDAOMemoryImpl;
+
+/**
+ * The DAO backends the service benchmarks can run against, chosen with -p backend=... <br>
+ * MEMORY needs nothing but the JVM, so it measures the services themselves; ORACLE goes through JDBC, so it needs the database (and its properties files).
+ * @author baoph
+ *
+ */
+public enum Backend {
+	MEMORY {
+		@Override
+		public UserDAO createUserDAO(int key) {
+			return new UserDAOMemoryImpl(key);
+		}
+	},
+	ORACLE {
+		@Override
+		public UserDAO createUserDAO(int key) {
+			return new UserDAOImpl(key);
+		}
+	};
+
+	/**
+	 * Create a fresh User DAO of this backend.
+	 * @param key : the cipher key for passwords
+	 * @return UserDAO: the User DAO
+	 */
+	public abstract UserDAO createUserDAO(int key);
+}
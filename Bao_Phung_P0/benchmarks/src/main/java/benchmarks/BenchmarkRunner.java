@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, taking the same command line options as JMH itself. <br>
+ * Unless told otherwise (-rf and -rff), the results are also written as JSON to jmh-result-<version>.json,
+ * so the results of one release can be compared against the next.
+ * @author baoph
+ *
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Run the benchmarks.
+	 * @param args : JMH command line options (for example, "UserServicesBenchmark -p backend=ORACLE"; -h lists them all)
+	 */
+	public static void main(String[] args) throws RunnerException, IOException {
+		CommandLineOptions options;
+		try {
+			options = new CommandLineOptions(args);
+		}
+		catch(CommandLineOptionException e) {
+			System.out.println("Error, " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		if(options.shouldHelp() || options.shouldList() || options.shouldListWithParams() || options.shouldListProfilers() || options.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+		if(!options.getResultFormat().hasValue())
+			builder.resultFormat(ResultFormatType.JSON);
+		if(!options.getResult().hasValue())
+			builder.result("jmh-result-" + getVersion() + ".json");
+		new Runner(builder.build()).run();
+	}
+
+	/**
+	 * Simply return the version of the benchmarks (which is the version of the application they measure).
+	 */
+	private static String getVersion() {
+		String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+		return (version == null ? "dev" : version);
+	}
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ciphers.PasswordMasker;
+
+/**
+ * Measures encoding and decoding a password with the PasswordMasker, for passwords of a few lengths.
+ * @author baoph
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherBenchmark {
+
+	@Param({"8", "16", "64"})
+	public int length;
+
+	private PasswordMasker masker;
+	private String password, encoded;
+
+	@Setup
+	public void setUp() {
+		masker = new PasswordMasker(17);
+
+		// A password made of the characters people actually use
+		String characters = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+		StringBuilder builder = new StringBuilder(length);
+		for(int i = 0; i < length; i++)
+			builder.append(characters.charAt((i * 31 + 7) % characters.length()));
+		password = builder.toString();
+		encoded = masker.encode(password);
+	}
+
+	@Benchmark
+	public String encode() {
+		return masker.encode(password);
+	}
+
+	@Benchmark
+	public String decode() {
+		return masker.decode(encoded);
+	}
+
+	@Benchmark
+	public boolean matches() {
+		return masker.matches(password, encoded);
+	}
+}
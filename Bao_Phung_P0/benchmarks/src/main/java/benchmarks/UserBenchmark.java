@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import entities.Account;
+import entities.Transaction;
+import entities.TransactionType;
+import entities.User;
+import exceptions.NoSuchBankExistsException;
+
+/**
+ * Measures reading a User that is already loaded: looking up an account by name, and listing the accounts and the recent transactions.
+ * @author baoph
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserBenchmark {
+
+	@Param({"1", "10", "100"})
+	public int accounts;
+
+	private User user;
+	private String accountName;
+
+	@Setup
+	public void setUp() {
+		user = new User(1, "Bench Mark", "benchmark", "password1");
+		for(int i = 0; i < accounts; i++)
+			user.addAccount(new Account(i + 1, "Account " + i, 100000));
+		for(int i = 0; i < User.RECENT_TRANSACTIONS; i++)
+			user.addTransaction(new Transaction(i + 1, TransactionType.DEPOSIT, 1, "Account 0", 100, 100000 + 100 * i, i));
+
+		// Look up the last account, with different case than it was created with
+		accountName = "ACCOUNT " + (accounts - 1);
+	}
+
+	@Benchmark
+	public Account getAccount() throws NoSuchBankExistsException {
+		return user.getAccount(accountName);
+	}
+
+	@Benchmark
+	public List<Account> getAllAccounts() {
+		return user.getAllAccounts();
+	}
+
+	@Benchmark
+	public List<Transaction> getAllRecentTransactions() {
+		return user.getAllRecentTransactions();
+	}
+}
@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import daos.UserDAO;
+import entities.Account;
+import entities.User;
+import exceptions.InvalidPasswordException;
+import exceptions.InvalidWithdrawException;
+import exceptions.NoSuchBankExistsException;
+import exceptions.NoSuchUserExistsException;
+import exceptions.SameUsernameException;
+import services.UserServices;
+import services.UserServicesImpl;
+
+/**
+ * Measures the service layer: depositing, withdrawing, and opening bank accounts, on top of a pluggable DAO backend (see Backend). <br>
+ * The services print a confirmation for every operation, so the console is silenced while the benchmarks run.
+ * @author baoph
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserServicesBenchmark {
+
+	// Every user gets at most this many bank accounts, so opening one always costs about the same
+	private static final int ACCOUNTS_PER_USER = 16;
+
+	@Param({"MEMORY"})
+	public Backend backend;
+
+	private UserDAO users;
+	private UserServices services;
+	private User user, registeringUser;
+	private int registeredUsers = 0, registeredAccounts = 0;
+	private PrintStream console;
+
+	@Setup
+	public void setUp() throws InvalidPasswordException, NoSuchUserExistsException, SameUsernameException {
+		console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+
+		users = backend.createUserDAO(17);
+		services = new UserServicesImpl(users);
+		user = newUser();
+		services.registerBankAccount(user, new Account("Checking", Long.MAX_VALUE / 2));
+		registeringUser = newUser();
+	}
+
+	/**
+	 * Start every iteration with an empty transaction history, so it doesn't keep growing across iterations.
+	 */
+	@Setup(Level.Iteration)
+	public void clearTransactions() {
+		users.deleteUserTransactions(user.getId());
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(console);
+	}
+
+	/**
+	 * Register (and load) a brand new user.
+	 */
+	private User newUser() throws InvalidPasswordException, NoSuchUserExistsException {
+		String username = "bench" + System.nanoTime() + "x" + (registeredUsers++);
+		services.registerUser(new User("Bench Mark", username, "password1"));
+		return services.getUserByUsername(username);
+	}
+
+	@Benchmark
+	public User deposit() throws NoSuchBankExistsException {
+		return services.deposit(user, "Checking", 100);
+	}
+
+	@Benchmark
+	public User withdraw() throws NoSuchBankExistsException, InvalidWithdrawException {
+		return services.withdraw(user, "Checking", 100);
+	}
+
+	@Benchmark
+	public User registerBankAccount() throws SameUsernameException, InvalidPasswordException, NoSuchUserExistsException {
+		if(registeringUser.getNumBankAccounts() == ACCOUNTS_PER_USER)
+			registeringUser = newUser();
+		return services.registerBankAccount(registeringUser, new Account("Savings " + (registeredAccounts++), 0));
+	}
+}
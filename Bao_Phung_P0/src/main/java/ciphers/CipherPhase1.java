@@ -27,36 +27,9 @@ public class CipherPhase1 implements InterfaceCipher{
 		// First, create a new array of chars of equivalent length 
 		char[] newString = new char[password.length()];
 		
-		// Iterate through the entire string
-		for(int i = 0; i < password.length(); i++) {
-			
-			// If the character is uppercase, then the code will be between 36 and 61
-			if(Character.isUpperCase(password.charAt(i))) {
-				// first, get the number code as if this were a lowercase, and then increment it by (36 + key)
-				int normalCode = getCodeFromChar(Character.toLowerCase(password.charAt(i))) + 36 + key;	
-				
-				// second, make sure the number code remains within 0-25 w/o altering the variable
-				// to do this, the parameter is (normalCode - 36) % 26
-				// (normalCode - 36) undoes the + 36 from the declaration of normalCode
-				// % 26 forces the result of above to remain within the range [0, 25], which is the range of lowercase alphabets
-				char normalChar = getCharFromCode((normalCode - 36) % 26);								
-				
-				// Finally, uppercase the above variable and send it to newString[i]
-				newString[i] = Character.toUpperCase(normalChar);
-			}
-			// Otherwise, the character is either lowercase letter or a number
-			else {
-				// Translate the character to code and then increment the code by the key (shift factor is key)
-				int code = getCodeFromChar(password.charAt(i)) + key;
-				
-				// Afterwards, modulo the result by 36 to force it within [0, 35]
-				code %= 36;
-				
-				// Finally, translate the new code to get a new character, and then add it to newString
-				newString[i] = getCharFromCode(code);
-			}
-			
-		}
+		// Iterate through the entire string, encoding one character at a time
+		for(int i = 0; i < password.length(); i++)
+			newString[i] = encodeChar(password.charAt(i));
 		
 		// Return the String version!
 		return new String(newString);
@@ -72,42 +45,84 @@ public class CipherPhase1 implements InterfaceCipher{
 		// First, create a new array of chars of equivalent length 
 		char[] newString = new char[password.length()];
 		
-		// Iterate through the entire string
-		for(int i = 0; i < password.length(); i++) {
-			// If the character is uppercase, then the code will be between 36 and 61
-			if(Character.isUpperCase(password.charAt(i))) {
-				// first, get the number code as if this were a lowercase, and then shift left by the key factor 
-				int code = getCodeFromChar(Character.toLowerCase(password.charAt(i))) - key;	
-				
-				// second, make sure the number code remains within 0-25.  Since we are subtracting, increment the code by 26 if the code is below 0
-				if(code < 0)
-					code += 26;
-				
-				// third, get the new character from the code, but then make sure to uppercase the result
-				char newChar = Character.toUpperCase(getCharFromCode(code));								
-				
-				// Finally, add the new character to our new string
-				newString[i] = newChar;
-			}
-			// Otherwise, the character is either lowercase letter or number
-			// The only difference between this version and the encode version is that we subtract by the key instead of adding
-			else {
-				// Get the new code; for decode, we are subtracting by the key instead of adding
-				int code = getCodeFromChar(password.charAt(i)) - key;
-				
-				// If the key becomes negative, increment it by 36
-				if(code < 0)
-					code += 36;
-				
-				// Finally, get the new character from the code and then add it to our new string
-				newString[i] = getCharFromCode(code);
-			}
-		}
+		// Iterate through the entire string, decoding one character at a time
+		for(int i = 0; i < password.length(); i++)
+			newString[i] = decodeChar(password.charAt(i));
 		
 		// Return the String version!
 		return new String(newString);
 	}
 	
+	/**
+	 * Encode a single character of a password; encode() simply does this for every character. <br>
+	 * Letters are shifted by the key within the alphabet (keeping their case), and everything else is shifted within [a-z0-9].
+	 * @param c : a character of the password
+	 * @return char: the encoded character
+	 */
+	char encodeChar(char c) {
+		// If the character is uppercase, then the code will be between 36 and 61
+		if(Character.isUpperCase(c)) {
+			// first, get the number code as if this were a lowercase, and then increment it by (36 + key)
+			int normalCode = getCodeFromChar(Character.toLowerCase(c)) + 36 + key;
+
+			// second, make sure the number code remains within 0-25 w/o altering the variable
+			// to do this, the parameter is (normalCode - 36) % 26
+			// (normalCode - 36) undoes the + 36 from the declaration of normalCode
+			// % 26 forces the result of above to remain within the range [0, 25], which is the range of lowercase alphabets
+			char normalChar = getCharFromCode((normalCode - 36) % 26);
+
+			// Finally, uppercase the above variable and return it
+			return Character.toUpperCase(normalChar);
+		}
+		// Otherwise, the character is either lowercase letter or a number
+		else {
+			// Translate the character to code and then increment the code by the key (shift factor is key)
+			int code = getCodeFromChar(c) + key;
+
+			// Afterwards, modulo the result by 36 to force it within [0, 35]
+			code %= 36;
+
+			// Finally, translate the new code to get a new character, and return it
+			return getCharFromCode(code);
+		}
+	}
+	
+	/**
+	 * Decode a single character of an encoded password; decode() simply does this for every character.
+	 * @param c : a character of the encoded password
+	 * @return char: the decoded character
+	 */
+	char decodeChar(char c) {
+		// If the character is uppercase, then the code will be between 36 and 61
+		if(Character.isUpperCase(c)) {
+			// first, get the number code as if this were a lowercase, and then shift left by the key factor
+			int code = getCodeFromChar(Character.toLowerCase(c)) - key;
+
+			// second, make sure the number code remains within 0-25.  Since we are subtracting, increment the code by 26 if the code is below 0
+			if(code < 0)
+				code += 26;
+
+			// third, get the new character from the code, but then make sure to uppercase the result
+			char newChar = Character.toUpperCase(getCharFromCode(code));
+
+			// Finally, return the new character
+			return newChar;
+		}
+		// Otherwise, the character is either lowercase letter or number
+		// The only difference between this version and the encode version is that we subtract by the key instead of adding
+		else {
+			// Get the new code; for decode, we are subtracting by the key instead of adding
+			int code = getCodeFromChar(c) - key;
+
+			// If the key becomes negative, increment it by 36
+			if(code < 0)
+				code += 36;
+
+			// Finally, get the new character from the code and return it
+			return getCharFromCode(code);
+		}
+	}
+	
 	/**
 	 * Takes in a single character and then converts it into an int code.  <br>
 	 * This will be used in conjunction with getCharFromCode => essentially a composite function. 
@@ -108,7 +108,7 @@ public class CipherPhase2 implements InterfaceCipher{
 	 * @param c : a single character
 	 * @return char: a transposed version of the input character
 	 */
-	private char transpose(char c) {
+	char transpose(char c) {
 		switch(c) {
 			case 'a': return '9';
 			case 'b': return '8';
@@ -1,23 +1,47 @@
 package ciphers;
 
 /**
- * This class combines both ciphers implemented within this package
- * 
+ * This class combines both ciphers implemented within this package <br>
+ * Both ciphers work one character at a time, so for each key, what CipherPhase2(CipherPhase1(c)) turns every possible character into
+ * (and back) is worked out once and kept in a table.  Encoding and decoding then take a single pass over the password, with one table lookup per character.
  * @author baoph
  *
  */
 public class PasswordMasker {
-	private static CipherPhase1 caesar;
-	private static CipherPhase2 atBash;
-	
+	// Each masker keeps its own key (and tables); the tables themselves are built once per key and shared.
+	private final CipherPhase1 caesar;
+	private final CipherPhase2 atBash;
+	private final Tables tables;
+	private static final Tables[] tablesByKey = new Tables[31];
+
+	/**
+	 * What every character encodes to and decodes to, for a single key. <br>
+	 * Encoding is only exactly reversible for [a-zA-Z0-9] (every other character encodes to one of those too), so those are also kept in an exact inverse.
+	 */
+	private static final class Tables {
+		final char[] encode = new char[Character.MAX_VALUE + 1];
+		final char[] decode = new char[Character.MAX_VALUE + 1];
+		final char[] inverse = new char[128];
+
+		Tables(CipherPhase1 caesar, CipherPhase2 atBash) {
+			for(int c = 0; c <= Character.MAX_VALUE; c++) {
+				encode[c] = atBash.transpose(caesar.encodeChar((char) c));
+				decode[c] = caesar.decodeChar(atBash.transpose((char) c));
+				if(c < 128 && Character.isLetterOrDigit(c))
+					inverse[encode[c]] = (char) c;
+			}
+		}
+	}
+
 	/**
 	 * Creates an instance of the PasswordMasker with both cipher methods activated.
 	 */
 	public PasswordMasker() {
 		caesar = new CipherPhase1((int)(Math.random() * 21 + 10));	// key is within [10, 30]
 		atBash = new CipherPhase2();
+		tables = getTables(caesar, atBash);
 	}
-	
+
 	/**
 	 * Creates an instance of the PasswordMasker with both cipher methods activated. <br>
 	 * In addition, a specific key will be used for one of the ciphers. <br>
@@ -30,8 +54,18 @@ public class PasswordMasker {
 		else
 			caesar = new CipherPhase1(key);								// key is specified
 		atBash = new CipherPhase2();
+		tables = getTables(caesar, atBash);
 	}
-	
+
+	/**
+	 * Return the tables for the given key, building them the first time the key is used.
+	 */
+	private static synchronized Tables getTables(CipherPhase1 caesar, CipherPhase2 atBash) {
+		if(tablesByKey[caesar.key] == null)
+			tablesByKey[caesar.key] = new Tables(caesar, atBash);
+		return tablesByKey[caesar.key];
+	}
+
 	/**
 	 * A method that returns the key used for Caesar encryption. <br>
 	 * Only use this if we're loading this application and need to restore it to its previous state.
@@ -40,23 +74,92 @@ public class PasswordMasker {
 	public int getKey() {
 		return caesar.key;
 	}
-	
+
 	/**
-	 * To encode the password, the result is a composite: CipherPhase2.encode(CipherPhase1.encode(password)) => (encode) C1 * C2 
+	 * Return the length of an encoded password: every character, plus a space between every group of 5.
+	 */
+	private static int encodedLength(int length) {
+		return (length == 0 ? 0 : length + (length - 1) / 5);
+	}
+
+	/**
+	 * To encode the password, the result is a composite: CipherPhase2.encode(CipherPhase1.encode(password)) => (encode) C1 * C2 <br>
+	 * Both phases (and the spaces) are done in a single pass, straight into the result.
 	 * @param password : a password
 	 * @return String : an encoded version of the password
 	 */
 	public String encode(String password) {
-		return atBash.encode(caesar.encode(password));
+		char[] table = tables.encode;
+		char[] encoded = new char[encodedLength(password.length())];
+		for(int i = 0, j = 0; i < password.length(); i++) {
+			// Add a space before every group of 5 characters but the first
+			if(i > 0 && i % 5 == 0)
+				encoded[j++] = ' ';
+			encoded[j++] = table[password.charAt(i)];
+		}
+		return new String(encoded);
 	}
-	
+
 	/**
-	 * To decode the password, the result is a composite: CipherPhase1.decode(CipherPhase2.decode(password)) => (decode) C2 * C1
+	 * To decode the password, the result is a composite: CipherPhase1.decode(CipherPhase2.decode(password)) => (decode) C2 * C1 <br>
+	 * Both phases are done in a single pass, simply skipping the spaces.
 	 * @param password : an encrypted password
 	 * @return String: a decrypted version of the encrypted password
 	 */
 	public String decode(String password) {
-		return caesar.decode(atBash.decode(password));
+		char[] table = tables.decode;
+		char[] decoded = new char[password.length()];
+		int j = 0;
+		for(int i = 0; i < password.length(); i++) {
+			char c = password.charAt(i);
+			if(c != ' ')
+				decoded[j++] = table[c];
+		}
+		return new String(decoded, 0, j);
+	}
+
+	/**
+	 * Check whether a password encodes to the given encoded password, without building the encoded version (nothing is allocated). <br>
+	 * This gives the same answer as encode(password).equals(encoded), so it can be used to check a login against a stored password.
+	 * @param password : a password
+	 * @param encoded : an encoded password
+	 * @return Boolean: True if the password encodes to exactly the encoded password, False otherwise
+	 */
+	public boolean matches(String password, String encoded) {
+		if(password == null || encoded == null || encoded.length() != encodedLength(password.length()))
+			return false;
+
+		char[] table = tables.encode;
+		for(int i = 0, j = 0; i < password.length(); i++) {
+			if(i > 0 && i % 5 == 0 && encoded.charAt(j++) != ' ')
+				return false;
+			if(encoded.charAt(j++) != table[password.charAt(i)])
+				return false;
+		}
+		return true;
 	}
-	
+
+	/**
+	 * Re-encode a password encoded with this masker's key into what the other masker encodes the same password to, in a single pass. <br>
+	 * This is only exact for passwords made of [a-zA-Z0-9]: any other character encodes to the same thing as one of those,
+	 * so the result is what that character would have encoded to instead.
+	 * @param encoded : a password encoded with this masker's key
+	 * @param to : the masker with the new key
+	 * @return String: the password encoded with the new key, or NULL if the encoded password isn't something this masker could have encoded
+	 */
+	public String rekey(String encoded, PasswordMasker to) {
+		char[] inverse = tables.inverse, table = to.tables.encode;
+		char[] rekeyed = new char[encoded.length()];
+		for(int i = 0; i < encoded.length(); i++) {
+			char c = encoded.charAt(i);
+			if(c == ' ' && i % 6 == 5)
+				rekeyed[i] = ' ';
+			else if(c < 128 && inverse[c] != 0)
+				rekeyed[i] = table[inverse[c]];
+			else
+				return null;
+		}
+		return new String(rekeyed);
+	}
+
 }
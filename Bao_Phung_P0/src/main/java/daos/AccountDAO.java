@@ -9,14 +9,19 @@ public interface AccountDAO {
 	
 	// Create
 	boolean createAccount(int id, Account account);
+	boolean createAccountWithTransaction(int id, Account account);
+	long reserveTransactionId();
 	
 	// Read/get
 	List<Account> getAllAccounts(int id);
 	Account getAccount(int id, String accountName);
 	
 	// Update
-	void updateAccount(int id, Account account);
+	boolean updateAccount(int id, Account account);
+	boolean updateAccountWithTransaction(int id, Account account, int mode, long balance);
+	// Exactly once per transaction id: TRUE if deposited (now or before), FALSE if the account is gone, NULL if the query failed
+	Boolean depositOnce(int id, int accountId, long transactionId, long balance);
 	
 	// Delete
-	boolean deleteAccount(int id, String accountName);
+	boolean deleteAccount(int id, int accountId);
 }
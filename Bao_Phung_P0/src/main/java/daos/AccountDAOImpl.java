@@ -1,45 +1,77 @@
 package daos;
 
+import java.math.BigDecimal;
 import java.sql.CallableStatement;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
 
 import entities.Account;
+import entities.TransactionType;
 import entities.User;
 import util.DBConnection;
+import util.Metrics;
+import util.Money;
 
 public class AccountDAOImpl implements AccountDAO{
 	
+	// When set, the Transactions that go along with account changes are queued on it instead of being inserted in the same round trip.
+	private final TransactionDAOWriteBehindImpl ledger;
+	
+	/**
+	 * Creates the Account table, recording every Transaction in the same round trip as the change itself.
+	 */
+	public AccountDAOImpl() {
+		this(null);
+	}
+	
+	/**
+	 * Creates the Account table, queueing every Transaction on a write-behind Transaction table.
+	 * @param ledger : the write-behind Transaction table, or NULL to record every Transaction in the same round trip as the change
+	 */
+	public AccountDAOImpl(TransactionDAOWriteBehindImpl ledger) {
+		this.ledger = ledger;
+	}
+	
 	// Create
 	/**
-	 * Given a user id and a new Account (only caring about the name and the balance), <br>
-	 * Add it to the database.
+	 * Add a new Account for the given user. <br>
+	 * The Account's id comes from a block of bank_account_id_generator ids reserved ahead of time, so it is known without asking the database.
 	 * @param id : the user id
-	 * @param Account : the Account object
+	 * @param Account : the Account object; on success, its id is set to the generated one
 	 * @return Boolean: True if we successfully added the Account to the database, False otherwise
 	 */
 	public boolean createAccount(int id, Account account) {
 		// Add a new entry onto the Accounts table with the following values:
 		// Account name, Account balance, User id.
 		try {
-			// Call the INSERT INTO statement and set the 3 fields appropriately
-			String SQLStatement = "INSERT INTO Accounts VALUES (bank_account_id_generator.nextval, ?, ?, ?)";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(SQLStatement);
-			cs.setString(1, account.getName());
-			cs.setDouble(2, account.getBalance());
-			cs.setInt(3, id);
-			
-			// After setting the fields, execute and then close the statement.
-			cs.execute();
-			cs.close();
+			// The id is taken from a block reserved ahead of time, before the connection is borrowed.
+			int accountId = (int) DBConnection.nextId(DBConnection.ACCOUNT_ID_SEQUENCE);
+			try(Connection connection = DBConnection.getConnection()) {
+				// Call the INSERT INTO statement and set the 4 fields appropriately (the version starts at the column's default of 0)
+				String SQLStatement = "INSERT INTO Accounts (a_id, account_name, balance, u_id) VALUES (?, ?, ?, ?)";
+				PreparedStatement ps = connection.prepareStatement(SQLStatement);
+				ps.setInt(1, accountId);
+				ps.setString(2, account.getName());
+				ps.setBigDecimal(3, Money.toBigDecimal(account.getBalance()));
+				ps.setInt(4, id);
+				
+				// After setting the fields, execute and then close the statement.
+				ps.executeUpdate();
+				ps.close();
+			}
+			account.setId(accountId);
+			account.setVersion(0);
 						
 			// Finally, return true
 			return true;
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println("Error, something happened while attemping to insert");
 			System.out.println(e.getMessage());
 			
@@ -48,6 +80,53 @@ public class AccountDAOImpl implements AccountDAO{
 		}
 	}
 	
+	/**
+	 * Add a new Account for the given user AND record its creation as a Transaction, all in a single round trip. <br>
+	 * Both ids come from blocks reserved ahead of time, so the database doesn't have to hand anything back. <br>
+	 * Both inserts run inside one anonymous PL/SQL block, so the Account never exists without its Transaction (or the other way around).
+	 * @param id : the user id
+	 * @param account : the Account object; on success, its id is set to the generated one
+	 * @return Boolean: True if we successfully added the Account to the database, False otherwise
+	 */
+	public boolean createAccountWithTransaction(int id, Account account) {
+		// With a write-behind ledger, only the Account is inserted here; its Transaction is queued.
+		if(ledger != null)
+			return createAccount(id, account) && ledger.createTransaction(id, account);
+		
+		try {
+			// Both ids are taken from blocks reserved ahead of time, before the connection is borrowed.
+			int accountId = (int) DBConnection.nextId(DBConnection.ACCOUNT_ID_SEQUENCE);
+			long transactionId = DBConnection.nextId(DBConnection.TRANSACTION_ID_SEQUENCE);
+			try(Connection connection = DBConnection.getConnection()) {
+				String SQLStatement = "DECLARE v_id Accounts.a_id%TYPE := ?; v_name Accounts.account_name%TYPE := ?; v_balance Accounts.balance%TYPE := ?; "
+						+ "v_u_id Accounts.u_id%TYPE := ?; BEGIN "
+						+ "INSERT INTO Accounts (a_id, account_name, balance, u_id) VALUES (v_id, v_name, v_balance, v_u_id); "
+						+ "INSERT INTO Transactions (t_id, t_type, a_id, account_name, amount, balance_after, u_id, created_at) "
+						+ "VALUES (?, '" + TransactionType.CREATE.name() + "', v_id, v_name, v_balance, v_balance, v_u_id, SYSTIMESTAMP); "
+						+ "END;";
+				CallableStatement cs = connection.prepareCall(SQLStatement);
+				cs.setInt(1, accountId);
+				cs.setString(2, account.getName());
+				cs.setBigDecimal(3, Money.toBigDecimal(account.getBalance()));
+				cs.setInt(4, id);
+				cs.setLong(5, transactionId);
+				
+				// Execute it
+				cs.execute();
+				cs.close();
+			}
+			account.setId(accountId);
+			account.setVersion(0);
+			return true;
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println("Error, something happened while attemping to insert");
+			System.out.println(e.getMessage());
+			return false;
+		}
+	}
+	
 	// Read/get
 	/**
 	 * Get all queried results onto a list.
@@ -59,22 +138,23 @@ public class AccountDAOImpl implements AccountDAO{
 		
 		List<Account> accountsList = new ArrayList<Account>();
 		
-		try {
+		try(Connection connection = DBConnection.getConnection()) {
 			// First, query for all Accounts that belong to the User.
-			String SQLStatement = "SELECT A.a_id, A.account_name, A.balance FROM Accounts A INNER JOIN Users U on A.u_id = U.u_id AND A.u_id = ?";
-			PreparedStatement ps = DBConnection.getConnection().prepareStatement(SQLStatement);
+			String SQLStatement = "SELECT A.a_id, A.account_name, A.balance, A.version FROM Accounts A INNER JOIN Users U on A.u_id = U.u_id AND A.u_id = ? ORDER BY A.a_id";
+			PreparedStatement ps = connection.prepareStatement(SQLStatement);
 			ps.setInt(1, id);
 			ResultSet rs = ps.executeQuery();
 			
 			// Second, place every single Account onto the List
 			while(rs.next()) 
-				accountsList.add(new Account(rs.getInt(1), rs.getString(2), rs.getDouble(3)));
+				accountsList.add(new Account(rs.getInt(1), rs.getString(2), Money.fromBigDecimal(rs.getBigDecimal(3)), rs.getInt(4)));
 			
 			// Safely close the statements.
 			rs.close();
 			ps.close();
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 		}
 		
 		// No matter what happens with the query, return the list.
@@ -82,25 +162,31 @@ public class AccountDAOImpl implements AccountDAO{
 	}
 	
 	/**
-	 * Retrieve a single user given the user id and the name of the account.
+	 * Retrieve a single account given the user id and the name of the account (ignoring case).
 	 * @throws SQLException if the query fails (i.e there exists no user with the given id and account name).
 	 * @return Account: the account associated with the user id and the account name.
 	 */
 	public Account getAccount(int id, String accountName) {
-		try {
+		try(Connection connection = DBConnection.getConnection()) {
 			// First, query for the specific Account by specifying the user id and the account name
-			String SQLStatement = "SELECT * FROM Accounts WHERE u_id = ? AND LOWER(account_name) = ?";
-			PreparedStatement ps = DBConnection.getConnection().prepareStatement(SQLStatement);
+			String SQLStatement = "SELECT a_id, account_name, balance, version FROM Accounts WHERE u_id = ? AND LOWER(account_name) = ?";
+			PreparedStatement ps = connection.prepareStatement(SQLStatement);
 			ps.setInt(1, id);
 			ps.setString(2, accountName.toLowerCase());
 			ResultSet rs = ps.executeQuery();
 			
 			// If there is a result, then return a brand new Account
+			Account account = null;
 			if(rs.next())
-				return new Account(id, accountName, rs.getInt(3));
+				account = new Account(rs.getInt(1), rs.getString(2), Money.fromBigDecimal(rs.getBigDecimal(3)), rs.getInt(4));
 			
+			// Safely close the statements
+			rs.close();
+			ps.close();
+			return account;
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println("Error, something happened with the query\n" + e.getMessage());
 		}
 		return null;
@@ -108,51 +194,309 @@ public class AccountDAOImpl implements AccountDAO{
 	
 	// Update
 	/**
-	 * Simply update the given Account with the appropriate user id.
+	 * Overwrite the given Account's balance, but only if nobody else changed the Account since it was read (optimistic locking). <br>
+	 * The row is found by its primary key (the Account's id); the user id only makes sure the Account belongs to that user. <br>
+	 * On success, the Account's version is bumped to match the database.
+	 * @param id : the user id
+	 * @param account : the Account object containing the new balance and the version it was read at
+	 * @return Boolean: True if the balance was written, False if the Account changed in the meantime (or doesn't exist)
 	 */
-	public void updateAccount(int id, Account account) {
-		try {
-			// Call the update query
-			String SQLStatement = "UPDATE Accounts SET balance = ? WHERE u_id = ? AND LOWER(account_name) = ?";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(SQLStatement);
-			cs.setDouble(1, account.getBalance());
-			cs.setInt(2, id);
-			cs.setString(3, account.getName().toLowerCase());
+	public boolean updateAccount(int id, Account account) {
+		try(Connection connection = DBConnection.getConnection()) {
+			// Call the update query; it only matches the row if the version is still the one we read
+			String SQLStatement = "UPDATE Accounts SET balance = ?, version = version + 1 WHERE a_id = ? AND u_id = ? AND version = ?";
+			PreparedStatement ps = connection.prepareStatement(SQLStatement);
+			ps.setBigDecimal(1, Money.toBigDecimal(account.getBalance()));
+			ps.setInt(2, account.getId());
+			ps.setInt(3, id);
+			ps.setInt(4, account.getVersion());
 			
 			// And execute it
+			boolean updated = (ps.executeUpdate() == 1);
+			ps.close();
+			if(updated)
+				account.setVersion(account.getVersion() + 1);
+			return updated;
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println("Error, something went wrong with the UPDATE query");
+			System.out.println(e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Deposit to or withdraw from the given Account AND record the transaction, all in a single round trip. <br>
+	 * The balance is changed by the database itself (balance = balance + delta), so concurrent deposits/withdraws never overwrite each other. <br>
+	 * A withdraw only goes through if the Account still holds at least the amount being withdrawn. <br>
+	 * The row is found by its primary key (the Account's id); the user id only makes sure the Account belongs to that user. <br>
+	 * Both writes run inside one anonymous PL/SQL block, so they are committed together (exactly once) or not at all. <br>
+	 * With a write-behind ledger, only the UPDATE runs here and the Transaction is queued instead.
+	 * @param id : the user id
+	 * @param account : the Account to change; on success, its balance and version are updated to what the database now stores
+	 * @param mode : 0 for deposit, 1 for withdraw
+	 * @param balance : the balance (in cents) that is either deposited or withdrawn
+	 * @return Boolean: True if the balance changed, False if the Account doesn't exist or doesn't hold enough money to withdraw
+	 */
+	public boolean updateAccountWithTransaction(int id, Account account, int mode, long balance) {
+		if(ledger != null)
+			return updateAccountThenQueueTransaction(id, account, mode, balance);
+		
+		// The Transaction's id is taken before the connection is borrowed (it is simply skipped if the UPDATE doesn't match).
+		long transactionId;
+		try {
+			transactionId = DBConnection.nextId(DBConnection.TRANSACTION_ID_SEQUENCE);
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println("Error, something went wrong with the UPDATE query");
+			System.out.println(e.getMessage());
+			return false;
+		}
+		
+		try(Connection connection = DBConnection.getConnection()) {
+			// The Transaction is only inserted if the UPDATE actually matched the Account, and it copies the account id, name, and new balance from it.
+			String SQLStatement = "DECLARE v_id Accounts.a_id%TYPE; v_name Accounts.account_name%TYPE; v_balance Accounts.balance%TYPE; BEGIN "
+					+ "UPDATE Accounts SET balance = balance + ?, version = version + 1 WHERE a_id = ? AND u_id = ? AND balance >= ? "
+					+ "RETURNING a_id, account_name, balance, version INTO v_id, v_name, v_balance, ?; "
+					+ "IF SQL%ROWCOUNT = 1 THEN "
+					+ "INSERT INTO Transactions (t_id, t_type, a_id, account_name, amount, balance_after, u_id, created_at) "
+					+ "VALUES (?, ?, v_id, v_name, ?, v_balance, ?, SYSTIMESTAMP); "
+					+ "END IF; "
+					+ "? := v_balance; "
+					+ "END;";
+			CallableStatement cs = connection.prepareCall(SQLStatement);
+			cs.setBigDecimal(1, Money.toBigDecimal(mode == 0 ? balance : -balance));
+			cs.setInt(2, account.getId());
+			cs.setInt(3, id);
+			cs.setBigDecimal(4, Money.toBigDecimal(mode == 0 ? 0 : balance));
+			cs.registerOutParameter(5, Types.INTEGER);
+			cs.setLong(6, transactionId);
+			cs.setString(7, TransactionType.fromMode(mode).name());
+			cs.setBigDecimal(8, Money.toBigDecimal(balance));
+			cs.setInt(9, id);
+			cs.registerOutParameter(10, Types.NUMERIC);
+			
+			// Execute it, and read back the balance and version that were actually stored
 			cs.execute();
+			BigDecimal storedBalance = cs.getBigDecimal(10);
+			boolean updated = (storedBalance != null);
+			int newVersion = cs.getInt(5);
 			cs.close();
 			
+			if(updated) {
+				account.setBalance(Money.fromBigDecimal(storedBalance));
+				account.setVersion(newVersion);
+			}
+			return updated;
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println("Error, something went wrong with the UPDATE query");
 			System.out.println(e.getMessage());
+			return false;
 		}
 	}
 	
-	// Delete
 	/**
-	 * Delete a bank account given the Account name and the user id. <br>
-	 * This assumes that the Account already has a balance of 0.
+	 * Reserve the id of a Transaction that is recorded later on (see depositOnce()).
+	 * @return long: the transaction id, or 0 if no id could be reserved
 	 */
-	public boolean deleteAccount(int id, String accountName) {
+	public long reserveTransactionId() {
 		try {
-			// First, call the DELETE statement.
-			String SQLStatement = "DELETE Accounts WHERE u_id = ? AND account_name = ?";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(SQLStatement);
-			cs.setInt(1, id);
-			cs.setString(2, accountName);
+			return DBConnection.nextId(DBConnection.TRANSACTION_ID_SEQUENCE);
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println("Error, something happened with the query\n" + e.getMessage());
+			return 0;
+		}
+	}
+	
+	/**
+	 * Deposit to the given Account AND record the transaction with an id that was reserved earlier, exactly once, in a single round trip. <br>
+	 * Nothing happens if a Transaction with that id exists already, so the same deposit can be retried (or replayed) safely: the id is the idempotency key.
+	 * If the Account no longer exists, the deposit is set aside in transactions_dead_letter instead, where it can be looked into. <br>
+	 * The Transaction is always inserted right away, even with a write-behind ledger, since only its primary key makes the deposit happen once.
+	 * @param id : the user id
+	 * @param accountId : the id of the Account to deposit to
+	 * @param transactionId : the reserved transaction id
+	 * @param balance : the balance (in cents) to deposit
+	 * @return Boolean: True if the money was deposited (now or before), False if the Account doesn't exist, NULL if the query failed
+	 */
+	public Boolean depositOnce(int id, int accountId, long transactionId, long balance) {
+		try(Connection connection = DBConnection.getConnection()) {
+			String SQLStatement = "DECLARE v_done NUMBER; v_name Accounts.account_name%TYPE; v_balance Accounts.balance%TYPE; BEGIN "
+					+ "SELECT COUNT(*) INTO v_done FROM Transactions WHERE t_id = ?; "
+					+ "IF v_done = 0 THEN "
+					+ "UPDATE Accounts SET balance = balance + ?, version = version + 1 WHERE a_id = ? AND u_id = ? "
+					+ "RETURNING account_name, balance INTO v_name, v_balance; "
+					+ "IF SQL%ROWCOUNT = 1 THEN "
+					+ "INSERT INTO Transactions (t_id, t_type, a_id, account_name, amount, balance_after, u_id, created_at) "
+					+ "VALUES (?, ?, ?, v_name, ?, v_balance, ?, SYSTIMESTAMP); "
+					+ "v_done := 1; "
+					+ "ELSE "
+					+ "INSERT INTO transactions_dead_letter (t_id, t_type, a_id, amount, u_id, created_at, error) "
+					+ "SELECT ?, ?, ?, ?, ?, SYSTIMESTAMP, 'the account no longer exists' FROM dual "
+					+ "WHERE NOT EXISTS (SELECT 1 FROM transactions_dead_letter WHERE t_id = ?); "
+					+ "END IF; "
+					+ "END IF; "
+					+ "? := v_done; "
+					+ "END;";
+			CallableStatement cs = connection.prepareCall(SQLStatement);
+			BigDecimal amount = Money.toBigDecimal(balance);
+			cs.setLong(1, transactionId);
+			cs.setBigDecimal(2, amount);
+			cs.setInt(3, accountId);
+			cs.setInt(4, id);
+			cs.setLong(5, transactionId);
+			cs.setString(6, TransactionType.DEPOSIT.name());
+			cs.setInt(7, accountId);
+			cs.setBigDecimal(8, amount);
+			cs.setInt(9, id);
+			cs.setLong(10, transactionId);
+			cs.setString(11, TransactionType.DEPOSIT.name());
+			cs.setInt(12, accountId);
+			cs.setBigDecimal(13, amount);
+			cs.setInt(14, id);
+			cs.setLong(15, transactionId);
+			cs.registerOutParameter(16, Types.INTEGER);
 			
-			// Execute and close
+			// Execute it; anything but 0 means the deposit is in (whether it was this call or an earlier one)
 			cs.execute();
+			boolean deposited = (cs.getInt(16) != 0);
 			cs.close();
+			return deposited;
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println("Error, something went wrong with the UPDATE query");
+			System.out.println(e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * The write-behind version of updateAccountWithTransaction(): only the UPDATE runs on this thread,
+	 * and the Transaction is queued with the account name and balance that the UPDATE returned.
+	 */
+	private boolean updateAccountThenQueueTransaction(int id, Account account, int mode, long balance) {
+		String accountName;
+		BigDecimal storedBalance;
+		int newVersion;
+		try(Connection connection = DBConnection.getConnection()) {
+			String SQLStatement = "BEGIN "
+					+ "UPDATE Accounts SET balance = balance + ?, version = version + 1 WHERE a_id = ? AND u_id = ? AND balance >= ? "
+					+ "RETURNING account_name, balance, version INTO ?, ?, ?; "
+					+ "END;";
+			CallableStatement cs = connection.prepareCall(SQLStatement);
+			cs.setBigDecimal(1, Money.toBigDecimal(mode == 0 ? balance : -balance));
+			cs.setInt(2, account.getId());
+			cs.setInt(3, id);
+			cs.setBigDecimal(4, Money.toBigDecimal(mode == 0 ? 0 : balance));
+			cs.registerOutParameter(5, Types.VARCHAR);
+			cs.registerOutParameter(6, Types.NUMERIC);
+			cs.registerOutParameter(7, Types.INTEGER);
 			
-			// Assuming the execution was successful, return True
-			return true;
+			// Execute it; nothing comes back if the UPDATE didn't match
+			cs.execute();
+			accountName = cs.getString(5);
+			storedBalance = cs.getBigDecimal(6);
+			newVersion = cs.getInt(7);
+			cs.close();
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println("Error, something went wrong with the UPDATE query");
+			System.out.println(e.getMessage());
+			return false;
+		}
+		if(storedBalance == null)
+			return false;
+		
+		account.setBalance(Money.fromBigDecimal(storedBalance));
+		account.setVersion(newVersion);
+		
+		// The connection is already back in the pool, so queueing (which may reserve a block of ids) never holds two at once.
+		try {
+			ledger.append(id, TransactionType.fromMode(mode), account.getId(), accountName, balance, account.getBalance());
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println("Error, the transaction could not be recorded: " + e.getMessage());
+		}
+		return true;
+	}
+	
+	// Delete
+	/**
+	 * Delete a bank account given the Account id and the user id AND record the DELETE transaction, all in a single round trip. <br>
+	 * The Account is only deleted if the balance the database stores is still 0: the session's copy may be out of date,
+	 * and money deposited since then (from another session, or replayed from the journal) must never be deleted along with the Account. <br>
+	 * With a write-behind ledger, only the DELETE runs here and the Transaction is queued instead.
+	 * @param id : the user id
+	 * @param accountId : the id of the Account to delete
+	 * @return Boolean: True if the Account was deleted, False if it doesn't exist, still holds money, or the query failed
+	 */
+	public boolean deleteAccount(int id, int accountId) {
+		// The Transaction's id is taken before the connection is borrowed (it is simply skipped if the DELETE doesn't match).
+		long transactionId = 0;
+		if(ledger == null) {
+			try {
+				transactionId = DBConnection.nextId(DBConnection.TRANSACTION_ID_SEQUENCE);
+			}
+			catch(SQLException e) {
+				Metrics.recordError();
+				System.out.println("Error, something happened with the query\n" + e.getMessage());
+				return false;
+			}
+		}
+		
+		String accountName;
+		try(Connection connection = DBConnection.getConnection()) {
+			// The Transaction is only inserted (when there is no ledger) if the DELETE actually matched an empty Account.
+			String SQLStatement = "DECLARE v_name Accounts.account_name%TYPE; BEGIN "
+					+ "DELETE Accounts WHERE a_id = ? AND u_id = ? AND balance = 0 RETURNING account_name INTO v_name; "
+					+ "IF SQL%ROWCOUNT = 1 AND ? = 1 THEN "
+					+ "INSERT INTO Transactions (t_id, t_type, a_id, account_name, amount, balance_after, u_id, created_at) "
+					+ "VALUES (?, ?, ?, v_name, 0, 0, ?, SYSTIMESTAMP); "
+					+ "END IF; "
+					+ "? := v_name; "
+					+ "END;";
+			CallableStatement cs = connection.prepareCall(SQLStatement);
+			cs.setInt(1, accountId);
+			cs.setInt(2, id);
+			cs.setInt(3, (ledger == null ? 1 : 0));
+			cs.setLong(4, transactionId);
+			cs.setString(5, TransactionType.DELETE.name());
+			cs.setInt(6, accountId);
+			cs.setInt(7, id);
+			cs.registerOutParameter(8, Types.VARCHAR);
+			
+			// Execute it; no name comes back if nothing was deleted
+			cs.execute();
+			accountName = cs.getString(8);
+			cs.close();
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println("Error, something happened with the query\n" + e.getMessage());
 			return false;
 		}
+		if(accountName == null)
+			return false;
+		
+		// The connection is already back in the pool, so queueing never holds two at once.
+		if(ledger != null) {
+			try {
+				ledger.append(id, TransactionType.DELETE, accountId, accountName, 0, 0);
+			}
+			catch(SQLException e) {
+				Metrics.recordError();
+				System.out.println("Error, the transaction could not be recorded: " + e.getMessage());
+			}
+		}
+		return true;
 	}
 }
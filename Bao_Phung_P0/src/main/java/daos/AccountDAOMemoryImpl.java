@@ -0,0 +1,204 @@
+package daos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import entities.Account;
+import entities.TransactionType;
+
+/**
+ * An in-memory version of AccountDAOImpl that stores every Account inside a MemoryDatabase instead of Oracle.
+ * @author baoph
+ *
+ */
+public class AccountDAOMemoryImpl implements AccountDAO{
+
+	private final MemoryDatabase database;
+
+	/**
+	 * Creates an Account table on top of the given in-memory database.
+	 * @param database : the shared in-memory tables
+	 */
+	public AccountDAOMemoryImpl(MemoryDatabase database) {
+		this.database = database;
+	}
+
+	// Create
+	/**
+	 * Given a user id and a new Account (only caring about the name and the balance), add it to the in-memory table.
+	 * @param id : the user id
+	 * @param account : the Account object; on success, its id is set to the generated one
+	 * @return Boolean: True if we successfully added the Account, False if the user already has an Account with that name
+	 */
+	@Override
+	public boolean createAccount(int id, Account account) {
+		// Claim the name first, so two concurrent creations of the same name can't both succeed.
+		int accountId = database.bankAccountIdGenerator.incrementAndGet();
+		if(database.accountNamesOf(id).putIfAbsent(account.getName().toLowerCase(), accountId) != null)
+			return false;
+		
+		Account row = new Account(accountId, account.getName(), account.getBalance());
+		database.accountsOf(id).put(accountId, row);
+		account.setId(accountId);
+		account.setVersion(0);
+		return true;
+	}
+
+	/**
+	 * Add a new Account AND record its creation as a Transaction.
+	 * @param id : the user id
+	 * @param account : the Account object; on success, its id is set to the generated one
+	 * @return Boolean: True if we successfully added the Account, False if the user already has an Account with that name
+	 */
+	@Override
+	public boolean createAccountWithTransaction(int id, Account account) {
+		if(!createAccount(id, account))
+			return false;
+		database.insertTransaction(id, TransactionType.CREATE, copy(account), account.getBalance());
+		return true;
+	}
+
+	/**
+	 * Reserve the id of a Transaction that is recorded later on (see depositOnce()).
+	 * @return long: the transaction id
+	 */
+	@Override
+	public long reserveTransactionId() {
+		return database.transactionIdGenerator.incrementAndGet();
+	}
+
+	// Read/get
+	/**
+	 * Return copies of all of the User's accounts, ordered by account id just like the table would return them.
+	 * @param id : the user id
+	 * @return List<Account>: a new List of Accounts
+	 */
+	@Override
+	public List<Account> getAllAccounts(int id) {
+		List<Account> accountsList = new ArrayList<Account>();
+		ConcurrentHashMap<Integer, Account> rows = database.accounts.get(id);
+		if(rows == null)
+			return accountsList;
+
+		for(Account row : rows.values())
+			accountsList.add(copy(row));
+		accountsList.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+		return accountsList;
+	}
+
+	/**
+	 * Retrieve a copy of a single account given the user id and the name of the account (ignoring case).
+	 * @return Account: the account associated with the user id and the account name, or NULL if there is none.
+	 */
+	@Override
+	public Account getAccount(int id, String accountName) {
+		Account row = database.findAccount(id, accountName);
+		return (row == null ? null : copy(row));
+	}
+
+	// Update
+	/**
+	 * Overwrite the given Account's balance (found by its id), but only if its version still matches (optimistic locking).
+	 * @return Boolean: True if the balance was written, False if the Account changed in the meantime (or doesn't exist)
+	 */
+	@Override
+	public boolean updateAccount(int id, Account account) {
+		ConcurrentHashMap<Integer, Account> rows = database.accounts.get(id);
+		if(rows == null)
+			return false;
+		
+		boolean[] updated = { false };
+		rows.computeIfPresent(account.getId(), (accountId, row) -> {
+			if(row.getVersion() != account.getVersion())
+				return row;
+			updated[0] = true;
+			return new Account(row.getId(), row.getName(), account.getBalance(), row.getVersion() + 1);
+		});
+		if(updated[0])
+			account.setVersion(account.getVersion() + 1);
+		return updated[0];
+	}
+
+	/**
+	 * Deposit to or withdraw from the given Account (found by its id) AND record the transaction, while the Account row is locked. <br>
+	 * Just like the SQL version, the change is applied to the stored balance and a withdraw needs enough money on the stored balance.
+	 * @return Boolean: True if the balance changed, False if the Account doesn't exist or doesn't hold enough money to withdraw
+	 */
+	@Override
+	public boolean updateAccountWithTransaction(int id, Account account, int mode, long balance) {
+		ConcurrentHashMap<Integer, Account> rows = database.accounts.get(id);
+		if(rows == null)
+			return false;
+		
+		Account[] updated = { null };
+		rows.computeIfPresent(account.getId(), (accountId, row) -> {
+			if(mode != 0 && row.getBalance() < balance)
+				return row;
+			updated[0] = new Account(row.getId(), row.getName(), row.getBalance() + (mode == 0 ? balance : -balance), row.getVersion() + 1);
+			database.insertTransaction(id, TransactionType.fromMode(mode), updated[0], balance);
+			return updated[0];
+		});
+		if(updated[0] == null)
+			return false;
+		account.setBalance(updated[0].getBalance());
+		account.setVersion(updated[0].getVersion());
+		return true;
+	}
+
+	/**
+	 * Deposit to the Account (found by its id) AND record the transaction with the reserved id, while the Account row is locked,
+	 * unless a Transaction with that id was recorded already.
+	 * @return Boolean: True if the money was deposited (now or before), False if the Account doesn't exist
+	 */
+	@Override
+	public Boolean depositOnce(int id, int accountId, long transactionId, long balance) {
+		ConcurrentHashMap<Integer, Account> rows = database.accounts.get(id);
+		if(rows == null)
+			return false;
+		
+		boolean[] deposited = { false };
+		rows.computeIfPresent(accountId, (key, row) -> {
+			deposited[0] = true;
+			if(database.transactionsOf(id).containsKey((int) transactionId))
+				return row;
+			Account updated = new Account(row.getId(), row.getName(), row.getBalance() + balance, row.getVersion() + 1);
+			database.insertTransaction(id, TransactionType.DEPOSIT, updated, balance, (int) transactionId);
+			return updated;
+		});
+		return deposited[0];
+	}
+
+	// Delete
+	/**
+	 * Delete a bank account given the Account id and the user id AND record the DELETE transaction, while the Account row is locked, and free up its name. <br>
+	 * Just like the SQL version, the Account is only deleted if the stored balance is still 0.
+	 * @return Boolean: True if the Account was deleted, False if it doesn't exist or still holds money
+	 */
+	@Override
+	public boolean deleteAccount(int id, int accountId) {
+		ConcurrentHashMap<Integer, Account> rows = database.accounts.get(id);
+		if(rows == null)
+			return false;
+		
+		Account[] removed = { null };
+		rows.computeIfPresent(accountId, (key, row) -> {
+			if(row.getBalance() != 0)
+				return row;
+			removed[0] = row;
+			database.insertTransaction(id, TransactionType.DELETE, row, 0);
+			return null;
+		});
+		if(removed[0] == null)
+			return false;
+		database.accountNamesOf(id).remove(removed[0].getName().toLowerCase(), accountId);
+		return true;
+	}
+
+	/**
+	 * Rows are shared between threads, so callers only ever get a copy.
+	 */
+	private static Account copy(Account row) {
+		return new Account(row.getId(), row.getName(), row.getBalance(), row.getVersion());
+	}
+}
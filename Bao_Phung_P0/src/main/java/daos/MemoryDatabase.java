@@ -0,0 +1,131 @@
+package daos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import entities.Account;
+import entities.Transaction;
+import entities.TransactionType;
+
+/**
+ * The tables shared by the in-memory DAO implementations. <br>
+ * Every "table" is a concurrent hash index, and every sequence is an atomic counter, so the in-memory backend can be used from many threads at once: <br>
+ * - Users are indexed by their lower-cased username, in order (so they can be paged through) <br>
+ * - Accounts are indexed by user id, and then by account id; a second index maps each lower-cased account name to its account id <br>
+ * - Transactions are indexed by user id, and then ordered by transaction id
+ * @author baoph
+ *
+ */
+public class MemoryDatabase {
+
+	/**
+	 * A single row of the Users table.  Rows are never modified in place; they are only inserted and removed.
+	 */
+	static class UserRow {
+		final int id;
+		final String fullName, username, password;
+		final boolean isSuperUser;
+
+		UserRow(int id, String fullName, String username, String password, boolean isSuperUser) {
+			this.id = id;
+			this.fullName = fullName;
+			this.username = username;
+			this.password = password;
+			this.isSuperUser = isSuperUser;
+		}
+	}
+
+	// The tables
+	final ConcurrentSkipListMap<String, UserRow> users = new ConcurrentSkipListMap<String, UserRow>();
+	final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Account>> accounts = new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Account>>();
+	final ConcurrentHashMap<Integer, ConcurrentHashMap<String, Integer>> accountNames = new ConcurrentHashMap<Integer, ConcurrentHashMap<String, Integer>>();
+	final ConcurrentHashMap<Integer, ConcurrentSkipListMap<Integer, Transaction>> transactions = new ConcurrentHashMap<Integer, ConcurrentSkipListMap<Integer, Transaction>>();
+
+	// The sequences, which behave just like user_id_generator, bank_account_id_generator, and transaction_id_generator (start at 1, increment by 1)
+	final AtomicInteger userIdGenerator = new AtomicInteger();
+	final AtomicInteger bankAccountIdGenerator = new AtomicInteger();
+	final AtomicInteger transactionIdGenerator = new AtomicInteger();
+
+	/**
+	 * Return the accounts of a single user, creating the (empty) index the first time it is needed.
+	 * @param id : the user id
+	 * @return ConcurrentHashMap<Integer, Account>: the user's accounts keyed by account id
+	 */
+	ConcurrentHashMap<Integer, Account> accountsOf(int id) {
+		return accounts.computeIfAbsent(id, key -> new ConcurrentHashMap<Integer, Account>());
+	}
+
+	/**
+	 * Return the account name index of a single user, creating the (empty) index the first time it is needed.
+	 * @param id : the user id
+	 * @return ConcurrentHashMap<String, Integer>: the user's account ids keyed by lower-cased account name
+	 */
+	ConcurrentHashMap<String, Integer> accountNamesOf(int id) {
+		return accountNames.computeIfAbsent(id, key -> new ConcurrentHashMap<String, Integer>());
+	}
+
+	/**
+	 * Find one of the user's accounts by its name (ignoring case).
+	 * @param id : the user id
+	 * @param accountName : the account name
+	 * @return Account: the stored row, or NULL if there is none
+	 */
+	Account findAccount(int id, String accountName) {
+		ConcurrentHashMap<String, Integer> names = accountNames.get(id);
+		Integer accountId = (names == null ? null : names.get(accountName.toLowerCase()));
+		return (accountId == null ? null : findAccount(id, accountId));
+	}
+
+	/**
+	 * Find one of the user's accounts by its id.
+	 * @param id : the user id
+	 * @param accountId : the account id
+	 * @return Account: the stored row, or NULL if the user has no such account
+	 */
+	Account findAccount(int id, int accountId) {
+		ConcurrentHashMap<Integer, Account> rows = accounts.get(id);
+		return (rows == null ? null : rows.get(accountId));
+	}
+
+	/**
+	 * Return the transactions of a single user, creating the (empty) index the first time it is needed.
+	 * @param id : the user id
+	 * @return ConcurrentSkipListMap<Integer, Transaction>: the user's transactions keyed by transaction id
+	 */
+	ConcurrentSkipListMap<Integer, Transaction> transactionsOf(int id) {
+		return transactions.computeIfAbsent(id, key -> new ConcurrentSkipListMap<Integer, Transaction>());
+	}
+
+	/**
+	 * Insert a single typed transaction for one of the given user's accounts, using the next transaction id.
+	 * @param id : the user id
+	 * @param type : what kind of change is recorded
+	 * @param account : the account row as it is after the change (its balance becomes the resulting balance)
+	 * @param amount : the amount of money (in cents) that moved
+	 */
+	void insertTransaction(int id, TransactionType type, Account account, long amount) {
+		insertTransaction(id, type, account, amount, transactionIdGenerator.incrementAndGet());
+	}
+
+	/**
+	 * Insert a single typed transaction for one of the given user's accounts, with an id that was reserved earlier.
+	 * @param id : the user id
+	 * @param type : what kind of change is recorded
+	 * @param account : the account row as it is after the change (its balance becomes the resulting balance)
+	 * @param amount : the amount of money (in cents) that moved
+	 * @param transactionId : the reserved transaction id
+	 */
+	void insertTransaction(int id, TransactionType type, Account account, long amount, int transactionId) {
+		transactionsOf(id).put(transactionId, new Transaction(transactionId, type, account.getId(), account.getName(), amount, account.getBalance(),
+				System.currentTimeMillis()));
+	}
+
+	/**
+	 * Simply return the number of users stored.
+	 * @return int: the number of users
+	 */
+	public int getNumUsers() {
+		return users.size();
+	}
+}
@@ -2,15 +2,18 @@ package daos;
 
 import java.util.List;
 
+import entities.Account;
 import entities.Transaction;
 
 public interface TransactionDAO {
-	boolean createTransaction(int id, String accountName);
+	boolean createTransaction(int id, Account account);
 	
 	List<Transaction> getRecentTransactions(int id);
+	// Keyset pagination: the page of (at most pageSize) transactions older than lastSeenId, newest first
+	List<Transaction> getTransactionHistory(int id, int lastSeenId, int pageSize);
 	
-	void updateTransaction(int id, String accountName, int mode, double balance);
+	void updateTransaction(int id, int accountId, int mode, long balance);
 	
-	boolean deleteTransaction(int id, String accountName);
+	boolean deleteTransaction(int id, int accountId);
 	void removeTransactions(int id);
 }
@@ -1,106 +1,174 @@
 package daos;
 
 import java.sql.CallableStatement;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 
+import entities.Account;
 import entities.Transaction;
+import entities.TransactionType;
+import entities.User;
 import util.DBConnection;
+import util.Metrics;
+import util.Money;
 
+/**
+ * The Oracle version of the TransactionDAO. <br>
+ * Every Transaction is stored as a typed row instead of an English sentence: <br>
+ * Transactions (t_id, t_type, a_id, account_name, amount, balance_after, u_id, created_at) <br>
+ * The old message column is only read back for rows that were recorded before the typed columns existed (their t_type is NULL).
+ * @author baoph
+ *
+ */
 public class TransactionDAOImpl implements TransactionDAO{
+	
+	// The columns every query reads, in the order toTransaction() expects them.
+	static final String COLUMNS = "t_id, t_type, a_id, account_name, amount, balance_after, created_at, message";
+	
+	// Records a Transaction against an existing Account, copying its id, exact name, and current balance from the Accounts row itself.
+	// The Account is found by its primary key; the u_id check only makes sure it belongs to the User.
+	private static final String INSERT_FROM_ACCOUNT = "INSERT INTO Transactions (t_id, t_type, a_id, account_name, amount, balance_after, u_id, created_at) "
+			+ "SELECT ?, ?, a_id, account_name, ?, balance, u_id, SYSTIMESTAMP FROM Accounts WHERE a_id = ? AND u_id = ?";
 
 	/**
-	 * Create a new Transactions that deals with the creation of a new Bank account
+	 * Create a new Transactions that deals with the creation of a new Bank account. <br>
+	 * The Account must already exist, since the Transaction points to it.
 	 * @param id : the user id that this transaction is associated with
-	 * @param accountName : the name of the account that will be shown on the Transaction history
+	 * @param account : the newly created Account (only the id and the initial balance are used)
 	 * @return Boolean: True if the transaction was successful, False otherwise
 	 */
 	@Override
-	public boolean createTransaction(int id, String accountName) {
-		try {
-			String SQLStatement = "INSERT INTO Transactions VALUES (transaction_id_generator.nextval, ?, ?)";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(SQLStatement);
-			cs.setString(1, "Created a new " + accountName + " Bank Account");
-			cs.setInt(2, id);
-			cs.execute();
-			cs.close();
-			return true;
-		}
-		catch(SQLException e) {
-			System.out.println(e.getMessage());
-		}
-		return false;
+	public boolean createTransaction(int id, Account account) {
+		return insertFromAccount(id, account.getId(), TransactionType.CREATE, account.getBalance());
 	}
 	
 	/**
-	 * Return the 10 most recent transactions from some user.
+	 * Return the most recent transactions from some user (as many as a User keeps).
 	 * @param id : the user id
 	 * @return List<Transaction>: the new list of Transactions
 	 */
 	@Override
 	public List<Transaction> getRecentTransactions(int id){
+		return getTransactionHistory(id, Integer.MAX_VALUE, User.RECENT_TRANSACTIONS);
+	}
+	
+	/**
+	 * Return a single page of a user's transactions, newest first: the (at most) pageSize transactions whose id is smaller than lastSeenId. <br>
+	 * To page through the whole history, start with Integer.MAX_VALUE and then pass the id of the last transaction of the previous page. <br>
+	 * Since the page starts right at lastSeenId, every page costs the same no matter how deep into the history it is (no OFFSET scan).
+	 * @param id : the user id
+	 * @param lastSeenId : the id of the last (oldest) transaction that was already seen
+	 * @param pageSize : the maximum number of transactions to return
+	 * @return List<Transaction>: the new list of Transactions, or NULL if the query failed
+	 */
+	@Override
+	public List<Transaction> getTransactionHistory(int id, int lastSeenId, int pageSize) {
 		List<Transaction> transactions = new ArrayList<Transaction>();
-		try {
-			// To get the 10 most recent transactions, sort the results of the transaction ids in descending order
-			// And only limit the # of returned rows to be 10.
-			String SQLStatement = "SELECT * FROM Transactions WHERE u_id = ? AND ROWNUM <= 10 ORDER BY t_id DESC";
-			PreparedStatement ps = DBConnection.getConnection().prepareStatement(SQLStatement);
+		try(Connection connection = DBConnection.getConnection()) {
+			// ROWNUM is assigned before ORDER BY, so the rows have to be sorted in a subquery first and only then limited.
+			// The index on (u_id, t_id) lets Oracle read the page straight off the index in descending order and stop after pageSize rows.
+			String SQLStatement = "SELECT * FROM (SELECT " + COLUMNS + " FROM Transactions WHERE u_id = ? AND t_id < ? ORDER BY t_id DESC) WHERE ROWNUM <= ?";
+			PreparedStatement ps = connection.prepareStatement(SQLStatement);
 			ps.setInt(1, id);
+			ps.setInt(2, lastSeenId);
+			ps.setInt(3, pageSize);
 			ResultSet rs = ps.executeQuery();
 			
 			while(rs.next()) 
-				transactions.add(new Transaction(rs.getString(2)));
+				transactions.add(toTransaction(rs));
 			
-			// After retrieving all <= 10 transactions, return the list of transactions
+			// Safely close the statements
+			rs.close();
+			ps.close();
 			return transactions;
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println(e.getMessage());
 			return null;
 		}
 	}
-
-	@Override
-	public void updateTransaction(int id, String accountName, int mode, double balance) {
-		try {
-			String SQLStatement = "INSERT INTO Transactions VALUES (transaction_id_generator.nextval, ?, ?)";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(SQLStatement);
-			if(mode == 0)
-				cs.setString(1, "Deposited $" + (Math.round(balance)*100./100.) + " to the " + accountName + " Bank Account");
-			else if(mode == 1)
-				cs.setString(1, "Withdrawn $" + (Math.round(balance)*100./100.) + " from the " + accountName + " Bank Account");
-			else
-				throw new IllegalArgumentException("Error, invalid mode.  It must be 0 (deposit) or 1 (withdrawn)");
-			cs.setInt(2, id);
-			cs.execute();
-			cs.close();
-		}
-		catch(SQLException e) {
-			System.out.println(e.getMessage());
-		}
+	
+	/**
+	 * Turn the current row of a ResultSet (selecting COLUMNS) into a Transaction.
+	 * @param rs : the ResultSet, positioned on a row
+	 * @return Transaction: a typed Transaction, or a plain text one for rows recorded before t_type existed
+	 * @throws SQLException if a column can't be read
+	 */
+	static Transaction toTransaction(ResultSet rs) throws SQLException {
+		return toTransaction(rs, 1);
+	}
+	
+	/**
+	 * Same as toTransaction(rs), but for queries where COLUMNS don't start at the first column.
+	 * @param rs : the ResultSet, positioned on a row
+	 * @param first : the index of the column holding t_id; the rest of COLUMNS follow it in order
+	 * @return Transaction: a typed Transaction, or a plain text one for rows recorded before t_type existed
+	 * @throws SQLException if a column can't be read
+	 */
+	static Transaction toTransaction(ResultSet rs, int first) throws SQLException {
+		String type = rs.getString(first + 1);
+		if(type == null)
+			return new Transaction(rs.getInt(first), rs.getString(first + 7));
 		
+		Timestamp createdAt = rs.getTimestamp(first + 6);
+		return new Transaction(rs.getInt(first), TransactionType.valueOf(type), rs.getInt(first + 2), rs.getString(first + 3),
+				Money.fromBigDecimal(rs.getBigDecimal(first + 4)), Money.fromBigDecimal(rs.getBigDecimal(first + 5)),
+				(createdAt == null ? 0 : createdAt.getTime()));
+	}
+	
+	/**
+	 * Record a deposit/withdraw that was already applied to the Account. <br>
+	 * The resulting balance is read from the Account row in the same statement.
+	 * @param id : the user id
+	 * @param accountId : the id of the account that was deposited to/withdrawn from
+	 * @param mode : 0 for deposit, 1 for withdraw
+	 * @param balance : the balance (in cents) that was either deposited or withdrawn
+	 */
+	@Override
+	public void updateTransaction(int id, int accountId, int mode, long balance) {
+		insertFromAccount(id, accountId, TransactionType.fromMode(mode), balance);
 	}
 
 	/**
-	 * Create a new transaction that deals with the deletion of a Bank account.
+	 * Create a new transaction that deals with the deletion of a Bank account. <br>
+	 * This has to be called before the Account itself is deleted.
 	 * @param id : the user id to query by
+	 * @param accountId : the id of the account that is about to be deleted
 	 * @return Boolean: True if adding a new Transaction of a deleted Bank Account is successful, False otherwise
 	 */
 	@Override
-	public boolean deleteTransaction(int id, String accountName) {
+	public boolean deleteTransaction(int id, int accountId) {
+		return insertFromAccount(id, accountId, TransactionType.DELETE, 0);
+	}
+	
+	/**
+	 * Insert a single typed Transaction for one of the User's accounts.
+	 * @return Boolean: True if the Transaction was recorded, False if the Account doesn't exist or the query failed
+	 */
+	private boolean insertFromAccount(int id, int accountId, TransactionType type, long amount) {
 		try {
-			String SQLStatement = "INSERT INTO Transactions VALUES (transaction_id_generator.nextval, ?, ?)";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(SQLStatement);
-			cs.setString(1, "Deleted the " + accountName + " Bank Account");
-			cs.setInt(2, id);
-			cs.execute();
-			cs.close();
-			return true;
+			// The id is taken from a block reserved ahead of time, before the connection is borrowed.
+			long transactionId = DBConnection.nextId(DBConnection.TRANSACTION_ID_SEQUENCE);
+			try(Connection connection = DBConnection.getConnection()) {
+				PreparedStatement ps = connection.prepareStatement(INSERT_FROM_ACCOUNT);
+				ps.setLong(1, transactionId);
+				ps.setString(2, type.name());
+				ps.setBigDecimal(3, Money.toBigDecimal(amount));
+				ps.setInt(4, accountId);
+				ps.setInt(5, id);
+				int inserted = ps.executeUpdate();
+				ps.close();
+				return inserted == 1;
+			}
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println(e.getMessage());
 		}
 		return false;
@@ -112,14 +180,15 @@ public class TransactionDAOImpl implements TransactionDAO{
 	 */
 	@Override
 	public void removeTransactions(int id) {
-		try {
+		try(Connection connection = DBConnection.getConnection()) {
 			String SQLStatement = "DELETE Transactions WHERE u_id = ?";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(SQLStatement);
+			CallableStatement cs = connection.prepareCall(SQLStatement);
 			cs.setInt(1, id);
 			cs.execute();
 			cs.close();
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println(e.getMessage());
 		}
 	}
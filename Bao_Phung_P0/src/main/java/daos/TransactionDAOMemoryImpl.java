@@ -0,0 +1,109 @@
+package daos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import entities.Account;
+import entities.Transaction;
+import entities.TransactionType;
+import entities.User;
+
+/**
+ * An in-memory version of TransactionDAOImpl that stores every Transaction inside a MemoryDatabase instead of Oracle.
+ * @author baoph
+ *
+ */
+public class TransactionDAOMemoryImpl implements TransactionDAO{
+
+	private final MemoryDatabase database;
+
+	/**
+	 * Creates a Transaction table on top of the given in-memory database.
+	 * @param database : the shared in-memory tables
+	 */
+	public TransactionDAOMemoryImpl(MemoryDatabase database) {
+		this.database = database;
+	}
+
+	/**
+	 * Create a new Transaction that deals with the creation of a new Bank account. <br>
+	 * The Account must already exist, since the Transaction points to it.
+	 * @param id : the user id that this transaction is associated with
+	 * @param account : the newly created Account (only the id and the initial balance are used)
+	 * @return Boolean: True if the transaction was recorded, False if the Account doesn't exist
+	 */
+	@Override
+	public boolean createTransaction(int id, Account account) {
+		return insertFromAccount(id, account.getId(), TransactionType.CREATE, account.getBalance());
+	}
+
+	/**
+	 * Return the most recent transactions from some user (as many as a User keeps), newest first.
+	 * @param id : the user id
+	 * @return List<Transaction>: the new list of Transactions
+	 */
+	@Override
+	public List<Transaction> getRecentTransactions(int id) {
+		return getTransactionHistory(id, Integer.MAX_VALUE, User.RECENT_TRANSACTIONS);
+	}
+
+	/**
+	 * Return a single page of a user's transactions, newest first: the (at most) pageSize transactions whose id is smaller than lastSeenId. <br>
+	 * The skip list jumps straight to lastSeenId, so every page costs the same no matter how deep into the history it is.
+	 * @param id : the user id
+	 * @param lastSeenId : the id of the last (oldest) transaction that was already seen
+	 * @param pageSize : the maximum number of transactions to return
+	 * @return List<Transaction>: the new list of Transactions
+	 */
+	@Override
+	public List<Transaction> getTransactionHistory(int id, int lastSeenId, int pageSize) {
+		List<Transaction> page = new ArrayList<Transaction>();
+		ConcurrentSkipListMap<Integer, Transaction> rows = database.transactions.get(id);
+		if(rows == null)
+			return page;
+
+		for(Transaction transaction : rows.headMap(lastSeenId, false).descendingMap().values()) {
+			if(page.size() == pageSize)
+				break;
+			page.add(transaction);
+		}
+		return page;
+	}
+
+	@Override
+	public void updateTransaction(int id, int accountId, int mode, long balance) {
+		insertFromAccount(id, accountId, TransactionType.fromMode(mode), balance);
+	}
+
+	/**
+	 * Create a new transaction that deals with the deletion of a Bank account.
+	 * @param id : the user id
+	 * @return Boolean: True if the transaction was recorded, False if the Account doesn't exist
+	 */
+	@Override
+	public boolean deleteTransaction(int id, int accountId) {
+		return insertFromAccount(id, accountId, TransactionType.DELETE, 0);
+	}
+
+	/**
+	 * Insert a single typed Transaction for one of the User's accounts, copying the account id, name, and balance from the stored row.
+	 * @return Boolean: True if the Transaction was recorded, False if the Account doesn't exist
+	 */
+	private boolean insertFromAccount(int id, int accountId, TransactionType type, long amount) {
+		Account row = database.findAccount(id, accountId);
+		if(row == null)
+			return false;
+		database.insertTransaction(id, type, row, amount);
+		return true;
+	}
+
+	/**
+	 * Remove all transactions belonging to the User id.
+	 * @param id : the user id
+	 */
+	@Override
+	public void removeTransactions(int id) {
+		database.transactions.remove(id);
+	}
+}
@@ -0,0 +1,392 @@
+package daos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import entities.Account;
+import entities.Transaction;
+import entities.TransactionType;
+import util.BoundedRingBuffer;
+import util.DBConnection;
+import util.Metrics;
+import util.Money;
+
+/**
+ * A write-behind version of TransactionDAOImpl: new Transactions are queued instead of inserted on the caller's thread. <br>
+ * A single background thread (ledger-writer) drains the queue and inserts the Transactions with one JDBC batch and one commit per batch
+ * (group commit), either as soon as a full batch is waiting or once the flush interval is up, whichever comes first. <br>
+ * The queue is a bounded lock-free ring; when it is full, callers wait for the writer to catch up (back-pressure) instead of queueing without bound. <br>
+ * Each Transaction's id is taken when it is queued, so the ids (and therefore the history order) match the order of the changes, no matter when they are written. <br>
+ * A batch that fails is retried (in order) a few times; after that, its Transactions are inserted one at a time, and any that still fail are set aside
+ * in transactions_dead_letter (or, failing that, the console) so the ones queued after them keep flowing. <br>
+ * Everything that reads Transactions or deletes Accounts/Users flushes the queue first, and whatever is still queued is written when the application shuts down.
+ * Transactions queued right before a crash can still be lost, which is the price of not waiting for the database.
+ * @author baoph
+ *
+ */
+public class TransactionDAOWriteBehindImpl extends TransactionDAOImpl implements AutoCloseable{
+
+	// Defaults for the queue; each of these can be overridden with -Dbank.ledger.capacity, -Dbank.ledger.batchSize, -Dbank.ledger.flushMillis,
+	// and -Dbank.ledger.maxRetries (the number of times a batch is tried as a whole before it is written one Transaction at a time).
+	public static final int DEFAULT_CAPACITY = 4096, DEFAULT_BATCH_SIZE = 128, DEFAULT_MAX_RETRIES = 3;
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 20;
+
+	// How long a caller waits before checking again whether the full ring freed up
+	private static final long BACK_PRESSURE_PAUSE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+	private static final String INSERT = "INSERT INTO Transactions (t_id, t_type, a_id, account_name, amount, balance_after, u_id, created_at) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String DEAD_LETTER = "INSERT INTO transactions_dead_letter (t_id, t_type, a_id, account_name, amount, balance_after, u_id, created_at, error) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * A queued Transaction, along with the User it belongs to.
+	 */
+	private static class Entry {
+		final int userId;
+		final Transaction transaction;
+
+		Entry(int userId, Transaction transaction) {
+			this.userId = userId;
+			this.transaction = transaction;
+		}
+	}
+
+	private final BoundedRingBuffer<Entry> queue;
+	private final int batchSize, maxRetries;
+	private final long flushIntervalNanos;
+	private final Thread writer;
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	// The batch currently being written; if writing it fails, it is retried (in order) before anything newer.  Only touched while holding the lock.
+	private final List<Entry> batch = new ArrayList<Entry>();
+	private int failedAttempts = 0;
+
+	private final AtomicLong transactionsWritten = new AtomicLong(), batchesWritten = new AtomicLong(), backPressureWaits = new AtomicLong(),
+			deadLettered = new AtomicLong();
+
+	/**
+	 * Creates a write-behind Transaction table with the queue settings from the system properties (or the defaults).
+	 */
+	public TransactionDAOWriteBehindImpl() {
+		this(Integer.getInteger("bank.ledger.capacity", DEFAULT_CAPACITY), Integer.getInteger("bank.ledger.batchSize", DEFAULT_BATCH_SIZE),
+				Long.getLong("bank.ledger.flushMillis", DEFAULT_FLUSH_INTERVAL_MILLIS), Integer.getInteger("bank.ledger.maxRetries", DEFAULT_MAX_RETRIES));
+	}
+
+	/**
+	 * Creates a write-behind Transaction table, and starts its background writer.
+	 * @param capacity : the maximum number of queued Transactions (rounded up to a power of 2)
+	 * @param batchSize : the maximum number of Transactions per batch; a full batch is written right away
+	 * @param flushIntervalMillis : the longest time a Transaction waits in the queue when no full batch builds up
+	 * @param maxRetries : the number of times a batch is tried as a whole before its Transactions are written one at a time
+	 */
+	public TransactionDAOWriteBehindImpl(int capacity, int batchSize, long flushIntervalMillis, int maxRetries) {
+		if(batchSize < 1 || flushIntervalMillis < 1 || maxRetries < 1)
+			throw new IllegalArgumentException("Error, the batch size, flush interval, and retries must be at least 1");
+		this.queue = new BoundedRingBuffer<Entry>(capacity);
+		this.batchSize = Math.min(batchSize, queue.getCapacity());
+		this.maxRetries = maxRetries;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+		writer = new Thread(this::runWriter, "ledger-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		// Write whatever is still queued before the pool closes, and also when the JVM exits without going through DBConnection.shutdown().
+		DBConnection.beforeShutdown(this::close);
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "ledger-shutdown"));
+	}
+
+	/**
+	 * Queue a brand new Transaction for the given User. <br>
+	 * This only waits if the queue is full (or the queue was already closed, in which case the Transaction is written right away).
+	 * @param id : the user id
+	 * @param type : what kind of change is recorded
+	 * @param accountId : the id of the Account that changed
+	 * @param accountName : the name of the Account
+	 * @param amount : the amount of money (in cents) that moved
+	 * @param balanceAfter : the Account's balance (in cents) right after the change
+	 * @return Transaction: the queued Transaction, with its id
+	 * @throws SQLException if an id could not be reserved
+	 */
+	public Transaction append(int id, TransactionType type, int accountId, String accountName, long amount, long balanceAfter) throws SQLException {
+		Transaction transaction = new Transaction((int) DBConnection.nextId(DBConnection.TRANSACTION_ID_SEQUENCE), type, accountId, accountName,
+				amount, balanceAfter, System.currentTimeMillis());
+		Entry entry = new Entry(id, transaction);
+
+		// Back-pressure: while the ring is full, wake the writer up and give it a moment to catch up.
+		while(!queue.offer(entry)) {
+			backPressureWaits.incrementAndGet();
+			if(closed.get())
+				flush();
+			else {
+				LockSupport.unpark(writer);
+				LockSupport.parkNanos(this, BACK_PRESSURE_PAUSE_NANOS);
+			}
+		}
+
+		// Once closed, nobody else will write the queue anymore.  Otherwise, only wake the writer up early for a full batch.
+		if(closed.get())
+			flush();
+		else if(queue.size() >= batchSize)
+			LockSupport.unpark(writer);
+		return transaction;
+	}
+
+	/**
+	 * Write every Transaction that was queued so far, and wait until they are committed.
+	 * @return Boolean: True if the queue is now empty, False if a batch could not be written (it stays queued)
+	 */
+	public synchronized boolean flush() {
+		while(true) {
+			if(batch.isEmpty() && queue.drainTo(batch, batchSize) == 0)
+				return true;
+			if(writeBatch()) {
+				batch.clear();
+				failedAttempts = 0;
+				continue;
+			}
+
+			// Once the batch failed often enough, one of its Transactions is probably at fault: write them one at a time instead.
+			if(++failedAttempts < maxRetries || !writeOneByOne())
+				return false;
+			failedAttempts = 0;
+		}
+	}
+
+	/**
+	 * Stop the background writer, and write whatever is still queued.  Calling this more than once does nothing.
+	 */
+	@Override
+	public void close() {
+		if(!closed.compareAndSet(false, true))
+			return;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 5000);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(!flush())
+			System.out.println("Error, " + getQueuedCount() + " queued transaction(s) could not be written before shutting down");
+	}
+
+	/**
+	 * The background writer: sleep until a full batch is waiting or the flush interval is up, then write everything that is queued.
+	 */
+	private void runWriter() {
+		while(!closed.get()) {
+			if(queue.size() < batchSize)
+				LockSupport.parkNanos(this, flushIntervalNanos);
+			flush();
+		}
+	}
+
+	/**
+	 * Insert the current batch with a single JDBC batch, and commit it once.
+	 * @return Boolean: True if the batch was committed, False otherwise (nothing of it was written)
+	 */
+	private boolean writeBatch() {
+		try(Connection connection = DBConnection.getConnection()) {
+			connection.setAutoCommit(false);
+			PreparedStatement ps = connection.prepareStatement(INSERT);
+			for(Entry entry : batch) {
+				setColumns(ps, entry);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+			connection.commit();
+			ps.close();
+
+			transactionsWritten.addAndGet(batch.size());
+			batchesWritten.incrementAndGet();
+			return true;
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			// Returning the connection to the pool rolls back whatever part of the batch went through.
+			System.out.println("Error, the queued transactions could not be written: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Insert the current batch one Transaction (and one commit) at a time, setting aside the ones that fail in transactions_dead_letter. <br>
+	 * If a Transaction can't be set aside either while the database still answers, it is printed to the console instead, so nothing is held up behind it.
+	 * If the database stops answering altogether, whatever is left of the batch stays queued.
+	 * @return Boolean: True if the whole batch was dealt with, False if the database could not be reached (the rest is retried later)
+	 */
+	private boolean writeOneByOne() {
+		try(Connection connection = DBConnection.getConnection()) {
+			PreparedStatement ps = connection.prepareStatement(INSERT);
+			Iterator<Entry> iterator = batch.iterator();
+			while(iterator.hasNext()) {
+				Entry entry = iterator.next();
+				try {
+					setColumns(ps, entry);
+					ps.executeUpdate();
+					transactionsWritten.incrementAndGet();
+				}
+				catch(SQLException e) {
+					Metrics.recordError();
+					deadLetter(connection, entry, e);
+				}
+				iterator.remove();
+			}
+			ps.close();
+			batchesWritten.incrementAndGet();
+			return true;
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println("Error, the queued transactions could not be written: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Set aside a Transaction that could not be inserted, along with the error.
+	 * @throws SQLException if the database no longer answers (the Transaction should stay queued)
+	 */
+	private void deadLetter(Connection connection, Entry entry, SQLException error) throws SQLException {
+		Transaction transaction = entry.transaction;
+		try {
+			PreparedStatement ps = connection.prepareStatement(DEAD_LETTER);
+			setColumns(ps, entry);
+			ps.setString(9, error.getMessage());
+			ps.executeUpdate();
+			ps.close();
+			System.out.println("Error, transaction " + transaction.getId() + " could not be written, and was set aside: " + error.getMessage());
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			if(!connection.isValid(1))
+				throw e;
+			System.out.println("Error, transaction " + transaction.getId() + " could not be written or set aside: " + error.getMessage() + "\n"
+					+ transaction.getType() + ", user " + entry.userId + ", account " + transaction.getAccountId() + " (" + transaction.getAccountName() + "), amount "
+					+ Money.format(transaction.getAmount()) + ", balance after " + Money.format(transaction.getBalanceAfter()) + ", at " + new Timestamp(transaction.getTimestamp()));
+		}
+		deadLettered.incrementAndGet();
+	}
+
+	/**
+	 * Set the 8 columns of a Transaction on an INSERT (or DEAD_LETTER) statement.
+	 */
+	private static void setColumns(PreparedStatement ps, Entry entry) throws SQLException {
+		Transaction transaction = entry.transaction;
+		ps.setInt(1, transaction.getId());
+		ps.setString(2, transaction.getType().name());
+		ps.setInt(3, transaction.getAccountId());
+		ps.setString(4, transaction.getAccountName());
+		ps.setBigDecimal(5, Money.toBigDecimal(transaction.getAmount()));
+		ps.setBigDecimal(6, Money.toBigDecimal(transaction.getBalanceAfter()));
+		ps.setInt(7, entry.userId);
+		ps.setTimestamp(8, new Timestamp(transaction.getTimestamp()));
+	}
+
+	// The TransactionDAO itself
+	/**
+	 * Queue a new Transaction that deals with the creation of a new Bank account.
+	 * @param id : the user id that this transaction is associated with
+	 * @param account : the newly created Account (its id, name, and initial balance are recorded)
+	 * @return Boolean: True if the transaction was queued, False otherwise
+	 */
+	@Override
+	public boolean createTransaction(int id, Account account) {
+		try {
+			append(id, TransactionType.CREATE, account.getId(), account.getName(), account.getBalance(), account.getBalance());
+			return true;
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println(e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Flush the queue first, so the page includes every Transaction that was recorded so far.
+	 */
+	@Override
+	public List<Transaction> getTransactionHistory(int id, int lastSeenId, int pageSize) {
+		flush();
+		return super.getTransactionHistory(id, lastSeenId, pageSize);
+	}
+
+	/**
+	 * This only knows the Account's id, so the Transaction is read from the Account row right away (after flushing the queue, to keep the order).
+	 */
+	@Override
+	public void updateTransaction(int id, int accountId, int mode, long balance) {
+		flush();
+		super.updateTransaction(id, accountId, mode, balance);
+	}
+
+	/**
+	 * Flush the queue first, since the Account is about to be deleted.
+	 */
+	@Override
+	public boolean deleteTransaction(int id, int accountId) {
+		flush();
+		return super.deleteTransaction(id, accountId);
+	}
+
+	/**
+	 * Flush the queue first, so no queued Transaction of this User is written after the User is gone.
+	 */
+	@Override
+	public void removeTransactions(int id) {
+		flush();
+		super.removeTransactions(id);
+	}
+
+	/**
+	 * Simply return the number of Transactions waiting to be written.
+	 * @return int: the number of queued Transactions
+	 */
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Simply return the number of Transactions written so far.
+	 * @return long: the number of written Transactions
+	 */
+	public long getTransactionsWritten() {
+		return transactionsWritten.get();
+	}
+
+	/**
+	 * Simply return the number of batches (i.e. commits) written so far.
+	 * @return long: the number of batches
+	 */
+	public long getBatchesWritten() {
+		return batchesWritten.get();
+	}
+
+	/**
+	 * Simply return the number of Transactions that could not be written, and were set aside instead.
+	 * @return long: the number of dead-lettered Transactions
+	 */
+	public long getDeadLetteredCount() {
+		return deadLettered.get();
+	}
+
+	/**
+	 * Simply return the number of times a caller had to wait because the queue was full.
+	 * @return long: the number of waits
+	 */
+	public long getBackPressureWaits() {
+		return backPressureWaits.get();
+	}
+}
@@ -5,7 +5,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import entities.Account;
+import entities.Transaction;
 import entities.User;
+import entities.UserProjection;
 import exceptions.InvalidLoginException;
 import exceptions.NoSuchUserExistsException;
 import exceptions.SameUsernameException;
@@ -19,22 +21,31 @@ public interface UserDAO {
 	// Create
 	boolean createUser(User user);
 	boolean createBankAccount(int id, Account account);
+	long reserveTransactionId();
 	
 	// Read
 	User getUserByUsername(String username) throws NoSuchUserExistsException;
+	// Only what the projection asks for is loaded up front; the rest is loaded the first time it is used
+	User getUserByUsername(String username, UserProjection projection) throws NoSuchUserExistsException;
 	User getUserByLoginInformation(String username, String password) throws InvalidLoginException;
 	List<Account> getAllUserBankAccounts(User user);
 	Account getAccount(int id, String accountName);
+	List<Transaction> getTransactionHistory(int id, int lastSeenId, int pageSize);
+	// Keyset pagination through every username (lower case, in order): pass NULL, then the last username of the previous page
+	List<String> getUsernames(String lastSeenUsername, int pageSize);
 	int getKey();
 	
 	// Update
-	void updateBankAccount(int id, Account account);
-	void updateUserTransactions(int id, String accountName, int mode, double balance);
+	boolean updateBankAccount(int id, Account account);
+	void updateUserTransactions(int id, int accountId, int mode, long balance);
+	boolean updateBankAccountWithTransaction(int id, Account account, int mode, long balance);
+	// Exactly once per transaction id: TRUE if deposited (now or before), FALSE if the account is gone, NULL if the query failed
+	Boolean depositBankAccountOnce(int id, int accountId, long transactionId, long balance);
 	
 	// Delete
 	void deleteUserTransactions(int id);
 	void deleteUserByUsername(String username) throws NoSuchUserExistsException;
-	boolean deleteBankAccount(int id, String accountName);
+	boolean deleteBankAccount(int id, int accountId);
 	
 	
 }
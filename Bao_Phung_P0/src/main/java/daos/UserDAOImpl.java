@@ -6,16 +6,22 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLTimeoutException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
 
 import ciphers.PasswordMasker;
 import entities.Account;
+import entities.Transaction;
 import entities.User;
+import entities.UserProjection;
 import exceptions.InvalidLoginException;
 import exceptions.NoSuchUserExistsException;
 import exceptions.SameUsernameException;
 import util.DBConnection;
+import util.Gauges;
+import util.Metrics;
+import util.Money;
 
 /**
  * Implement the DAO's of each user. <br>
@@ -31,35 +37,67 @@ public class UserDAOImpl implements UserDAO{
 	// For the bonus, also 1 of a Transaction Table.
 	private static TransactionDAO transactions;
 	
+	// The same Transaction Table when it is write-behind (NULL otherwise), so the queue can be flushed before the login query reads it.
+	private static TransactionDAOWriteBehindImpl ledger;
+	
 	
 	/**
 	 * Creates a single instance of the DAO implementation of Users.
 	 */
 	public UserDAOImpl() {
 		masker = new PasswordMasker();
-		accounts = new AccountDAOImpl();
-		transactions = new TransactionDAOImpl();
+		createTables();
 	}
 	
 	public UserDAOImpl(int key) {
 		masker = new PasswordMasker(key);
-		accounts = new AccountDAOImpl();
-		transactions = new TransactionDAOImpl();
+		createTables();
+	}
+	
+	/**
+	 * Create the Account and Transaction tables. <br>
+	 * With -Dbank.ledger=write-behind, Transactions are queued and written in batches by a background thread (see TransactionDAOWriteBehindImpl);
+	 * otherwise, every Transaction is written in the same round trip as the change it records. <br>
+	 * Every call to either table is timed (see Metrics). <br>
+	 * The tables are only created by the first DAO: every later one shares them, so there is only ever one ledger (and one ledger-writer thread)
+	 * whose queue every read flushes.
+	 */
+	private static synchronized void createTables() {
+		if(accounts != null)
+			return;
+		if("write-behind".equalsIgnoreCase(System.getProperty("bank.ledger"))) {
+			TransactionDAOWriteBehindImpl writeBehind = new TransactionDAOWriteBehindImpl();
+			ledger = writeBehind;
+			accounts = Metrics.instrument(AccountDAO.class, new AccountDAOImpl(writeBehind), "AccountDAO");
+			transactions = Metrics.instrument(TransactionDAO.class, writeBehind, "TransactionDAO");
+			Metrics.register(new Gauges("Ledger")
+					.add("QueuedCount", writeBehind::getQueuedCount)
+					.add("TransactionsWritten", writeBehind::getTransactionsWritten)
+					.add("BatchesWritten", writeBehind::getBatchesWritten)
+					.add("BackPressureWaits", writeBehind::getBackPressureWaits)
+					.add("DeadLetteredCount", writeBehind::getDeadLetteredCount));
+		}
+		else {
+			accounts = Metrics.instrument(AccountDAO.class, new AccountDAOImpl(), "AccountDAO");
+			transactions = Metrics.instrument(TransactionDAO.class, new TransactionDAOImpl(), "TransactionDAO");
+		}
 	}
 	
 	// Create
 	/**
-	 * Adds a single User to our database.
+	 * Adds a single User to our database. <br>
+	 * On success, the User's id is set to the one the database generated.
 	 * @param user : a single user
 	 * @return none: either the operation was successful or throw a SameUsernameException (non-unique username found)
 	 */
 	public boolean createUser(User user){
-		try {
+		try(Connection connection = DBConnection.getConnection()) {
 			// First, call the add_user procedure. 
 			// It takes in 4 arguments: the user's full name, the user's username, the user's password, and 0 (by default)
+			// And hands back the generated user id as a 5th (OUT) argument.
 			// This will fail if the username is NOT unique in the database.
-			String callAddUserProcedure = "CALL add_user(?, ?, ?, ?)";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(callAddUserProcedure);	
+			String callAddUserProcedure = "CALL add_user(?, ?, ?, ?, ?, ?)";
+			CallableStatement cs = connection.prepareCall(callAddUserProcedure);	
 			cs.setString(1, user.getFullName());
 			cs.setString(2,  user.getUsername());
 			cs.setString(3,  masker.encode(user.getPassword()));
@@ -70,8 +108,14 @@ public class UserDAOImpl implements UserDAO{
 			else
 				cs.setInt(4, 0);
 			
-			// Execute the procedure
+			cs.registerOutParameter(5, Types.INTEGER);
+			
+			// The 6th argument is the key the password was encoded with
+			cs.setInt(6, masker.getKey());
+			
+			// Execute the procedure, and keep the generated id
 			cs.execute();
+			user.setId(cs.getInt(5));
 			
 			// And close out of it afterwards
 			cs.close();
@@ -83,6 +127,7 @@ public class UserDAOImpl implements UserDAO{
 			return true;
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			// To prevent the beginning of the program displaying an error (adding the Superuser very early on)
 			// Only display the error message if the user is NOT a superuser.
 			if(!user.getSuperUserStatus())
@@ -98,100 +143,203 @@ public class UserDAOImpl implements UserDAO{
 	 * @return Boolean: True if the creation of a bank object is successful, False otherwise.
 	 */
 	public boolean createBankAccount(int id, Account account) {
-		if(transactions.createTransaction(id, account.getName()))
-			return accounts.createAccount(id, account);
-		return false;
+		// The Account and its Transaction are written together, and the Account comes back with its generated id.
+		return accounts.createAccountWithTransaction(id, account);
+	}
+	
+	/**
+	 * Reserve the id of a transaction that is recorded later on, with depositBankAccountOnce().
+	 * @return long: the transaction id, or 0 if no id could be reserved
+	 */
+	public long reserveTransactionId() {
+		return accounts.reserveTransactionId();
 	}
 	
 	// Read
 	/**
-	 * Retrieve a specific User given a username.
+	 * Retrieve a specific User (along with their accounts) given a username.
 	 * @param username : the username to search for
 	 * @return User: either return the found user or throw a NoSuchUserExistsException (self explanatory)
 	 */
 	public User getUserByUsername(String username) throws NoSuchUserExistsException{
+		return getUserByUsername(username, UserProjection.ACCOUNTS);
+	}
+	
+	/**
+	 * Retrieve a specific User given a username, loading only what the projection asks for up front.
+	 * @param username : the username to search for
+	 * @param projection : what to load along with the User
+	 * @return User: either return the found user or throw a NoSuchUserExistsException (self explanatory)
+	 */
+	public User getUserByUsername(String username, UserProjection projection) throws NoSuchUserExistsException{
+		User user;
 		try {
-			// Prepare a simple Select statement, and make sure to ignore case sensitivity.
-			String SQLStatement = "SELECT * FROM Users WHERE LOWER(username) = ?";
-			PreparedStatement ps = DBConnection.getConnection().prepareStatement(SQLStatement);
-			ps.setString(1, username.toLowerCase());
-			ResultSet rs = ps.executeQuery();
-			
-			if(rs.next()) {
-				// For the boolean field (isSuperUser), make it 1 or 0, depending on what the returned parameter is.
-				// How to read (condition ? do this : do that) => if the condition holds true, return "do this"; otherwise, return "do that".
-				boolean isSuperUser = (rs.getInt(5) == 1 ? true : false);
-				
-				// Then, create a new User based on the queried information.
-				User user = new User(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), isSuperUser);
-				
-				// Don't return the user yet!  Update the user's list of accounts
-				user.setNewAccounts(accounts.getAllAccounts(user.getId()));
-				
-				// Now return the user
-				return user;
-			}
-			else
-				throw new NoSuchUserExistsException(username);
-			
+			// Load the User and whatever else the projection asks for in a single round trip.
+			user = hydrateUser(username, null, projection);
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println("Error, there was a problem executing this query: " + e.getMessage());
+			return null;
 		}
 		
-		return null;
+		if(user == null)
+			throw new NoSuchUserExistsException(username);
+		
+		// Now return the user
+		return user;
 	}
 	
 	/**
 	 * Given a username and password as inputs, return the User that has the same username (case insensitive) AND password as the input. <br>
-	 * For the password field, note that the User's password is stored in encryption form.
+	 * For the password field, note that the User's password is stored in encryption form, along with the key it was encoded with. <br>
+	 * The User, their accounts, and their most recent transactions are all loaded in a single round trip.
 	 * @param username : the input username
 	 * @param password : the input password
-	 * @return User: either return the User with the same username and password as the input or return null.
-	 * @throws NoSuchUserExistsException  
+	 * @return User: the User with the same username and password as the input
+	 * @throws InvalidLoginException if no User has that username and password
 	 */
 	public User getUserByLoginInformation(String username, String password) throws InvalidLoginException{
+		User user;
 		try {
-			// Attempt to retrieve the query by login information
-			String SQLStatement = "SELECT * FROM Users WHERE lower(username) = ? AND password = ?";
-			PreparedStatement ps = DBConnection.getConnection().prepareStatement(SQLStatement);
-			String lowerUsername = username.toLowerCase(), passwordEncoded = masker.encode(password);
-			ps.setString(1, lowerUsername);
-			ps.setString(2, passwordEncoded);
-						
+			if(ledger != null)
+				ledger.flush();
+			user = hydrateUser(username, password, UserProjection.TRANSACTIONS);
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			throw new InvalidLoginException();
+		}
+		
+		if(user == null)
+			throw new InvalidLoginException();
+		
+		// Finally, return the user
+		return user;
+	}
+	
+	/**
+	 * Load a User along with what the projection asks for (their accounts, and their most recent transactions) with a single query. <br>
+	 * Whatever the projection leaves out is loaded the first time the User uses it. <br>
+	 * The User row, the Account rows, and the Transaction rows are stacked on top of each other with UNION ALL, and the first column tells them apart: <br>
+	 * - 'U' : u_id, username, is_super, full_name, password_key, previous_key, the password in the message column, and the previous password after it <br>
+	 * - 'T' : t_id, t_type, a_id, account_name, amount, balance_after, created_at, message (the same columns as TransactionDAOImpl.COLUMNS) <br>
+	 * - 'A' : a_id, version, account_name, and the balance in the amount column <br>
+	 * Rows come back as the User first, then the transactions (newest first), then the accounts (by account id).
+	 * @param username : the username to search for (ignoring case)
+	 * @param password : the password that has to match as well (see isPasswordOf()), or NULL to only search by username
+	 * @param projection : what to load along with the User
+	 * @return User: the hydrated User, or NULL if no User matched
+	 * @throws SQLException if the query fails
+	 */
+	private User hydrateUser(String username, String password, UserProjection projection) throws SQLException {
+		String SQLStatement = "WITH U AS (SELECT u_id, full_name, username, password, is_super, password_key, previous_password, previous_key "
+				+ "FROM Users WHERE LOWER(username) = ?) "
+				+ "SELECT * FROM ("
+				+ "SELECT 'U' kind, u_id id, username, is_super, full_name, password_key, previous_key, CAST(NULL AS TIMESTAMP), password, previous_password FROM U "
+				+ (projection.withAccounts() ? "UNION ALL SELECT 'A', A.a_id, NULL, A.version, A.account_name, A.balance, NULL, NULL, NULL, NULL "
+						+ "FROM Accounts A INNER JOIN U ON A.u_id = U.u_id " : "")
+				+ (projection.withTransactions() ? "UNION ALL SELECT * FROM (SELECT 'T', " + TransactionDAOImpl.COLUMNS + ", NULL FROM Transactions "
+						+ "WHERE u_id = (SELECT u_id FROM U) ORDER BY t_id DESC) WHERE ROWNUM <= " + User.RECENT_TRANSACTIONS : "")
+				+ ") ORDER BY kind DESC, CASE kind WHEN 'T' THEN -id ELSE id END";
+		
+		User user = null;
+		List<Account> userAccounts = new ArrayList<Account>();
+		List<Transaction> userTransactions = new ArrayList<Transaction>();
+		try(Connection connection = DBConnection.getConnection()) {
+			// The query and the hydration (reading the rows and building the User from them) are timed separately.
+			long start = System.nanoTime();
+			PreparedStatement ps = connection.prepareStatement(SQLStatement);
+			ps.setString(1, username.toLowerCase());
 			ResultSet rs = ps.executeQuery();
+			long queried = System.nanoTime();
+			Metrics.record("UserDAO", "hydrateUser.query", queried - start);
 			
-			// If there exists at least 1 ResultSet, then check if that result set's login and password match our input.
-			if(rs.next()) {
-				// In addition to checking the two conditions, check if there is another ResultSet entry.
-				// If so, then something is wrong with our DB.
-				if(!lowerUsername.equals(rs.getString(3)) && !passwordEncoded.equals(rs.getString(4)) && rs.next())
-					throw new InvalidLoginException();
+			// Sort every row into the User, their accounts, or their transactions, depending on the first column.
+			boolean passwordMatched = (password == null);
+			while(rs.next()) {
+				String kind = rs.getString(1);
+				if(kind.equals("U")) {
+					user = new User(rs.getInt(2), rs.getString(5), rs.getString(3), rs.getString(9), rs.getInt(4) == 1);
+					if(password != null)
+						passwordMatched = isPasswordOf(connection, user, password, getKey(rs, 6), rs.getString(10), getKey(rs, 7));
+				}
+				else if(kind.equals("A"))
+					userAccounts.add(new Account(rs.getInt(2), rs.getString(5), Money.fromBigDecimal(rs.getBigDecimal(6)), rs.getInt(4)));
+				else
+					userTransactions.add(TransactionDAOImpl.toTransaction(rs, 2));
 			}
 			
-			// For the boolean field (isSuperUser), make it 1 or 0, depending on what the returned parameter is.
-			// How to read (condition ? do this : do that) => if the condition holds true, return "do this"; otherwise, return "do that".
-			boolean isSuperUser = (rs.getInt(5) == 1 ? true : false);
-			
-			// Don't return the user yet: first create a new User with the 5 fields
-			User user = new User(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), isSuperUser);
-			
-			// Next, update the User's list of accounts
-			user.setNewAccounts(accounts.getAllAccounts(user.getId()));
-			
-			// Also update their list of Transactions
-			user.setNewTransactions(transactions.getRecentTransactions(user.getId())); 
-			
 			// Safely close the statements
-			ps.close();
 			rs.close();
-			
-			// Finally, return the user
-			return user;
+			ps.close();
+			Metrics.record("UserDAO", "hydrateUser.rows", System.nanoTime() - queried);
+			if(!passwordMatched)
+				return null;
 		}
-		catch(SQLException e) {
-			throw new InvalidLoginException();
+		
+		// If the User exists, hand them their accounts and transactions (or how to load them later) before returning them.
+		if(user != null) {
+			int id = user.getId();
+			if(projection.withAccounts())
+				user.setNewAccounts(userAccounts);
+			else
+				user.setAccountLoader(() -> accounts.getAllAccounts(id));
+			if(projection.withTransactions())
+				user.setNewTransactions(userTransactions);
+			else
+				user.setTransactionLoader(() -> transactions.getRecentTransactions(id));
 		}
+		return user;
+	}
+	
+	/**
+	 * Check a password against the one stored for the User, which was encoded with its own key (the key in key.properties if it has none). <br>
+	 * While a key rotation is under way (see PasswordRekeyer), the password it replaced is checked as well: if only that one matches,
+	 * the current password is simply encoded again from the password that was just typed in.
+	 * @param connection : the connection the User was read with
+	 * @param user : the User, holding the current (encoded) password
+	 * @param password : the password that was typed in
+	 * @param passwordKey : the key of the current password, or NULL
+	 * @param previousPassword : the password the last key rotation replaced, or NULL
+	 * @param previousKey : the key of the previous password, or NULL
+	 * @return Boolean: True if the password matches, False otherwise
+	 * @throws SQLException if the current password had to be fixed and the update failed
+	 */
+	private boolean isPasswordOf(Connection connection, User user, String password, Integer passwordKey, String previousPassword, Integer previousKey)
+			throws SQLException {
+		PasswordMasker current = maskerFor(passwordKey);
+		if(current.matches(password, user.getPassword()))
+			return true;
+		if(previousPassword == null || !maskerFor(previousKey).matches(password, previousPassword))
+			return false;
+		
+		// The rotation couldn't re-encode this password exactly, so do it now that we know what it is.
+		String encoded = current.encode(password);
+		String SQLStatement = "UPDATE Users SET password = ?, previous_password = NULL, previous_key = NULL WHERE u_id = ? AND password = ?";
+		PreparedStatement ps = connection.prepareStatement(SQLStatement);
+		ps.setString(1, encoded);
+		ps.setInt(2, user.getId());
+		ps.setString(3, user.getPassword());
+		ps.executeUpdate();
+		ps.close();
+		user.setPassword(encoded);
+		return true;
+	}
+	
+	/**
+	 * Return the masker for a stored password's key: the one this DAO uses if there is no key (or it is the same).
+	 */
+	private static PasswordMasker maskerFor(Integer key) {
+		return (key == null || key == masker.getKey() ? masker : new PasswordMasker(key));
+	}
+	
+	/**
+	 * Read a key column, which may be NULL.
+	 */
+	private static Integer getKey(ResultSet rs, int column) throws SQLException {
+		int key = rs.getInt(column);
+		return (rs.wasNull() ? null : key);
 	}
 	
 	/**
@@ -202,6 +350,40 @@ public class UserDAOImpl implements UserDAO{
 		return accounts.getAllAccounts(user.getId());
 	}
 	
+	/**
+	 * Return a single page of every username (in lower case), in order: the (at most) pageSize usernames that come after lastSeenUsername. <br>
+	 * The index on LOWER(username) lets Oracle read the page straight off the index, no matter how far into the table it is.
+	 * @param lastSeenUsername : the last username of the previous page, or NULL for the first page
+	 * @param pageSize : the maximum number of usernames to return
+	 * @return List<String>: the page of usernames, or NULL if the query failed
+	 */
+	public List<String> getUsernames(String lastSeenUsername, int pageSize) {
+		List<String> usernames = new ArrayList<String>();
+		try(Connection connection = DBConnection.getConnection()) {
+			// Oracle treats '' as NULL, so the first page simply has no lower bound.
+			String SQLStatement = "SELECT * FROM (SELECT LOWER(username) FROM Users "
+					+ (lastSeenUsername == null ? "" : "WHERE LOWER(username) > ? ") + "ORDER BY LOWER(username)) WHERE ROWNUM <= ?";
+			PreparedStatement ps = connection.prepareStatement(SQLStatement);
+			int index = 1;
+			if(lastSeenUsername != null)
+				ps.setString(index++, lastSeenUsername);
+			ps.setInt(index, pageSize);
+			ResultSet rs = ps.executeQuery();
+			while(rs.next())
+				usernames.add(rs.getString(1));
+			
+			// Safely close the statements
+			rs.close();
+			ps.close();
+			return usernames;
+		}
+		catch(SQLException e) {
+			Metrics.recordError();
+			System.out.println(e.getMessage());
+			return null;
+		}
+	}
+	
 	/**
 	 * Simply return the number of users.
 	 * @return number of users.
@@ -211,6 +393,14 @@ public class UserDAOImpl implements UserDAO{
 		return 0;
 	}
 	
+	/**
+	 * Simply call the TransactionDAO's version of getTransactionHistory() and return it.
+	 * @return List<Transaction>: a single page of the User's transactions, newest first
+	 */
+	public List<Transaction> getTransactionHistory(int id, int lastSeenId, int pageSize) {
+		return transactions.getTransactionHistory(id, lastSeenId, pageSize);
+	}
+	
 	/**
 	 * Return the cipher key used for encryption.
 	 * @return key
@@ -231,23 +421,49 @@ public class UserDAOImpl implements UserDAO{
 	// Update
 	
 	/**
-	 * Update the given account with the specific id.
+	 * Update the given account with the specific id, as long as it wasn't changed since it was read.
 	 * @param id : the user id
 	 * @param account : the Account object containing the new balance
+	 * @return Boolean: True if the update went through, False if the Account changed in the meantime
 	 */
-	public void updateBankAccount(int id, Account account) {
-		accounts.updateAccount(id, account);
+	public boolean updateBankAccount(int id, Account account) {
+		return accounts.updateAccount(id, account);
 	}
 	
 	/**
 	 * Add a new transaction for deposit/withdraw (mode) detailing the change in Account balance
 	 * @param id : the user id
-	 * @param accountName : the account name that is being despoited/withdrawn from
+	 * @param accountId : the id of the account that is being despoited/withdrawn from
+	 * @param mode : 0 for deposit, 1 for withdraw
+	 * @param balance : the balance (in cents) that is either deposited or withdrawn
+	 */
+	public void updateUserTransactions(int id, int accountId, int mode, long balance) {
+		transactions.updateTransaction(id, accountId, mode, balance);
+	}
+	
+	
+	/**
+	 * Deposit to or withdraw from the Account and record the transaction together, in a single round trip.
+	 * @param id : the user id
+	 * @param account : the Account to change; its balance and version are refreshed on success
 	 * @param mode : 0 for deposit, 1 for withdraw
-	 * @param balance : the balance that is either deposited or withdrawn
+	 * @param balance : the balance (in cents) that is either deposited or withdrawn
+	 * @return Boolean: True if the balance changed, False if the account is missing or doesn't hold enough money
+	 */
+	public boolean updateBankAccountWithTransaction(int id, Account account, int mode, long balance) {
+		return accounts.updateAccountWithTransaction(id, account, mode, balance);
+	}
+
+	/**
+	 * Deposit to the Account and record the transaction with a reserved id, unless a transaction with that id was recorded already.
+	 * @param id : the user id
+	 * @param accountId : the id of the Account to deposit to
+	 * @param transactionId : the id from reserveTransactionId()
+	 * @param balance : the balance (in cents) to deposit
+	 * @return Boolean: True if the money was deposited (now or before), False if the account is missing, NULL if the query failed
 	 */
-	public void updateUserTransactions(int id, String accountName, int mode, double balance) {
-		transactions.updateTransaction(id, accountName, mode, balance);
+	public Boolean depositBankAccountOnce(int id, int accountId, long transactionId, long balance) {
+		return accounts.depositOnce(id, accountId, transactionId, balance);
 	}
 	
 	
@@ -258,14 +474,15 @@ public class UserDAOImpl implements UserDAO{
 	 * @return none: either the operation was successful or throw a NoSuchUserExistsException
 	 */
 	public void deleteUserByUsername(String username) throws NoSuchUserExistsException{
-		try {
+		try(Connection connection = DBConnection.getConnection()) {
 			String SQLStatement = "DELETE Users WHERE username = ?";
-			CallableStatement cs = DBConnection.getConnection().prepareCall(SQLStatement);
+			CallableStatement cs = connection.prepareCall(SQLStatement);
 			cs.setString(1, username);
 			cs.execute();
 			cs.close();
 		}
 		catch(SQLException e) {
+			Metrics.recordError();
 			System.out.println("Error, something happened with the query: " + e.getMessage());
 		}
 	}
@@ -280,14 +497,13 @@ public class UserDAOImpl implements UserDAO{
 	}
 	
 	/**
-	 * Given a user id and accountName, delete the banking account with those 2 parameters.
+	 * Given a user id and account id, delete the banking account with those 2 parameters.
 	 * @param id : the User's id
-	 * @param accountName : the account name of the bank belonging to the User.
+	 * @param accountId : the id of the bank account belonging to the User.
 	 * @return Boolean: True if the operation was successful, False otherwise.
 	 */
-	public boolean deleteBankAccount(int id, String accountName) {
-		if(transactions.deleteTransaction(id, accountName))
-			return accounts.deleteAccount(id, accountName);
-		return false;
+	public boolean deleteBankAccount(int id, int accountId) {
+		// The Account is deleted and its DELETE transaction recorded together, only if it is still empty.
+		return accounts.deleteAccount(id, accountId);
 	}
 }
@@ -0,0 +1,271 @@
+package daos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+
+import ciphers.PasswordMasker;
+import entities.Account;
+import entities.Transaction;
+import entities.User;
+import entities.UserProjection;
+import exceptions.InvalidLoginException;
+import exceptions.NoSuchUserExistsException;
+import util.Metrics;
+
+/**
+ * An in-memory version of UserDAOImpl. <br>
+ * It behaves exactly like the Oracle version (same ids, same messages, same encrypted passwords), but keeps every table inside a MemoryDatabase,
+ * so the service layer can run without a database for benchmarking, load testing, and single-node deployments.
+ * @author baoph
+ *
+ */
+public class UserDAOMemoryImpl implements UserDAO{
+
+	private final MemoryDatabase database;
+	private final PasswordMasker masker;
+	private final AccountDAO accounts;
+	private final TransactionDAO transactions;
+
+	/**
+	 * Creates an in-memory User table (along with its Account and Transaction tables) with a random cipher key.
+	 */
+	public UserDAOMemoryImpl() {
+		this(new MemoryDatabase(), new PasswordMasker());
+	}
+
+	/**
+	 * Creates an in-memory User table (along with its Account and Transaction tables) with the given cipher key.
+	 * @param key : the cipher key; a random one is chosen if it's outside [10, 30]
+	 */
+	public UserDAOMemoryImpl(int key) {
+		this(new MemoryDatabase(), new PasswordMasker(key));
+	}
+
+	private UserDAOMemoryImpl(MemoryDatabase database, PasswordMasker masker) {
+		this.database = database;
+		this.masker = masker;
+		this.accounts = Metrics.instrument(AccountDAO.class, new AccountDAOMemoryImpl(database), "AccountDAO");
+		this.transactions = Metrics.instrument(TransactionDAO.class, new TransactionDAOMemoryImpl(database), "TransactionDAO");
+	}
+
+	// Create
+	/**
+	 * Adds a single User to the in-memory table, but only if the username (ignoring case) is not taken yet. <br>
+	 * On success, the User's id is set to the generated one.
+	 * @param user : a single user
+	 * @return Boolean: True if the user was added, False otherwise
+	 */
+	@Override
+	public boolean createUser(User user) {
+		String key = user.getUsername().toLowerCase();
+
+		// Only take an id from the sequence once we know the username is free, just like the add_user procedure would.
+		MemoryDatabase.UserRow row = null;
+		if(database.users.containsKey(key) || database.users.putIfAbsent(key, row = new MemoryDatabase.UserRow(database.userIdGenerator.incrementAndGet(),
+				user.getFullName(), user.getUsername(), masker.encode(user.getPassword()), user.getSuperUserStatus())) != null) {
+			if(!user.getSuperUserStatus())
+				System.out.println("Error, something happened during the query: the username " + user.getUsername() + " is already taken");
+			return false;
+		}
+
+		user.setId(row.id);
+		if(!user.getSuperUserStatus())
+			System.out.println("Success, you are now registered onto the Bank Application.  Try logging in now.");
+		return true;
+	}
+
+	/**
+	 * Attempt to create a bank account using the User's id and the Account object.
+	 * @param id : the user id
+	 * @param account : the Account object that contains the desired account name and balance
+	 * @return Boolean: True if the creation of a bank object is successful, False otherwise.
+	 */
+	@Override
+	public boolean createBankAccount(int id, Account account) {
+		// The Account and its Transaction are written together, and the Account comes back with its generated id.
+		return accounts.createAccountWithTransaction(id, account);
+	}
+
+	/**
+	 * Reserve the id of a transaction that is recorded later on, with depositBankAccountOnce().
+	 * @return long: the transaction id, or 0 if no id could be reserved
+	 */
+	@Override
+	public long reserveTransactionId() {
+		return accounts.reserveTransactionId();
+	}
+
+	// Read
+	/**
+	 * Retrieve a specific User (along with their accounts) given a username.
+	 * @param username : the username to search for
+	 * @return User: the found user
+	 * @throws NoSuchUserExistsException if no user has that username
+	 */
+	@Override
+	public User getUserByUsername(String username) throws NoSuchUserExistsException {
+		return getUserByUsername(username, UserProjection.ACCOUNTS);
+	}
+
+	/**
+	 * Retrieve a specific User given a username, loading only what the projection asks for up front (the rest is loaded when first used).
+	 * @param username : the username to search for
+	 * @param projection : what to load along with the User
+	 * @return User: the found user
+	 * @throws NoSuchUserExistsException if no user has that username
+	 */
+	@Override
+	public User getUserByUsername(String username, UserProjection projection) throws NoSuchUserExistsException {
+		MemoryDatabase.UserRow row = database.users.get(username.toLowerCase());
+		if(row == null)
+			throw new NoSuchUserExistsException(username);
+		return toUser(row, projection);
+	}
+
+	/**
+	 * Return the User with the same username (case insensitive) AND password as the input, along with their accounts and recent transactions.
+	 * @param username : the input username
+	 * @param password : the input password
+	 * @return User: the logged in user
+	 * @throws InvalidLoginException if the username or password is wrong
+	 */
+	@Override
+	public User getUserByLoginInformation(String username, String password) throws InvalidLoginException {
+		MemoryDatabase.UserRow row = database.users.get(username.toLowerCase());
+		if(row == null || !masker.matches(password, row.password))
+			throw new InvalidLoginException();
+
+		return toUser(row, UserProjection.TRANSACTIONS);
+	}
+
+	/**
+	 * Retrieve all of the User's bank accounts.
+	 * @return List<Account>: the list of bank accounts that the User has.
+	 */
+	@Override
+	public List<Account> getAllUserBankAccounts(User user) {
+		return accounts.getAllAccounts(user.getId());
+	}
+
+	/**
+	 * Simply call the AccountDAO's version of getAccount() and return it.
+	 * @return Account: the Account with the given user id and account name.
+	 */
+	@Override
+	public Account getAccount(int id, String accountName) {
+		return accounts.getAccount(id, accountName);
+	}
+
+	/**
+	 * Simply call the TransactionDAO's version of getTransactionHistory() and return it.
+	 * @return List<Transaction>: a single page of the User's transactions, newest first
+	 */
+	@Override
+	public List<Transaction> getTransactionHistory(int id, int lastSeenId, int pageSize) {
+		return transactions.getTransactionHistory(id, lastSeenId, pageSize);
+	}
+	
+	/**
+	 * Return a single page of every username (in lower case), in order: the (at most) pageSize usernames that come after lastSeenUsername.
+	 * @param lastSeenUsername : the last username of the previous page, or NULL for the first page
+	 * @param pageSize : the maximum number of usernames to return
+	 * @return List<String>: the page of usernames
+	 */
+	@Override
+	public List<String> getUsernames(String lastSeenUsername, int pageSize) {
+		// The rows are already sorted by the lower case username, so a page simply starts right after the last one.
+		NavigableSet<String> usernames = database.users.navigableKeySet();
+		List<String> page = new ArrayList<String>(Math.min(pageSize, usernames.size()));
+		for(String username : (lastSeenUsername == null ? usernames : usernames.tailSet(lastSeenUsername, false))) {
+			if(page.size() == pageSize)
+				break;
+			page.add(username);
+		}
+		return page;
+	}
+	
+	/**
+	 * Return the cipher key used for encryption.
+	 * @return key
+	 */
+	@Override
+	public int getKey() {
+		return masker.getKey();
+	}
+
+	// Update
+	@Override
+	public boolean updateBankAccount(int id, Account account) {
+		return accounts.updateAccount(id, account);
+	}
+
+	@Override
+	public void updateUserTransactions(int id, int accountId, int mode, long balance) {
+		transactions.updateTransaction(id, accountId, mode, balance);
+	}
+
+	/**
+	 * Deposit to or withdraw from the Account and record the transaction together, in a single round trip.
+	 * @param id : the user id
+	 * @param account : the Account to change; its balance and version are refreshed on success
+	 * @param mode : 0 for deposit, 1 for withdraw
+	 * @param balance : the balance (in cents) that is either deposited or withdrawn
+	 * @return Boolean: True if the balance changed, False if the account is missing or doesn't hold enough money
+	 */
+	@Override
+	public boolean updateBankAccountWithTransaction(int id, Account account, int mode, long balance) {
+		return accounts.updateAccountWithTransaction(id, account, mode, balance);
+	}
+
+	/**
+	 * Deposit to the Account and record the transaction with a reserved id, unless a transaction with that id was recorded already.
+	 * @param id : the user id
+	 * @param accountId : the id of the Account to deposit to
+	 * @param transactionId : the id from reserveTransactionId()
+	 * @param balance : the balance (in cents) to deposit
+	 * @return Boolean: True if the money was deposited (now or before), False if the account is missing, NULL if the query failed
+	 */
+	@Override
+	public Boolean depositBankAccountOnce(int id, int accountId, long transactionId, long balance) {
+		return accounts.depositOnce(id, accountId, transactionId, balance);
+	}
+
+	// Delete
+	@Override
+	public void deleteUserTransactions(int id) {
+		transactions.removeTransactions(id);
+	}
+
+	/**
+	 * Delete the User whose username matches the input exactly, just like the SQL version.
+	 * @param username : the username of the User to delete
+	 */
+	@Override
+	public void deleteUserByUsername(String username) throws NoSuchUserExistsException {
+		database.users.computeIfPresent(username.toLowerCase(), (key, row) -> row.username.equals(username) ? null : row);
+	}
+
+	@Override
+	public boolean deleteBankAccount(int id, int accountId) {
+		// The Account is deleted and its DELETE transaction recorded together, only if it is still empty.
+		return accounts.deleteAccount(id, accountId);
+	}
+
+	/**
+	 * Turn a stored row into a brand new User object, along with what the projection asks for (and how to load the rest later).
+	 */
+	private User toUser(MemoryDatabase.UserRow row, UserProjection projection) {
+		User user = new User(row.id, row.fullName, row.username, row.password, row.isSuperUser);
+		int id = row.id;
+		if(projection.withAccounts())
+			user.setNewAccounts(accounts.getAllAccounts(id));
+		else
+			user.setAccountLoader(() -> accounts.getAllAccounts(id));
+		if(projection.withTransactions())
+			user.setNewTransactions(transactions.getRecentTransactions(id));
+		else
+			user.setTransactionLoader(() -> transactions.getRecentTransactions(id));
+		return user;
+	}
+}
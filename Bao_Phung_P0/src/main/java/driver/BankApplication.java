@@ -4,16 +4,22 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Scanner;
 
 import ciphers.PasswordMasker;
+import daos.UserDAO;
+import daos.UserDAOImpl;
+import daos.UserDAOMemoryImpl;
 import entities.Account;
+import entities.Transaction;
 import entities.User;
+import entities.UserProjection;
 import exceptions.DeleteUserWithAccountsException;
 import exceptions.DeletingBankAccountWithMoneyException;
 import exceptions.InvalidLoginException;
@@ -22,9 +28,18 @@ import exceptions.InvalidWithdrawException;
 import exceptions.NoSuchBankExistsException;
 import exceptions.NoSuchUserExistsException;
 import exceptions.SameUsernameException;
+import services.CachingUserServices;
+import services.JournaledUserServices;
 import services.UserServices;
 import services.UserServicesImpl;
+import services.UsernameFilteredUserServices;
 import util.DBConnection;
+import util.Gauges;
+import util.Journal;
+import util.LruCache;
+import util.Metrics;
+import util.Money;
+import util.SchemaMigrator;
 
 /**
  * The class that will run the entire banking system.
@@ -35,7 +50,20 @@ public class BankApplication {
 	// Private variables
 	private static Scanner scanner = new Scanner(System.in);
 	private static User userLoggedIn = null;							
-	private static UserServices services = new UserServicesImpl(DBConnection.getKeyFromFile());
+	
+	// The backend is chosen at startup: -Dbank.backend=memory keeps everything in memory, anything else uses the Oracle database.
+	private static boolean inMemory = "memory".equalsIgnoreCase(System.getProperty("bank.backend"));
+	private static UserDAO users = Metrics.instrument(UserDAO.class,
+			(inMemory ? new UserDAOMemoryImpl(DBConnection.getKeyFromFile()) : new UserDAOImpl(DBConnection.getKeyFromFile())), "UserDAO");
+	private static UserServices services = new UserServicesImpl(users);
+	
+	// With -Dbank.journal=<file>, deposits are acknowledged once they are in a local journal (see JournaledUserServices).
+	private static final int DEFAULT_JOURNAL_CAPACITY = 16 * 1024 * 1024;
+	private static JournaledUserServices journaledServices = null;
+	
+	// The number of transactions shown per page of history: -Dbank.history.pageSize=N
+	private static int historyPageSize = Math.max(1, Math.min(Integer.getInteger("bank.history.pageSize", UserServicesImpl.DEFAULT_HISTORY_PAGE_SIZE),
+			UserServicesImpl.MAX_HISTORY_PAGE_SIZE));
 	
 	/**
 	 * Main function, all console output will be displayed here.
@@ -44,9 +72,59 @@ public class BankApplication {
 	public static void main(String[] args) {
 		
 		// Prematurely exit the program if the connection to the database has failed.
-		if(!DBConnection.isConnected())
+		// The in-memory backend doesn't need a database at all.
+		if(!inMemory && !DBConnection.isConnected())
+			System.exit(1);
+		
+		// Bring the database schema up to date before anything touches it.
+		if(!inMemory && !SchemaMigrator.migrate())
 			System.exit(1);
 		
+		// Only once the schema is up to date, replay the journal (if there is one) and start using it.
+		if(System.getProperty("bank.journal") != null) {
+			try {
+				Journal journal = new Journal(Paths.get(System.getProperty("bank.journal")), Integer.getInteger("bank.journal.capacity", DEFAULT_JOURNAL_CAPACITY));
+				journaledServices = new JournaledUserServices(services, users, journal);
+				services = journaledServices;
+				Metrics.register(new Gauges("Journal")
+						.add("LastSequence", journal::getLastSequence)
+						.add("Checkpoint", journal::getCheckpoint)
+						.add("SyncCount", journal::getSyncCount)
+						.add("ParkedCount", journaledServices::getParkedCount));
+			}
+			catch(IOException e) {
+				System.out.println("Error, the journal could not be opened: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		
+		// Answer lookups and logins of usernames that don't exist without a query (this loads every username once).
+		// Only the in-memory backend can trust the filter completely: anyone else can add users to the database behind this application's back.
+		UsernameFilteredUserServices filteredServices = new UsernameFilteredUserServices(services, users, inMemory);
+		services = filteredServices;
+		Metrics.register(new Gauges("UsernameFilter")
+				.add("RejectedCount", filteredServices::getRejectedCount)
+				.add("StaleMissCount", filteredServices::getStaleMissCount)
+				.add("Insertions", () -> (filteredServices.getFilter() == null ? 0 : filteredServices.getFilter().getInsertions()))
+				.add("ExpectedInsertions", () -> (filteredServices.getFilter() == null ? 0 : filteredServices.getFilter().getExpectedInsertions()))
+				.add("CurrentFalsePositiveRate", () -> (filteredServices.getFilter() == null ? 0 : filteredServices.getFilter().getCurrentFalsePositiveRate())));
+		
+		// Cache the users looked up by username; -Dbank.userCache.size=0 turns the cache off.
+		if(Integer.getInteger("bank.userCache.size", CachingUserServices.DEFAULT_CACHE_SIZE) > 0) {
+			CachingUserServices cachingServices = new CachingUserServices(services);
+			services = cachingServices;
+			LruCache<String, User> cache = cachingServices.getCache();
+			Metrics.register(new Gauges("UserCache")
+					.add("Size", cache::size)
+					.add("Hits", cache::getHits)
+					.add("Misses", cache::getMisses)
+					.add("Evictions", cache::getEvictions)
+					.add("Expirations", cache::getExpirations));
+		}
+		
+		// Finally, time every call made to the services (and publish it all over JMX); -Dbank.metrics=false turns this off.
+		services = Metrics.instrument(UserServices.class, services, "UserServices");
+		
 		// Print hello message to being the program
 		System.out.println("Welcome to my personal Bank Application.");
 		
@@ -71,16 +149,24 @@ public class BankApplication {
 		// Make sure to close the scanner before the program ends!
 		scanner.close();	
 		
-		// Right before closing the program, update the key in key.properties
-		try {
-			FileWriter writeNewKey = new FileWriter("src/main/resources/key.properties");
-			writeNewKey.write("key=" + Integer.toString(services.getKey()));
-			writeNewKey.close();
-		} 
-		catch (IOException e) {
-			System.out.println("Error, failed to write onto key.properties");
+		// Right before closing the program, save the key in key.properties if it was made up at startup.
+		// If the file holds a valid key, leave it alone: a key rotation (see PasswordRekeyer) may have changed it while the program was running.
+		int savedKey = DBConnection.getKeyFromFile();
+		if(savedKey < 10 || savedKey > 30)
+			DBConnection.saveKeyToFile(services.getKey());
+		
+		// Apply whatever deposits are still in the journal while the database is still reachable
+		if(journaledServices != null) {
+			try {
+				journaledServices.close();
+			}
+			catch(IOException e) {
+				System.out.println("Error, failed to close the journal");
+			}
 		}
 		
+		// Finally, close every pooled connection to the database
+		DBConnection.shutdown();
 	}
 	
 	/**
@@ -197,12 +283,12 @@ public class BankApplication {
 							}
 							System.out.print("Enter account name to deposit/withdraw into: ");
 							String accountName = scanner.next();
-							double newBalance = 0;
+							long newBalance = 0;
 							boolean isValidInput = false;
 							while(!isValidInput) {
 								try {
 									System.out.print("Enter amount to deposit/withdraw from: ");
-									newBalance = Double.parseDouble(scanner.next());
+									newBalance = Money.parse(scanner.next());
 									isValidInput = true;
 								}
 								catch(NumberFormatException e) {
@@ -370,7 +456,8 @@ public class BankApplication {
 		}
 		
 		try {
-			localUser = services.getUserByUsername(username);
+			// Only the User is loaded here; their accounts are loaded once they are actually used.
+			localUser = services.getUserByUsername(username, UserProjection.IDENTITY);
 			return localUser;
 		} 
 		catch (NoSuchUserExistsException e) {
@@ -390,8 +477,7 @@ public class BankApplication {
 			services.viewAccounts(userLoggedIn);
 		// View recent transactions
 		else if((choice == 2 && !userLoggedIn.getSuperUserStatus()) || (choice == 6 && userLoggedIn.getSuperUserStatus())) {
-			System.out.println("\nViewing the 10 latest transactions");
-			services.viewTransactions(userLoggedIn);
+			viewTransactionHistory();
 		}
 		// Create a new bank account for the current logged in user
 		else if((choice == 3 && !userLoggedIn.getSuperUserStatus()) || (choice == 7 && userLoggedIn.getSuperUserStatus())) {
@@ -455,6 +541,32 @@ public class BankApplication {
 			System.out.println("Error, please choose a valid option\n");
 	}
 	
+	/**
+	 * Page through the whole transaction history of the current logged in user, newest first. <br>
+	 * Every page continues right after the last transaction of the previous page, until the user stops or the history runs out.
+	 */
+	public static void viewTransactionHistory() {
+		int lastSeenId = Integer.MAX_VALUE, numShown = 0;
+		System.out.println("\nViewing the latest transactions");
+		
+		while(true) {
+			List<Transaction> page = services.getTransactionHistory(userLoggedIn, lastSeenId, historyPageSize);
+			for(Transaction transaction : page)
+				System.out.println("Transaction " + (++numShown) + ": " + transaction.getMessage());
+			
+			// Stop once a page comes back short, since there is nothing older left.
+			if(page.size() < historyPageSize) {
+				System.out.println("No more transactions to show.");
+				return;
+			}
+			
+			lastSeenId = page.get(page.size() - 1).getId();
+			System.out.print("Enter \"more\" to view older transactions, or anything else to go back: ");
+			if(!scanner.next().equalsIgnoreCase("more"))
+				return;
+		}
+	}
+	
 	/**
 	 * Input a username and password, and attempt to login with those credentials
 	 * @return a new User object if login credentials were successful, throw a SameUsernameException otherwise
@@ -506,15 +618,15 @@ public class BankApplication {
 	public static void registerBankAccount() throws SameUsernameException{
 		// Get inputs for the account name and initial balance
 		String accountName;
-		double initialBalance = Integer.MIN_VALUE;
+		long initialBalance = Long.MIN_VALUE;
 		System.out.print("\nAccount name: ");
 		accountName = scanner.next();
 		
-		// Continuously error handle invalid balance inputs
-		while(initialBalance == Integer.MIN_VALUE) {
+		// Continuously error handle invalid balance inputs (all amounts are kept in cents)
+		while(initialBalance == Long.MIN_VALUE) {
 			try {
 				System.out.print("Initial balance: $");
-				initialBalance = Double.parseDouble(scanner.next());
+				initialBalance = Money.parse(scanner.next());
 			}
 			catch(NumberFormatException e) {
 				System.out.println("Error, please input a valid balance");
@@ -541,15 +653,15 @@ public class BankApplication {
 	public static void updateSpecificAccountBalance(int flag) throws NoSuchBankExistsException, InvalidWithdrawException {
 		// Get inputs for the account name and amount to deposit
 		String accountName;
-		double initialBalance = Integer.MIN_VALUE;
+		long initialBalance = Long.MIN_VALUE;
 		System.out.print("\nAccount name to deposit/withdraw into: ");
 		accountName = scanner.next();
 		
-		// Continuously error handle invalid balance inputs
+		// Continuously error handle invalid balance inputs (all amounts are kept in cents)
 		while(initialBalance <= 0) {
 			try {
 				System.out.print("Balance to deposit/withdraw: $");
-				initialBalance = Double.parseDouble(scanner.next());
+				initialBalance = Money.parse(scanner.next());
 			}
 			catch(NumberFormatException e) {
 				System.out.println("Error, please input a valid balance");
@@ -0,0 +1,383 @@
+package driver;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import daos.UserDAO;
+import daos.UserDAOImpl;
+import daos.UserDAOMemoryImpl;
+import entities.Account;
+import entities.User;
+import services.UserServices;
+import services.UserServicesImpl;
+import util.DBConnection;
+import util.LatencyHistogram;
+import util.SchemaMigrator;
+
+/**
+ * Simulates many clients of the bank at once: every virtual user logs in, deposits, withdraws, opens and closes bank accounts,
+ * and views their transactions (in a configurable mix) against the UserServices, on its own thread. <br>
+ * In closed-loop mode, each virtual user waits for an operation to finish before starting the next one (optionally paced to a target rate),
+ * and latency is measured from when the operation actually started. <br>
+ * In open-loop mode, operations are scheduled at the target rate no matter how long the earlier ones took, and latency is measured from when
+ * the operation was scheduled to start, so time spent waiting behind a slow operation counts too. <br>
+ * Each operation's latencies go into their own LatencyHistogram, which the report's percentiles come from. <br>
+ * Everything is set with system properties: -Dbank.load.users, -Dbank.load.durationSeconds, -Dbank.load.warmupSeconds, -Dbank.load.mode (closed or open),
+ * -Dbank.load.rate (operations per second across every virtual user, 0 for as fast as possible), and -Dbank.load.mix (for example "deposit=3,withdraw=1"). <br>
+ * It runs against the in-memory DAOs unless -Dbank.backend=oracle is given.
+ * @author baoph
+ *
+ */
+public class LoadGenerator {
+
+	/**
+	 * The operations a virtual user runs; in a mix, each one is named in lower case (for example, create_account=5).
+	 */
+	public enum Operation {
+		LOGIN, DEPOSIT, WITHDRAW, CREATE_ACCOUNT, DELETE_ACCOUNT, VIEW_TRANSACTIONS
+	}
+
+	// Defaults for the run
+	public static final int DEFAULT_USERS = 16, DEFAULT_DURATION_SECONDS = 30, DEFAULT_WARMUP_SECONDS = 5;
+	public static final String DEFAULT_MIX = "login=10,deposit=30,withdraw=25,create_account=10,delete_account=10,view_transactions=15";
+
+	// Every virtual user starts with this much money (in cents), and moves this much per deposit or withdrawal
+	private static final long STARTING_BALANCE = 100000000L, AMOUNT = 100;
+
+	// Every virtual user keeps at most this many extra bank accounts open, and views this many transactions at once
+	private static final int MAX_EXTRA_ACCOUNTS = 8, HISTORY_PAGE_SIZE = 10;
+
+	// Latencies are kept up to a minute, to 3 significant digits
+	private static final long HIGHEST_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	// How long before an operation's turn a virtual user stops parking and starts yielding
+	private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private final UserServices services;
+	private final int virtualUsers;
+	private final boolean openLoop;
+	private final double rate;
+	private final Operation[] operations;
+	private final int[] cumulativeWeights;
+	private final Map<Operation, LatencyHistogram> histograms = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+	private final Map<Operation, AtomicLong> errors = new EnumMap<Operation, AtomicLong>(Operation.class);
+	private long measuredNanos = 0;
+
+	/**
+	 * Creates a load generator.
+	 * @param services : the services to run against
+	 * @param virtualUsers : the number of virtual users, each with its own thread
+	 * @param mix : the relative weight of every operation (operations that are left out are never run)
+	 * @param openLoop : True for open-loop mode (which needs a rate), False for closed-loop mode
+	 * @param rate : the target number of operations per second across every virtual user, or 0 for as fast as possible (closed-loop mode only)
+	 */
+	public LoadGenerator(UserServices services, int virtualUsers, Map<Operation, Integer> mix, boolean openLoop, double rate) {
+		if(virtualUsers < 1 || rate < 0 || (openLoop && rate == 0))
+			throw new IllegalArgumentException("Error, there must be at least 1 virtual user, and open-loop mode needs a target rate");
+		this.services = services;
+		this.virtualUsers = virtualUsers;
+		this.openLoop = openLoop;
+		this.rate = rate;
+
+		// Pick operations by their weight: a random number below the total weight falls into exactly one operation's range.
+		this.operations = new Operation[mix.size()];
+		this.cumulativeWeights = new int[mix.size()];
+		int total = 0, i = 0;
+		for(Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+			if(entry.getValue() < 0)
+				throw new IllegalArgumentException("Error, the weight of " + entry.getKey() + " is negative");
+			total += entry.getValue();
+			operations[i] = entry.getKey();
+			cumulativeWeights[i++] = total;
+		}
+		if(total == 0)
+			throw new IllegalArgumentException("Error, the mix has no operations in it");
+
+		for(Operation operation : Operation.values()) {
+			histograms.put(operation, new LatencyHistogram(HIGHEST_LATENCY_NANOS, 3));
+			errors.put(operation, new AtomicLong());
+		}
+	}
+
+	/**
+	 * Parse a mix such as "deposit=3,withdraw=1".
+	 * @param mix : comma separated operation=weight pairs
+	 * @return Map<Operation, Integer>: the weight of every operation in the mix
+	 */
+	public static Map<Operation, Integer> parseMix(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<Operation, Integer>(Operation.class);
+		for(String pair : mix.split(",")) {
+			String[] parts = pair.trim().split("=");
+			if(parts.length != 2)
+				throw new IllegalArgumentException("Error, \"" + pair.trim() + "\" is not operation=weight");
+			try {
+				weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+			}
+			catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Error, \"" + parts[1].trim() + "\" is not a weight");
+			}
+			catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException("Error, \"" + parts[0].trim() + "\" is not an operation");
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * A single simulated client, with its own User and bank accounts. <br>
+	 * It starts with a Checking account that every deposit and withdrawal goes to, and opens and closes extra (empty) accounts.
+	 */
+	private final class VirtualUser {
+		final String username, password = "loadpass1";
+		final Deque<String> extraAccounts = new ArrayDeque<String>();
+		final Random random;
+		User user;
+		int nextAccount = 0;
+
+		VirtualUser(int index) throws Exception {
+			username = "loaduser" + index;
+			random = new Random(index);
+
+			// Register the user (unless they are left over from an earlier run, along with their accounts), and make sure they have a Checking account.
+			services.registerUser(new User("Load User " + index, username, password));
+			user = services.login(username, password);
+			for(Account account : user.getAllAccounts())
+				if(!account.getName().equals("Checking"))
+					extraAccounts.add(account.getName());
+			if(!user.hasAccount("Checking"))
+				services.registerBankAccount(user, new Account("Checking", STARTING_BALANCE));
+		}
+
+		/**
+		 * Pick the next operation by its weight in the mix.
+		 */
+		Operation next() {
+			int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+			int i = 0;
+			while(pick >= cumulativeWeights[i])
+				i++;
+			return operations[i];
+		}
+
+		/**
+		 * Run a single operation. <br>
+		 * Opening an account once the user has too many closes one instead (and the other way around), so the user stays about the same size.
+		 * @return Operation: the operation that was actually run
+		 */
+		Operation perform(Operation operation) throws Exception {
+			if(operation == Operation.CREATE_ACCOUNT && extraAccounts.size() >= MAX_EXTRA_ACCOUNTS)
+				operation = Operation.DELETE_ACCOUNT;
+			else if(operation == Operation.DELETE_ACCOUNT && extraAccounts.isEmpty())
+				operation = Operation.CREATE_ACCOUNT;
+
+			switch(operation) {
+				case LOGIN:
+					user = services.login(username, password);
+					break;
+				case DEPOSIT:
+					services.deposit(user, "Checking", AMOUNT);
+					break;
+				case WITHDRAW:
+					services.withdraw(user, "Checking", AMOUNT);
+					break;
+				case CREATE_ACCOUNT:
+					String name = "Savings " + (nextAccount++);
+					while(user.hasAccount(name))
+						name = "Savings " + (nextAccount++);
+					services.registerBankAccount(user, new Account(name, 0));
+					extraAccounts.add(name);
+					break;
+				case DELETE_ACCOUNT:
+					services.deleteBankAccount(user, extraAccounts.poll());
+					break;
+				case VIEW_TRANSACTIONS:
+					services.getTransactionHistory(user, Integer.MAX_VALUE, HISTORY_PAGE_SIZE);
+					break;
+			}
+			return operation;
+		}
+	}
+
+	/**
+	 * Register every virtual user, and then run them all (each on its own thread) for the warmup and the measurement.
+	 * Only operations scheduled after the warmup are measured.
+	 * @param warmupNanos : how long to run before measuring
+	 * @param durationNanos : how long to measure
+	 * @throws Exception if a virtual user could not be registered
+	 */
+	public void run(long warmupNanos, long durationNanos) throws Exception {
+		VirtualUser[] users = new VirtualUser[virtualUsers];
+		for(int i = 0; i < virtualUsers; i++)
+			users[i] = new VirtualUser(i);
+
+		long start = System.nanoTime(), measureStart = start + warmupNanos, end = measureStart + durationNanos;
+
+		// Each virtual user runs its share of the rate, and they are staggered so that they don't all start at once.
+		long interval = (rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * virtualUsers / rate) : 0);
+		Thread[] threads = new Thread[virtualUsers];
+		for(int i = 0; i < virtualUsers; i++) {
+			VirtualUser virtualUser = users[i];
+			long firstStart = start + interval * i / virtualUsers;
+			threads[i] = new Thread(() -> runVirtualUser(virtualUser, firstStart, interval, measureStart, end), "virtual-user-" + i);
+			threads[i].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		measuredNanos = durationNanos;
+	}
+
+	/**
+	 * The loop of a single virtual user.
+	 */
+	private void runVirtualUser(VirtualUser virtualUser, long next, long interval, long measureStart, long end) {
+		while(true) {
+			// First, wait for the next operation's turn (if there is a rate).
+			long now = System.nanoTime();
+			// Parking oversleeps by tens of microseconds, which would show up as latency in open-loop mode, so the last stretch is spent yielding.
+			while(interval > 0 && now < next) {
+				if(next - now > SPIN_NANOS)
+					LockSupport.parkNanos(next - now - SPIN_NANOS);
+				else
+					Thread.yield();
+				now = System.nanoTime();
+			}
+			long intended = (interval > 0 ? next : now);
+			if(now >= end || intended >= end)
+				return;
+
+			// Second, run it and measure it.
+			Operation operation = virtualUser.next();
+			long begin = System.nanoTime();
+			boolean failed = false;
+			try {
+				operation = virtualUser.perform(operation);
+			}
+			catch(Exception e) {
+				failed = true;
+			}
+			long finished = System.nanoTime();
+
+			// Third, record it (unless it was part of the warmup), from when it was scheduled in open-loop mode.
+			if(intended >= measureStart) {
+				histograms.get(operation).record(finished - (openLoop ? intended : begin));
+				if(failed)
+					errors.get(operation).incrementAndGet();
+			}
+
+			// Finally, schedule the next one: an open loop keeps to the schedule (catching up if it fell behind), a closed loop never runs early.
+			if(interval > 0)
+				next = (openLoop ? next + interval : Math.max(next + interval, finished));
+		}
+	}
+
+	/**
+	 * Simply return the latencies (in nanoseconds) of a single operation.
+	 * @param operation : the operation
+	 * @return LatencyHistogram: its latencies
+	 */
+	public LatencyHistogram getHistogram(Operation operation) {
+		return histograms.get(operation);
+	}
+
+	/**
+	 * Simply return how many times a single operation failed.
+	 * @param operation : the operation
+	 * @return long: the number of errors
+	 */
+	public long getErrorCount(Operation operation) {
+		return errors.get(operation).get();
+	}
+
+	/**
+	 * Print the throughput and the latency percentiles of every operation that was run (and of all of them together).
+	 * @param out : where to print the report
+	 */
+	public void printReport(PrintStream out) {
+		double seconds = measuredNanos / 1e9;
+		out.println((openLoop ? "Open" : "Closed") + "-loop run of " + virtualUsers + " virtual user(s) for " + Math.round(seconds) + "s"
+				+ (rate > 0 ? " at a target of " + Math.round(rate) + " ops/s" : "") + " (latencies in microseconds)");
+		String format = "%-18s %10s %8s %10s %9s %9s %9s %9s %9s%n";
+		out.printf(format, "Operation", "Count", "Errors", "Ops/s", "Mean", "p50", "p99", "p99.9", "Max");
+
+		LatencyHistogram all = new LatencyHistogram(HIGHEST_LATENCY_NANOS, 3);
+		long allErrors = 0;
+		for(Operation operation : Operation.values()) {
+			LatencyHistogram histogram = histograms.get(operation);
+			if(histogram.getTotalCount() == 0)
+				continue;
+			printRow(out, format, operation.name().toLowerCase(), histogram, errors.get(operation).get(), seconds);
+			all.add(histogram);
+			allErrors += errors.get(operation).get();
+		}
+		printRow(out, format, "all", all, allErrors, seconds);
+	}
+
+	/**
+	 * Print a single row of the report.
+	 */
+	private static void printRow(PrintStream out, String format, String name, LatencyHistogram histogram, long errors, double seconds) {
+		out.printf(format, name, histogram.getTotalCount(), errors, String.format("%.1f", histogram.getTotalCount() / seconds),
+				String.format("%.1f", histogram.getMean() / 1000), micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(99)),
+				micros(histogram.getValueAtPercentile(99.9)), micros(histogram.getMaxValue()));
+	}
+
+	/**
+	 * Format nanoseconds as microseconds.
+	 */
+	private static String micros(long nanos) {
+		return String.format("%.1f", nanos / 1000.0);
+	}
+
+	/**
+	 * Run the load generator with the settings from the system properties, and print the report.
+	 * @param args : command line parameters (unused; everything is set with system properties)
+	 */
+	public static void main(String[] args) {
+		boolean inMemory = !"oracle".equalsIgnoreCase(System.getProperty("bank.backend"));
+		if(!inMemory && (!DBConnection.isConnected() || !SchemaMigrator.migrate()))
+			System.exit(1);
+
+		UserDAO users = (inMemory ? new UserDAOMemoryImpl(DBConnection.getKeyFromFile()) : new UserDAOImpl(DBConnection.getKeyFromFile()));
+		LoadGenerator generator;
+		try {
+			generator = new LoadGenerator(new UserServicesImpl(users), Integer.getInteger("bank.load.users", DEFAULT_USERS),
+					parseMix(System.getProperty("bank.load.mix", DEFAULT_MIX)), "open".equalsIgnoreCase(System.getProperty("bank.load.mode", "closed")),
+					Double.parseDouble(System.getProperty("bank.load.rate", "0")));
+		}
+		catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		// The services print a message for most operations, so silence them while the load runs.
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		try {
+			generator.run(TimeUnit.SECONDS.toNanos(Integer.getInteger("bank.load.warmupSeconds", DEFAULT_WARMUP_SECONDS)),
+					TimeUnit.SECONDS.toNanos(Integer.getInteger("bank.load.durationSeconds", DEFAULT_DURATION_SECONDS)));
+			System.setOut(console);
+			generator.printReport(console);
+		}
+		catch(Exception e) {
+			System.setOut(console);
+			System.out.println("Error, the load could not be run: " + e.getMessage());
+		}
+		finally {
+			if(!inMemory)
+				DBConnection.shutdown();
+		}
+	}
+}
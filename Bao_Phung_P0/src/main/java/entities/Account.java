@@ -1,7 +1,9 @@
 package entities;
 
+import util.Money;
+
 /**
- * A single account simply contains the name of the account as well as the balance
+ * A single account simply contains the name of the account as well as the balance (stored in cents, see util.Money)
  * This will also act as a Bean
  * @author baoph
  *
@@ -10,7 +12,13 @@ public class Account {
 	// Private fields
 	private int id;
 	private String name;
-	private double balance;
+	private long balance;
+	
+	// The name in lower case, computed once so that lookups by name never have to convert it again.
+	private String normalizedName;
+	
+	// Bumped by the database every time the balance changes; used for optimistic concurrency control.
+	private int version;
 	
 	// Constructors
 	/**
@@ -19,17 +27,19 @@ public class Account {
 	public Account() {
 		this.id = -1;
 		this.name = "";
+		this.normalizedName = "";
 		this.balance = 0;
 	}
 	
 	/**
 	 * Presets the name and balance field, but initializes the id by default.
 	 * @param name : the name of the bank account
-	 * @param balance : the initial amount of money on this account
+	 * @param balance : the initial amount of money on this account, in cents
 	 */
-	public Account(String name, double balance) {
+	public Account(String name, long balance) {
 		this.id = -1;
 		this.name = name;
+		this.normalizedName = normalize(name);
 		this.balance = balance;
 	}
 	
@@ -37,14 +47,30 @@ public class Account {
 	 * Presets all 3 fields.
 	 * @param id : the unique identifier of the account
 	 * @param name : the name of the bank account 
-	 * @param balance : the initial amount of money on this account
+	 * @param balance : the initial amount of money on this account, in cents
 	 */
-	public Account(int id, String name, double balance) {
+	public Account(int id, String name, long balance) {
 		this.id = id;
 		this.name = name;
+		this.normalizedName = normalize(name);
 		this.balance = balance;
 	}
 	
+	/**
+	 * Presets all 4 fields.  Used for post-JDBC operations.
+	 * @param id : the unique identifier of the account
+	 * @param name : the name of the bank account 
+	 * @param balance : the amount of money on this account, in cents
+	 * @param version : the version of the row this account was read from
+	 */
+	public Account(int id, String name, long balance, int version) {
+		this.id = id;
+		this.name = name;
+		this.normalizedName = normalize(name);
+		this.balance = balance;
+		this.version = version;
+	}
+	
 	// Getters
 	/**
 	 * Simply return the unique id of the Account
@@ -62,39 +88,89 @@ public class Account {
 		return this.name;
 	}
 	
+	/**
+	 * Simply return the name of the Account in lower case, which is what account names are compared by
+	 * @return the normalized name of the Account
+	 */
+	public String getNormalizedName() {
+		return this.normalizedName;
+	}
+	
+	/**
+	 * Normalize an account name the same way every Account normalizes its own name (i.e. lower case).
+	 * @param name : the account name
+	 * @return the normalized name, or NULL if the name is NULL
+	 */
+	public static String normalize(String name) {
+		return (name == null ? null : name.toLowerCase());
+	}
+	
 	/**
 	 * Simply return the amount of money on the Account
-	 * @return the amount of money on the Account
+	 * @return the amount of money on the Account, in cents
 	 */
-	public double getBalance() {
+	public long getBalance() {
 		return this.balance;
 	}
 	
+	/**
+	 * Simply return the version of the row this Account was last read from (or written to)
+	 * @return the version of the Account
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+	
 	// Setters
+	/**
+	 * Simply change the id of the Account to the one the database generated
+	 * @param id : the generated id
+	 */
+	public void setId(int id) {
+		this.id = id;
+	}
+	
 	/**
 	 * Simply change the name of the Account to w/e the parameter is
 	 * @param name : the new name
 	 */
 	public void setName(String name) {
 		this.name = name;
+		this.normalizedName = normalize(name);
 	}
 	
 	/**
 	 * Simply change the balance of the Account to w/e the parameter is
-	 * @param balance : the new balance
+	 * @param balance : the new balance, in cents
 	 */
-	public void setBalance(double balance) {
+	public void setBalance(long balance) {
 		this.balance = balance;
 	}
 	
 	
 	/**
-	 *  2 accounts are the same if they have the same name.
+	 * Simply change the version of the Account to w/e the database reports
+	 * @param version : the new version
+	 */
+	public void setVersion(int version) {
+		this.version = version;
+	}
+	
+	/**
+	 *  2 accounts are the same if they have the same name (ignoring case).
 	 *  @return True if 2 Accounts have the same name, False otherwise
 	 */
 	@Override
 	public boolean equals(Object o) {
-		return this.name.toLowerCase().equals(((Account) o).name.toLowerCase());
+		return this.normalizedName.equals(((Account) o).normalizedName);
+	}
+	
+	/**
+	 * Consistent with equals(), so Accounts can be kept in hash based collections.
+	 */
+	@Override
+	public int hashCode() {
+		return (this.normalizedName == null ? 0 : this.normalizedName.hashCode());
 	}
 	
 	/**
@@ -103,6 +179,6 @@ public class Account {
 	 */
 	@Override
 	public String toString() {
-		return "Account name: " + this.name + "\nBalance: $" + (Math.round(this.balance* 100.0)/100.0);
+		return "Account name: " + this.name + "\nBalance: $" + Money.format(this.balance);
 	}
 }
@@ -1,8 +1,25 @@
 package entities;
 
+import util.Money;
+
+/**
+ * A single Transaction is a typed record of one change to one of the User's bank accounts: <br>
+ * what happened (the type), to which account, how much money moved (in cents), the balance it left behind, and when. <br>
+ * The English message shown to the User is only rendered when it is displayed, via getMessage().
+ * @author baoph
+ *
+ */
 public class Transaction {
 	// Private fields/variables
 	private int id;
+	private TransactionType type;
+	private int accountId;
+	private String accountName;
+	private long amount;
+	private long balanceAfter;
+	private long timestamp;
+	
+	// Only used by rows that were recorded as plain text, before Transactions were typed.
 	private String message;
 	
 	// Constructors
@@ -33,6 +50,26 @@ public class Transaction {
 		this.message = message;
 	}
 	
+	/**
+	 * Presets every typed field.  Used for post-JDBC operations.
+	 * @param id : the unique transaction id
+	 * @param type : what kind of change this Transaction records
+	 * @param accountId : the id of the bank account that changed (-1 if unknown)
+	 * @param accountName : the name of the bank account that changed
+	 * @param amount : the amount of money (in cents) that was deposited/withdrawn, or the initial balance of a created account
+	 * @param balanceAfter : the balance (in cents) the account was left with
+	 * @param timestamp : when the Transaction happened, in milliseconds since the epoch
+	 */
+	public Transaction(int id, TransactionType type, int accountId, String accountName, long amount, long balanceAfter, long timestamp) {
+		this.id = id;
+		this.type = type;
+		this.accountId = accountId;
+		this.accountName = accountName;
+		this.amount = amount;
+		this.balanceAfter = balanceAfter;
+		this.timestamp = timestamp;
+	}
+	
 	// Getters
 	/**
 	 * Simply return the unique id of the transaction
@@ -43,19 +80,81 @@ public class Transaction {
 	}
 	
 	/**
-	 * Simply return the messsage of the transaction
+	 * Simply return the type of the transaction
+	 * @return the type, or NULL for a plain text transaction
+	 */
+	public TransactionType getType() {
+		return this.type;
+	}
+	
+	/**
+	 * Simply return the id of the bank account that changed
+	 * @return the account id
+	 */
+	public int getAccountId() {
+		return this.accountId;
+	}
+	
+	/**
+	 * Simply return the name of the bank account that changed
+	 * @return the account name
+	 */
+	public String getAccountName() {
+		return this.accountName;
+	}
+	
+	/**
+	 * Simply return the amount of money (in cents) of the transaction
+	 * @return the amount
+	 */
+	public long getAmount() {
+		return this.amount;
+	}
+	
+	/**
+	 * Simply return the balance (in cents) the account was left with
+	 * @return the resulting balance
+	 */
+	public long getBalanceAfter() {
+		return this.balanceAfter;
+	}
+	
+	/**
+	 * Simply return when the transaction happened
+	 * @return the timestamp, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+	
+	/**
+	 * Render the message of the transaction from its typed fields. <br>
+	 * Plain text transactions simply return the message they were given.
 	 * @return the message
 	 */
 	public String getMessage() {
-		return this.message;
+		if(this.type == null)
+			return this.message;
+		
+		switch(this.type) {
+			case CREATE:
+				return "Created a new " + this.accountName + " Bank Account";
+			case DEPOSIT:
+				return "Deposited $" + Money.format(this.amount) + " to the " + this.accountName + " Bank Account";
+			case WITHDRAW:
+				return "Withdrawn $" + Money.format(this.amount) + " from the " + this.accountName + " Bank Account";
+			default:
+				return "Deleted the " + this.accountName + " Bank Account";
+		}
 	}
 	
 	// Setters
 	/**
-	 * Change the message to whatever is in the parameter
+	 * Change the message to whatever is in the parameter.  This turns the transaction into a plain text transaction.
 	 * @param message : the new message
 	 */
 	public void setMessage(String message) {
+		this.type = null;
 		this.message = message;
 	}
 	
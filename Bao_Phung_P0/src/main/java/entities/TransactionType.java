@@ -0,0 +1,26 @@
+package entities;
+
+/**
+ * The kind of change a single Transaction records. <br>
+ * The name of each constant is what gets stored in the t_type column of the Transactions table.
+ * @author baoph
+ *
+ */
+public enum TransactionType {
+	CREATE, DEPOSIT, WITHDRAW, DELETE;
+	
+	/**
+	 * Convert the deposit/withdraw mode used by the services and DAOs into its TransactionType.
+	 * @param mode : 0 for deposit, 1 for withdraw
+	 * @return TransactionType: either DEPOSIT or WITHDRAW
+	 * @throws IllegalArgumentException if the mode is neither 0 nor 1
+	 */
+	public static TransactionType fromMode(int mode) {
+		if(mode == 0)
+			return DEPOSIT;
+		else if(mode == 1)
+			return WITHDRAW;
+		else
+			throw new IllegalArgumentException("Error, invalid mode.  It must be 0 (deposit) or 1 (withdrawn)");
+	}
+}
@@ -1,9 +1,14 @@
 package entities;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import exceptions.NoSuchBankExistsException;
+import util.RecentBuffer;
 
 // User is a Bean
 /**
@@ -17,10 +22,19 @@ public class User {
 	private int id;
 	private String fullName, username, password;
 	private boolean isSuperUser;
-	private List<Account> accounts;
 	
-	// As bonus, record all transactions made by users.
-	private List<Transaction> transactions;
+	// The accounts, indexed by their normalized name and by their id.  Every change builds a new index, so readers never need a copy.
+	// NULL until they are loaded by the accountLoader, the first time they are used (see setAccountLoader()).
+	private volatile AccountIndex accounts;
+	private Supplier<List<Account>> accountLoader;
+	
+	// As bonus, record the most recent transactions made by users (newest first); older ones are simply dropped, since they are all in the database.
+	// The number kept can be overridden with -Dbank.recentTransactions.
+	public static final int RECENT_TRANSACTIONS = Math.max(1, Integer.getInteger("bank.recentTransactions", 10));
+	private final RecentBuffer<Transaction> transactions;
+	
+	// Loads the most recent transactions the first time they are used, or NULL once they are loaded (see setTransactionLoader()).
+	private Supplier<List<Transaction>> transactionLoader;
 	
 	// Constructors
 	/**
@@ -30,16 +44,8 @@ public class User {
 		this.id = -1;
 		this.fullName = this.username = this.password = "";
 		this.isSuperUser = false;
-		this.accounts = new ArrayList<Account>();
-		this.transactions = new ArrayList<Transaction>();
-		
-		// Also add a Checkings and Savings account initially, both with a balance of 0
-		accounts.add(new Account("Checkings", 0));
-		accounts.add(new Account("Savings", 0));
-		
-		// And add a brand new Transaction message for both Checkings and Savings
-		transactions.add(new Transaction("Created a new Checkings account"));
-		transactions.add(new Transaction("Created a new Savings account"));
+		this.accounts = AccountIndex.EMPTY;
+		this.transactions = new RecentBuffer<Transaction>(RECENT_TRANSACTIONS);
 	}
 	
 	/**
@@ -55,16 +61,8 @@ public class User {
 		this.username = username;
 		this.password = password;
 		this.isSuperUser = false;
-		this.accounts = new ArrayList<Account>();
-		this.transactions = new ArrayList<Transaction>();
-		
-		// Also add a Checkings and Savings account initially, both with a balance of 0
-		accounts.add(new Account("Checkings", 0));
-		accounts.add(new Account("Savings", 0));
-		
-		// And add a brand new Transaction message for both Checkings and Savings
-		transactions.add(new Transaction("Created a new Checkings account"));
-		transactions.add(new Transaction("Created a new Savings account"));
+		this.accounts = AccountIndex.EMPTY;
+		this.transactions = new RecentBuffer<Transaction>(RECENT_TRANSACTIONS);
 	}
 	
 	/**
@@ -81,16 +79,8 @@ public class User {
 		this.username = username;
 		this.password = password;
 		this.isSuperUser = false;
-		this.accounts = new ArrayList<Account>();
-		this.transactions = new ArrayList<Transaction>();
-		
-		// Also add a Checkings and Savings account initially, both with a balance of 0
-		accounts.add(new Account("Checkings", 0));
-		accounts.add(new Account("Savings", 0));
-		
-		// And add a brand new Transaction message for both Checkings and Savings
-		transactions.add(new Transaction("Created a new Checkings account"));
-		transactions.add(new Transaction("Created a new Savings account"));
+		this.accounts = AccountIndex.EMPTY;
+		this.transactions = new RecentBuffer<Transaction>(RECENT_TRANSACTIONS);
 	}
 	
 	/**
@@ -107,16 +97,8 @@ public class User {
 		this.username = username;
 		this.password = password;
 		this.isSuperUser = isSuperUser;
-		this.accounts = new ArrayList<Account>();
-		this.transactions = new ArrayList<Transaction>();
-		
-		// Also add a Checkings and Savings account initially, both with a balance of 0
-		accounts.add(new Account("Checkings", 0));
-		accounts.add(new Account("Savings", 0));
-		
-		// And add a brand new Transaction message for both Checkings and Savings
-		transactions.add(new Transaction("Created a new Checkings account"));
-		transactions.add(new Transaction("Created a new Savings account"));
+		this.accounts = AccountIndex.EMPTY;
+		this.transactions = new RecentBuffer<Transaction>(RECENT_TRANSACTIONS);
 	}
 	
 	
@@ -135,21 +117,107 @@ public class User {
 		this.username = username;
 		this.password = password;
 		this.isSuperUser = isSuperUser;
-		this.accounts = new ArrayList<Account>();
-		this.transactions = new ArrayList<Transaction>();
+		this.accounts = AccountIndex.EMPTY;
+		this.transactions = new RecentBuffer<Transaction>(RECENT_TRANSACTIONS);
+	}
+	
+	/**
+	 * A copy constructor.  The accounts are copied one by one (they change with every deposit and withdraw), while the transactions themselves are shared.
+	 * Whatever the other User hasn't loaded yet isn't loaded here either: the copy simply loads it on its own, the first time it is used.
+	 * @param other : the User to copy
+	 */
+	public User(User other) {
+		this.id = other.id;
+		this.fullName = other.fullName;
+		this.username = other.username;
+		this.password = other.password;
+		this.isSuperUser = other.isSuperUser;
+		synchronized(other) {
+			if(other.accounts == null) {
+				this.accountLoader = other.accountLoader;
+			}
+			else {
+				List<Account> accounts = new ArrayList<Account>();
+				for(Account account : other.accounts.list)
+					accounts.add(new Account(account.getId(), account.getName(), account.getBalance(), account.getVersion()));
+				this.accounts = new AccountIndex(accounts);
+			}
+			this.transactionLoader = other.transactionLoader;
+			this.transactions = new RecentBuffer<Transaction>(other.transactions);
+		}
+	}
+	
+	/**
+	 * An immutable snapshot of a User's accounts: the accounts in order, and the same accounts keyed by normalized name and by id. <br>
+	 * If two accounts share a name (or an id), the first one wins, just like a search from the start of the list would.
+	 */
+	private static final class AccountIndex {
+		static final AccountIndex EMPTY = new AccountIndex(Collections.<Account>emptyList());
 		
-		// Also add a Checkings and Savings account initially, both with a balance of 0
-		accounts.add(new Account("Checkings", 0));
-		accounts.add(new Account("Savings", 0));
+		final List<Account> list;
+		final Map<String, Account> byName;
+		final Map<Integer, Account> byId;
 		
-		// And add a brand new Transaction message for both Checkings and Savings
-		transactions.add(new Transaction("Created a new Checkings account"));
-		transactions.add(new Transaction("Created a new Savings account"));
+		AccountIndex(List<Account> accounts) {
+			this.list = Collections.unmodifiableList(new ArrayList<Account>(accounts));
+			this.byName = new HashMap<String, Account>(accounts.size() * 2);
+			this.byId = new HashMap<Integer, Account>(accounts.size() * 2);
+			for(Account account : accounts) {
+				byName.putIfAbsent(account.getNormalizedName(), account);
+				byId.putIfAbsent(account.getId(), account);
+			}
+		}
+	}
+	
+	/**
+	 * Return the accounts, loading them first if this is the first time they are used.
+	 */
+	private AccountIndex accounts() {
+		AccountIndex index = this.accounts;
+		if(index != null)
+			return index;
+		synchronized(this) {
+			if(this.accounts == null) {
+				List<Account> loaded = accountLoader.get();
+				this.accounts = new AccountIndex(loaded == null ? Collections.<Account>emptyList() : loaded);
+				accountLoader = null;
+			}
+			return this.accounts;
+		}
+	}
+	
+	/**
+	 * Return the most recent transactions, loading them first if this is the first time they are used.
+	 */
+	private synchronized RecentBuffer<Transaction> transactions() {
+		if(transactionLoader != null) {
+			List<Transaction> loaded = transactionLoader.get();
+			if(loaded != null)
+				this.transactions.reset(loaded);
+			transactionLoader = null;
+		}
+		return this.transactions;
+	}
+	
+	/**
+	 * Simply return whether the User's accounts were loaded already (or given to the User directly).
+	 * @return Boolean: True if the accounts are loaded, False if they will be loaded the first time they are used
+	 */
+	public boolean isAccountsLoaded() {
+		return this.accounts != null;
+	}
+	
+	/**
+	 * Simply return whether the User's most recent transactions were loaded already (or given to the User directly).
+	 * @return Boolean: True if the transactions are loaded, False if they will be loaded the first time they are used
+	 */
+	public synchronized boolean isTransactionsLoaded() {
+		return this.transactionLoader == null;
 	}
 	
 	// Getters
 	/**
-	 * A simple getter for the user's id.  Note that there will be no setter since the id should always stay hidden from the user.
+	 * A simple getter for the user's id.  Note that the id should always stay hidden from the user.
 	 * @return Int: the user's unique id.
 	 */
 	public int getId() {
@@ -189,37 +257,20 @@ public class User {
 	}
 	
 	/**
-	 * Create a new list of accounts, and return a deep copy of it.
-	 * @return ArrayList<Account>: return a deep copied version of the User's list of accounts
+	 * Simply return the User's accounts.  Nothing is copied: the list is a read-only snapshot of which accounts the User has,
+	 * so accounts added or deleted later don't show up in it.  The Account objects themselves are shared, so their balances may still change.
+	 * @return List<Account>: a read-only list of the User's accounts
 	 */
-	public ArrayList<Account> getAllAccounts(){
-		ArrayList<Account> newAccounts = new ArrayList<Account>();
-		for(int i = 0; i < this.accounts.size(); i++)
-			newAccounts.add(this.accounts.get(i));
-		return newAccounts;
+	public List<Account> getAllAccounts(){
+		return accounts().list;
 	}
 	
 	/**
-	 * Create a new list of transactions, and return a deep copyo of it.
-	 * @return ArrayList<Transaction>: return a deep copied version of the User's list of transactions
+	 * Simply return the User's most recent transactions, newest first.  Nothing is copied: the list is a read-only view of the User's own transactions.
+	 * @return List<Transaction>: a read-only list of (at most RECENT_TRANSACTIONS) transactions
 	 */
-	public ArrayList<Transaction> getAllRecentTransactions(){
-		ArrayList<Transaction> newTransactions = new ArrayList<Transaction>();
-		
-		// If there are less than or equal to 10 transactions, then add them all in 
-		if(this.transactions.size() <= 10) {
-			for(int i = 0; i < this.transactions.size(); i++)
-				newTransactions.add(this.transactions.get(i));
-		}
-		
-		// Otherwise, start the index depending on the size of the transactions.
-		// In this case, since we want only 10 transactions, it should be size() - 10 at the beginning.
-		else {
-			for(int i = this.transactions.size() - 10; i < this.transactions.size(); i++)
-				newTransactions.add(this.transactions.get(i));
-		}
-		
-		return newTransactions;
+	public List<Transaction> getAllRecentTransactions(){
+		return Collections.unmodifiableList(transactions());
 	}
 	
 	/**
@@ -229,11 +280,19 @@ public class User {
 	 * @throws NoSuchBankException if there exists no Account with the given account name.
 	 */
 	public Account getAccount(String accountName) throws NoSuchBankExistsException{
-		for(int i = 0; i < this.accounts.size(); i++) {
-			if(accountName.toLowerCase().equals(this.accounts.get(i).getName().toLowerCase()))
-				return this.accounts.get(i);
-		}
-		throw new NoSuchBankExistsException(accountName);
+		Account account = accounts().byName.get(Account.normalize(accountName));
+		if(account == null)
+			throw new NoSuchBankExistsException(accountName);
+		return account;
+	}
+	
+	/**
+	 * Check whether the User has an account with the given name (ignoring case).
+	 * @param accountName : the name of the account to look for
+	 * @return Boolean: True if the User has an account with that name, False otherwise
+	 */
+	public boolean hasAccount(String accountName) {
+		return accounts().byName.containsKey(Account.normalize(accountName));
 	}
 	
 	/**
@@ -241,10 +300,18 @@ public class User {
 	 * @return int: the number of bank accounts
 	 */
 	public int getNumBankAccounts() {
-		return this.accounts.size();
+		return accounts().list.size();
 	}
 	
 	// Setters
+	/**
+	 * A simple setter for the user's id.  Only the DAO calls this, right after the database generates the id.
+	 * @param id : the generated id of the user
+	 */
+	public void setId(int id) {
+		this.id = id;
+	}
+	
 	/**
 	 * A simple setter to change the user's full name
 	 * @param fullName: the new full name of the user
@@ -276,54 +343,89 @@ public class User {
 	 * No error/exception handling will be done here, it should be done in the other implementation files.
 	 * @param account : the new Account to add to the User.
 	 */
-	public void addAccount(Account account) {
-		this.accounts.add(account);
+	public synchronized void addAccount(Account account) {
+		List<Account> accounts = new ArrayList<Account>(accounts().list);
+		accounts.add(account);
+		this.accounts = new AccountIndex(accounts);
 	}
 	
 	/**
-	 * A simple setter to update a specific Account. <br>
-	 * The only update made will be changing the balance.
-	 * @throws NoSuchBankExistsException if the User doesn't have an account with the same name.
+	 * A simple setter to update a specific Account, found by its id. <br>
+	 * The only update made will be changing the balance (and the version that comes with it).
+	 * @throws NoSuchBankExistsException if the User doesn't have an account with the same id.
 	 */
-	public void updateAccount(Account account) throws NoSuchBankExistsException {
-		for(int i = 0; i < accounts.size(); i++) {
-			if(accounts.get(i).equals(account)) {
-				accounts.get(i).setBalance(account.getBalance());
-				return;
-			}
-		}
-		throw new NoSuchBankExistsException(account.getName());
+	public synchronized void updateAccount(Account account) throws NoSuchBankExistsException {
+		Account existing = accounts().byId.get(account.getId());
+		if(existing == null)
+			throw new NoSuchBankExistsException(account.getName());
+		existing.setBalance(account.getBalance());
+		existing.setVersion(account.getVersion());
 	}
 	
 	/**
 	 * A simple setter that simply overrides the current list of Banking accounts with a new list of Banking accounts.
 	 * @param newAccounts : a new set of accounts to replace the old set with.
 	 */
-	public void setNewAccounts(List<Account> newAccounts) {
-		this.accounts = newAccounts;
+	public synchronized void setNewAccounts(List<Account> newAccounts) {
+		this.accounts = new AccountIndex(newAccounts);
+		this.accountLoader = null;
 	}
 	
-	public void setNewTransactions(List<Transaction> newTransactions) {
-		this.transactions = newTransactions;
+	/**
+	 * Load the User's accounts with the given loader the first time they are used, instead of right away. <br>
+	 * The DAOs use this for whatever a UserProjection doesn't load up front.
+	 * @param accountLoader : returns the User's accounts (or NULL if they could not be loaded, which counts as none)
+	 */
+	public synchronized void setAccountLoader(Supplier<List<Account>> accountLoader) {
+		this.accountLoader = accountLoader;
+		this.accounts = null;
 	}
 	
-	public void addTransaction(Transaction transaction) {
-		this.transactions.add(transaction);
+	/**
+	 * A simple setter that replaces the User's recent transactions with new ones.
+	 * @param newTransactions : the new transactions, newest first (only the newest RECENT_TRANSACTIONS are kept)
+	 */
+	public synchronized void setNewTransactions(List<Transaction> newTransactions) {
+		this.transactions.reset(newTransactions);
+		this.transactionLoader = null;
 	}
 	
 	/**
-	 * Given an account name, delete that account from the user if it exists.
-	 * @param accountName : the name of the bank account to delete from the User.
-	 * @throws NoSuchBankExistsException if the User doesn't have an account with the accountName.
+	 * Load the User's most recent transactions with the given loader the first time they are used, instead of right away.
+	 * @param transactionLoader : returns the most recent transactions, newest first (or NULL if they could not be loaded)
 	 */
-	public void deleteAccount(String accountName) throws NoSuchBankExistsException{
-		for(int i = 0; i < this.accounts.size(); i++) {
-			if(this.accounts.get(i).getName().toLowerCase().equals(accountName.toLowerCase())) {
-				this.accounts.remove(i);
-				return;
-			}
+	public synchronized void setTransactionLoader(Supplier<List<Transaction>> transactionLoader) {
+		this.transactionLoader = transactionLoader;
+		this.transactions.clear();
+	}
+	
+	/**
+	 * A simple setter that records a brand new transaction, dropping the oldest one if there are already RECENT_TRANSACTIONS of them. <br>
+	 * If the transactions weren't loaded yet, there is nothing to add it to: it is already in the database, and will be loaded along with the rest.
+	 * @param transaction : the newest transaction
+	 */
+	public synchronized void addTransaction(Transaction transaction) {
+		if(this.transactionLoader == null)
+			this.transactions.push(transaction);
+	}
+	
+	/**
+	 * Given an Account, delete the account with the same id from the user if it exists.
+	 * @param account : the bank account to delete from the User.
+	 * @throws NoSuchBankExistsException if the User doesn't have an account with the same id.
+	 */
+	public synchronized void deleteAccount(Account account) throws NoSuchBankExistsException{
+		Account existing = accounts().byId.get(account.getId());
+		if(existing == null)
+			throw new NoSuchBankExistsException(account.getName());
+		
+		// Remove that very account (equals() compares names, which may not be unique)
+		List<Account> accounts = new ArrayList<Account>(accounts().list.size());
+		for(Account other : accounts().list) {
+			if(other != existing)
+				accounts.add(other);
 		}
-		throw new NoSuchBankExistsException(accountName);
+		this.accounts = new AccountIndex(accounts);
 	}
 	
 	/**
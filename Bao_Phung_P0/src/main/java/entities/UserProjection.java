@@ -0,0 +1,35 @@
+package entities;
+
+/**
+ * How much of a User is loaded up front, along with the User itself. <br>
+ * Whatever is not loaded up front is loaded the first time it is used (see User.setAccountLoader() and User.setTransactionLoader()),
+ * so a caller that only needs the User's id or superuser status never pays for their accounts.
+ * @author baoph
+ *
+ */
+public enum UserProjection {
+	// Only the User (id, names, password, superuser status)
+	IDENTITY,
+	
+	// The User and their accounts
+	ACCOUNTS,
+	
+	// The User, their accounts, and their most recent transactions
+	TRANSACTIONS;
+	
+	/**
+	 * Simply return whether this projection loads the User's accounts up front.
+	 * @return Boolean: True for ACCOUNTS and TRANSACTIONS, False otherwise
+	 */
+	public boolean withAccounts() {
+		return this != IDENTITY;
+	}
+	
+	/**
+	 * Simply return whether this projection loads the User's most recent transactions up front.
+	 * @return Boolean: True for TRANSACTIONS, False otherwise
+	 */
+	public boolean withTransactions() {
+		return this == TRANSACTIONS;
+	}
+}
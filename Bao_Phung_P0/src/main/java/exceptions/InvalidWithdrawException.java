@@ -1,9 +1,11 @@
 package exceptions;
 
+import util.Money;
+
 public class InvalidWithdrawException extends Exception{
-	double amountWithdrawn;
-	public InvalidWithdrawException(double amountWithdrawn) {
-		super("Error, you cannot withdraw $" + (Math.round(amountWithdrawn * 100.0)/100.0) + ", you don't have this much on your account.");
+	long amountWithdrawn;
+	public InvalidWithdrawException(long amountWithdrawn) {
+		super("Error, you cannot withdraw $" + Money.format(amountWithdrawn) + ", you don't have this much on your account.");
 		this.amountWithdrawn = amountWithdrawn;
 	}
 }
@@ -0,0 +1,192 @@
+package services;
+
+import java.util.List;
+
+import entities.Account;
+import entities.Transaction;
+import entities.User;
+import entities.UserProjection;
+import exceptions.DeleteUserWithAccountsException;
+import exceptions.DeletingBankAccountWithMoneyException;
+import exceptions.InvalidLoginException;
+import exceptions.InvalidPasswordException;
+import exceptions.InvalidWithdrawException;
+import exceptions.NoSuchBankExistsException;
+import exceptions.NoSuchUserExistsException;
+import exceptions.SameUsernameException;
+import util.LruCache;
+
+/**
+ * Wraps the UserServices with a cache of users looked up by username, so repeated lookups (for example, the superuser viewing
+ * or updating the same user over and over) don't go back to the database. <br>
+ * The cache is keyed by the lower case username, bounded in size (least recently used users are dropped first), and every user expires after a while. <br>
+ * Every service method that changes a user or their accounts drops that user from the cache once it is done.
+ * Callers always get their own copy of a cached user, so changing it never changes what is cached.
+ * @author baoph
+ *
+ */
+public class CachingUserServices implements UserServices{
+
+	// Defaults for the cache; each of these can be overridden with -Dbank.userCache.size and -Dbank.userCache.ttlMillis.
+	public static final int DEFAULT_CACHE_SIZE = 1000;
+	public static final long DEFAULT_TTL_MILLIS = 60000;
+
+	private final UserServices services;
+	private final LruCache<String, User> cache;
+
+	/**
+	 * Wrap the services with a cache sized from the system properties (or the defaults).
+	 * @param services : the services to wrap
+	 */
+	public CachingUserServices(UserServices services) {
+		this(services, Integer.getInteger("bank.userCache.size", DEFAULT_CACHE_SIZE), Long.getLong("bank.userCache.ttlMillis", DEFAULT_TTL_MILLIS));
+	}
+
+	/**
+	 * Wrap the services with a cache.
+	 * @param services : the services to wrap
+	 * @param maxSize : the maximum number of cached users
+	 * @param ttlMillis : how long a user stays cached
+	 */
+	public CachingUserServices(UserServices services, int maxSize, long ttlMillis) {
+		this.services = services;
+		this.cache = new LruCache<String, User>(maxSize, ttlMillis);
+	}
+
+	/**
+	 * Retrieve a specific User (along with their accounts) given a username, from the cache if possible.
+	 * @param username : the username to search for
+	 * @return User: a copy of the found user
+	 * @throws NoSuchUserExistsException if no user has that username
+	 */
+	@Override
+	public User getUserByUsername(String username) throws NoSuchUserExistsException {
+		return getUserByUsername(username, UserProjection.ACCOUNTS);
+	}
+
+	/**
+	 * Retrieve a specific User given a username, from the cache if possible. <br>
+	 * Whatever the cached User didn't load (for example, their accounts, if they were cached by an IDENTITY lookup) is loaded by the copy when first used.
+	 * @param username : the username to search for
+	 * @param projection : what to load along with the User, if it isn't cached
+	 * @return User: a copy of the found user
+	 * @throws NoSuchUserExistsException if no user has that username
+	 */
+	@Override
+	public User getUserByUsername(String username, UserProjection projection) throws NoSuchUserExistsException {
+		String key = username.toLowerCase();
+		User cached = cache.get(key);
+		if(cached != null)
+			return new User(cached);
+
+		// Remember the generation before loading, so a user that changed in the meantime isn't cached.
+		long generation = cache.getGeneration();
+		User user = services.getUserByUsername(username, projection);
+		if(user != null)
+			cache.put(key, new User(user), generation);
+		return user;
+	}
+
+	/**
+	 * Simply drop a user from the cache.
+	 * @param username : the username of the user to drop
+	 */
+	public void invalidate(String username) {
+		cache.invalidate(username.toLowerCase());
+	}
+
+	/**
+	 * Simply return the cache itself, mainly to query its statistics.
+	 * @return LruCache<String, User>: the cache of users
+	 */
+	public LruCache<String, User> getCache() {
+		return cache;
+	}
+
+	// Every method that changes a user drops them from the cache afterwards (even if it failed halfway).
+	@Override
+	public User registerBankAccount(User user, Account account) throws SameUsernameException {
+		try {
+			return services.registerBankAccount(user, account);
+		}
+		finally {
+			invalidate(user.getUsername());
+		}
+	}
+
+	@Override
+	public User deposit(User user, String accountName, long balance) throws NoSuchBankExistsException {
+		try {
+			return services.deposit(user, accountName, balance);
+		}
+		finally {
+			invalidate(user.getUsername());
+		}
+	}
+
+	@Override
+	public User withdraw(User user, String accountName, long balance) throws NoSuchBankExistsException, InvalidWithdrawException {
+		try {
+			return services.withdraw(user, accountName, balance);
+		}
+		finally {
+			invalidate(user.getUsername());
+		}
+	}
+
+	@Override
+	public boolean registerUser(User user) throws InvalidPasswordException {
+		try {
+			return services.registerUser(user);
+		}
+		finally {
+			invalidate(user.getUsername());
+		}
+	}
+
+	@Override
+	public User deleteUser(User user) throws NoSuchUserExistsException, DeleteUserWithAccountsException {
+		try {
+			return services.deleteUser(user);
+		}
+		finally {
+			invalidate(user.getUsername());
+		}
+	}
+
+	@Override
+	public User deleteBankAccount(User user, String accountName) throws NoSuchBankExistsException, DeletingBankAccountWithMoneyException {
+		try {
+			return services.deleteBankAccount(user, accountName);
+		}
+		finally {
+			invalidate(user.getUsername());
+		}
+	}
+
+	// Everything else simply goes through the wrapped services.
+	@Override
+	public void viewAccounts(User user) {
+		services.viewAccounts(user);
+	}
+
+	@Override
+	public void viewTransactions(User user) {
+		services.viewTransactions(user);
+	}
+
+	@Override
+	public List<Transaction> getTransactionHistory(User user, int lastSeenId, int pageSize) {
+		return services.getTransactionHistory(user, lastSeenId, pageSize);
+	}
+
+	@Override
+	public User login(String username, String password) throws InvalidLoginException {
+		return services.login(username, password);
+	}
+
+	@Override
+	public int getKey() {
+		return services.getKey();
+	}
+}
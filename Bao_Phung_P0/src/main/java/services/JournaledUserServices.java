@@ -0,0 +1,375 @@
+package services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import daos.UserDAO;
+import entities.Account;
+import entities.Transaction;
+import entities.TransactionType;
+import entities.User;
+import entities.UserProjection;
+import exceptions.DeleteUserWithAccountsException;
+import exceptions.DeletingBankAccountWithMoneyException;
+import exceptions.InvalidLoginException;
+import exceptions.InvalidPasswordException;
+import exceptions.InvalidWithdrawException;
+import exceptions.NoSuchBankExistsException;
+import exceptions.NoSuchUserExistsException;
+import exceptions.SameUsernameException;
+import util.Journal;
+
+/**
+ * Wraps the UserServices so that deposits are acknowledged as soon as they are in a local write-ahead Journal, instead of waiting for the database. <br>
+ * A single background thread (journal-applier) then applies the deposits to the database in journal order, and checkpoints the journal after each one.
+ * Whatever was acknowledged but not applied when the application stopped (or crashed) is replayed from the journal the next time it starts. <br>
+ * Every deposit reserves its transaction id before it is journaled, and the database only applies a deposit whose Transaction isn't there yet,
+ * so a deposit that was applied right before a crash (but not checkpointed) is never credited twice.  The journal is never checkpointed past a deposit
+ * that wasn't applied: it is retried until it is, unless its account no longer exists, in which case it is parked (see AccountDAOImpl.depositOnce()) and reported. <br>
+ * Withdraws, deletes, and logins need the database to decide (is there enough money? does the account still exist?),
+ * so they wait for every pending deposit to be applied first and then simply go through the wrapped services, just like everything else.
+ * @author baoph
+ *
+ */
+public class JournaledUserServices implements UserServices, AutoCloseable{
+
+	// The type of a journal record; only deposits are ever acknowledged ahead of the database.
+	// Deposits journaled before they carried their transaction id (DEPOSIT_RECORD) are still replayed, with an id reserved at that point.
+	private static final byte DEPOSIT_RECORD = 1, KEYED_DEPOSIT_RECORD = 2;
+
+	// How long an operation waits for the pending deposits to be applied before going ahead anyway
+	private static final long APPLY_TIMEOUT_MILLIS = 5000;
+
+	// How many times (a second apart) a deposit is tried while replaying at startup or closing, and how often a deposit that keeps failing is reported
+	private static final int APPLY_ATTEMPTS = 5;
+
+	/**
+	 * A deposit that was acknowledged, but is not in the database yet.
+	 */
+	private static class PendingDeposit {
+		final int userId;
+		final int accountId;
+		final long amount;
+		long transactionId;
+		long sequence;
+
+		PendingDeposit(int userId, int accountId, long amount, long transactionId) {
+			this.userId = userId;
+			this.accountId = accountId;
+			this.amount = amount;
+			this.transactionId = transactionId;
+		}
+
+		byte[] encode() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(25);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(KEYED_DEPOSIT_RECORD);
+			out.writeInt(userId);
+			out.writeInt(accountId);
+			out.writeLong(amount);
+			out.writeLong(transactionId);
+			out.close();
+			return bytes.toByteArray();
+		}
+
+		static PendingDeposit decode(Journal.Record record) throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.getPayload()));
+			byte type = in.readByte();
+			if(type != DEPOSIT_RECORD && type != KEYED_DEPOSIT_RECORD)
+				throw new IOException("Error, unknown journal record " + record.getSequence());
+			PendingDeposit deposit = new PendingDeposit(in.readInt(), in.readInt(), in.readLong(), 0);
+			if(type == KEYED_DEPOSIT_RECORD)
+				deposit.transactionId = in.readLong();
+			deposit.sequence = record.getSequence();
+			return deposit;
+		}
+	}
+
+	private final UserServices services;
+	private final UserDAO users;
+	private final Journal journal;
+	private final LinkedBlockingQueue<PendingDeposit> pending = new LinkedBlockingQueue<PendingDeposit>();
+	private final Thread applier;
+	private volatile boolean closed = false;
+	private final AtomicLong parked = new AtomicLong();
+
+	// Guarded by this: the sequence of the last deposit that was applied (or parked)
+	private long appliedSequence;
+
+	/**
+	 * Wrap the services with a journal, replaying every deposit that was acknowledged but never applied.
+	 * @param services : the services to wrap
+	 * @param users : the User DAO the services use, which deposits are applied through
+	 * @param journal : the opened journal
+	 */
+	public JournaledUserServices(UserServices services, UserDAO users, Journal journal) {
+		this.services = services;
+		this.users = users;
+		this.journal = journal;
+
+		// First, replay whatever the journal still holds, in order.
+		// Once a deposit can't be applied yet, it (and everything after it) is left to the applier, which keeps retrying it.
+		appliedSequence = journal.getCheckpoint();
+		boolean replaying = true;
+		for(Journal.Record record : journal.getUnapplied()) {
+			PendingDeposit deposit;
+			try {
+				deposit = PendingDeposit.decode(record);
+			}
+			catch(IOException e) {
+				// This version can't tell what the record is, so it can never be applied: report it, and move past it.
+				parked.incrementAndGet();
+				System.out.println(e.getMessage() + ", it was skipped");
+				if(replaying)
+					checkpoint(record.getSequence());
+				continue;
+			}
+			if(replaying && apply(deposit, APPLY_ATTEMPTS))
+				checkpoint(deposit.sequence);
+			else {
+				replaying = false;
+				pending.add(deposit);
+			}
+		}
+
+		// Then, start applying new deposits in the background.
+		applier = new Thread(this::runApplier, "journal-applier");
+		applier.setDaemon(true);
+		applier.start();
+	}
+
+	/**
+	 * Given the current logged in User and an inputted accountName and balance, increase the User's bank account by the given balance. <br>
+	 * The deposit is acknowledged once it is in the journal; the database catches up in the background.
+	 * If the journal can't be written, the deposit simply goes straight to the database instead.
+	 * @param user : the current User that is logged in
+	 * @param accountName : the accountName to search for
+	 * @param balance : the amount (in cents) to increase on the User's bank account.
+	 * @throws NoSuchBankExistsException if the User has no bank account with the given account name.
+	 */
+	@Override
+	public User deposit(User user, String accountName, long balance) throws NoSuchBankExistsException {
+		// First, attempt to find the account with the provided account name
+		Account account = user.getAccount(accountName);
+
+		// Second, reserve the deposit's transaction id (which makes applying it idempotent), and write it to the journal (this returns once it is on disk)
+		PendingDeposit deposit = new PendingDeposit(user.getId(), account.getId(), balance, users.reserveTransactionId());
+		try {
+			if(deposit.transactionId == 0)
+				throw new IOException("Error, no transaction id could be reserved for the deposit");
+			deposit.sequence = journal.append(deposit.encode());
+		}
+		catch(IOException e) {
+			System.out.println(e.getMessage());
+			awaitApplied();
+			return services.deposit(user, accountName, balance);
+		}
+		pending.add(deposit);
+
+		// Third, the deposit can no longer be lost, so update the User's specific account right away
+		account.setBalance(account.getBalance() + balance);
+		user.addTransaction(new Transaction((int) deposit.transactionId, TransactionType.DEPOSIT, account.getId(), account.getName(), balance,
+				account.getBalance(), System.currentTimeMillis()));
+
+		System.out.println("Money successfully deposited onto your account!");
+		return user;
+	}
+
+	/**
+	 * The background applier: take every pending deposit in order, apply it, and checkpoint the journal. <br>
+	 * Once closed, it still finishes whatever is pending, unless a deposit still can't be applied: then it stops right there,
+	 * and the journal replays that deposit (and everything after it) the next time the application starts.
+	 */
+	private void runApplier() {
+		while(!closed || !pending.isEmpty()) {
+			PendingDeposit deposit;
+			try {
+				deposit = pending.poll(100, TimeUnit.MILLISECONDS);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if(deposit == null)
+				continue;
+
+			if(!apply(deposit, 0)) {
+				System.out.println("Error, journal record " + deposit.sequence + " and the " + pending.size() + " deposit(s) after it will be applied on the next start");
+				return;
+			}
+			checkpoint(deposit.sequence);
+		}
+	}
+
+	/**
+	 * Apply a single deposit to the database exactly once, retrying a second apart while it fails (for example, while the database is unreachable). <br>
+	 * A deposit to an account that no longer exists can never be applied, so the database parks it instead, and it is reported here.
+	 * @param deposit : the deposit
+	 * @param maxAttempts : how many times to try, or 0 to keep trying until the services are closed (and then a few more times)
+	 * @return Boolean: True if the deposit is applied (or parked), False if it still has to be applied
+	 */
+	private boolean apply(PendingDeposit deposit, int maxAttempts) {
+		for(int attempt = 1; ; attempt++) {
+			// A record journaled before deposits carried their id only gets one now (it is replayed at least once, rather than exactly once).
+			if(deposit.transactionId == 0)
+				deposit.transactionId = users.reserveTransactionId();
+			Boolean deposited = (deposit.transactionId == 0 ? null
+					: users.depositBankAccountOnce(deposit.userId, deposit.accountId, deposit.transactionId, deposit.amount));
+			if(deposited != null) {
+				if(!deposited) {
+					parked.incrementAndGet();
+					System.out.println("Error, journal record " + deposit.sequence + " (a deposit to account " + deposit.accountId
+							+ ") was parked, since the account no longer exists");
+				}
+				return true;
+			}
+
+			if(attempt % APPLY_ATTEMPTS == 0)
+				System.out.println("Error, journal record " + deposit.sequence + " (a deposit to account " + deposit.accountId + ") could not be applied after "
+						+ attempt + " attempts; it will be retried");
+			if((maxAttempts > 0 || closed) && attempt >= Math.max(maxAttempts, APPLY_ATTEMPTS))
+				return false;
+			try {
+				Thread.sleep(1000);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Checkpoint the journal right after a deposit that is done with, and wake up everyone waiting for it.
+	 */
+	private void checkpoint(long sequence) {
+		journal.checkpoint(sequence);
+		synchronized(this) {
+			appliedSequence = sequence;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Wait until every deposit acknowledged so far is in the database (or the timeout is up).
+	 */
+	private void awaitApplied() {
+		long target = journal.getLastSequence();
+		long deadline = System.currentTimeMillis() + APPLY_TIMEOUT_MILLIS;
+		synchronized(this) {
+			while(appliedSequence < target) {
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0) {
+					System.out.println("Error, the pending deposits are taking too long to reach the database");
+					return;
+				}
+				try {
+					wait(remaining);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Apply every pending deposit, stop the applier, and close the journal.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try {
+			applier.join();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		journal.close();
+	}
+
+	/**
+	 * Simply return the number of deposits that could never be applied (their account no longer exists, or the record couldn't be read), and were parked.
+	 * @return long: the number of parked deposits
+	 */
+	public long getParkedCount() {
+		return parked.get();
+	}
+
+	// Everything that reads from or depends on the database waits for the pending deposits first.
+	@Override
+	public User getUserByUsername(String username) throws NoSuchUserExistsException {
+		awaitApplied();
+		return services.getUserByUsername(username);
+	}
+	
+	@Override
+	public User getUserByUsername(String username, UserProjection projection) throws NoSuchUserExistsException {
+		awaitApplied();
+		return services.getUserByUsername(username, projection);
+	}
+
+	@Override
+	public List<Transaction> getTransactionHistory(User user, int lastSeenId, int pageSize) {
+		awaitApplied();
+		return services.getTransactionHistory(user, lastSeenId, pageSize);
+	}
+
+	@Override
+	public User withdraw(User user, String accountName, long balance) throws NoSuchBankExistsException, InvalidWithdrawException {
+		awaitApplied();
+		return services.withdraw(user, accountName, balance);
+	}
+
+	@Override
+	public User deleteUser(User user) throws NoSuchUserExistsException, DeleteUserWithAccountsException {
+		awaitApplied();
+		return services.deleteUser(user);
+	}
+
+	@Override
+	public User deleteBankAccount(User user, String accountName) throws NoSuchBankExistsException, DeletingBankAccountWithMoneyException {
+		awaitApplied();
+		return services.deleteBankAccount(user, accountName);
+	}
+
+	@Override
+	public User login(String username, String password) throws InvalidLoginException {
+		awaitApplied();
+		return services.login(username, password);
+	}
+
+	// Everything else simply goes through the wrapped services.
+	@Override
+	public void viewAccounts(User user) {
+		services.viewAccounts(user);
+	}
+
+	@Override
+	public void viewTransactions(User user) {
+		services.viewTransactions(user);
+	}
+
+	@Override
+	public User registerBankAccount(User user, Account account) throws SameUsernameException {
+		return services.registerBankAccount(user, account);
+	}
+
+	@Override
+	public boolean registerUser(User user) throws InvalidPasswordException {
+		return services.registerUser(user);
+	}
+
+	@Override
+	public int getKey() {
+		return services.getKey();
+	}
+}
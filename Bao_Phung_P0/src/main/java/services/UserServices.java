@@ -1,7 +1,11 @@
 package services;
 
+import java.util.List;
+
 import entities.Account;
+import entities.Transaction;
 import entities.User;
+import entities.UserProjection;
 import exceptions.DeleteUserWithAccountsException;
 import exceptions.DeletingBankAccountWithMoneyException;
 import exceptions.InvalidLoginException;
@@ -19,13 +23,18 @@ import exceptions.SameUsernameException;
 public interface UserServices {
 	// Methods to retrieve a specific user (or related info)
 	User getUserByUsername(String username) throws NoSuchUserExistsException;
+	// Only what the projection asks for is loaded up front; the rest is loaded the first time it is used
+	User getUserByUsername(String username, UserProjection projection) throws NoSuchUserExistsException;
 	
 	// Methods to work with each user's bank accounts
 	void viewAccounts(User user);
 	void viewTransactions(User user);
+	// Keyset pagination through the whole history: pass Integer.MAX_VALUE, then the id of the last Transaction of the previous page
+	List<Transaction> getTransactionHistory(User user, int lastSeenId, int pageSize);
 	User registerBankAccount(User user, Account account) throws SameUsernameException;
-	User deposit(User user, String accountName, double balance) throws NoSuchBankExistsException;
-	User withdraw(User user, String accountName, double balance) throws NoSuchBankExistsException, InvalidWithdrawException;
+	// All amounts of money are in cents (see util.Money)
+	User deposit(User user, String accountName, long balance) throws NoSuchBankExistsException;
+	User withdraw(User user, String accountName, long balance) throws NoSuchBankExistsException, InvalidWithdrawException;
 	
 	// Method to register an account
 	boolean registerUser(User user) throws InvalidPasswordException;
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import daos.AccountDAO;
@@ -16,7 +17,9 @@ import daos.UserDAO;
 import daos.UserDAOImpl;
 import entities.Account;
 import entities.Transaction;
+import entities.TransactionType;
 import entities.User;
+import entities.UserProjection;
 import exceptions.DeleteUserWithAccountsException;
 import exceptions.DeletingBankAccountWithMoneyException;
 import exceptions.InvalidLoginException;
@@ -29,8 +32,12 @@ import util.DBConnection;
 
 public class UserServicesImpl implements UserServices{
 	
+	// The bounds of a single page of transaction history
+	public static final int DEFAULT_HISTORY_PAGE_SIZE = 10;
+	public static final int MAX_HISTORY_PAGE_SIZE = 100;
+	
 	// Create a User DAO
-	private static UserDAO users;
+	private UserDAO users;
 	
 	public UserServicesImpl() {
 		users = new UserDAOImpl();
@@ -40,6 +47,14 @@ public class UserServicesImpl implements UserServices{
 		users = new UserDAOImpl(key);
 	}
 	
+	/**
+	 * Create the services on top of any UserDAO implementation (for example, the in-memory UserDAOMemoryImpl).
+	 * @param users : the User DAO to use
+	 */
+	public UserServicesImpl(UserDAO users) {
+		this.users = users;
+	}
+	
 	/**
 	 * This method simply retrieves a specific User given their username.
 	 * @throws NoUserExistsException is thrown if a given user 
@@ -48,6 +63,14 @@ public class UserServicesImpl implements UserServices{
 		return users.getUserByUsername(username);
 	}
 	
+	/**
+	 * This method simply retrieves a specific User given their username, loading only what the projection asks for up front.
+	 * @throws NoUserExistsException is thrown if a given user 
+	 */
+	public User getUserByUsername(String username, UserProjection projection) throws NoSuchUserExistsException {
+		return users.getUserByUsername(username, projection);
+	}
+	
 	/**
 	 * Given a user, view all of their accounts that they own.
 	 * @param user : the User to view all account information from.
@@ -66,8 +89,8 @@ public class UserServicesImpl implements UserServices{
 	}
 	
 	/**
-	 * Given a user, view their 10 most recent transactions.
-	 * @param user : the User to view the 10 most recent transactions from
+	 * Given a user, view their most recent transactions (the ones the User keeps).
+	 * @param user : the User to view the most recent transactions from
 	 */
 	@Override
 	public void viewTransactions(User user) {
@@ -76,6 +99,21 @@ public class UserServicesImpl implements UserServices{
 			System.out.println("Transaction " + (transactions.size() - i) + ": " + transactions.get(i).getMessage());
 	}
 	
+	/**
+	 * Given a user, return a single page of their transaction history, newest first. <br>
+	 * Start with Integer.MAX_VALUE as the lastSeenId, and then pass the id of the last Transaction of the previous page to get the next (older) one.
+	 * @param user : the User to view the transaction history from
+	 * @param lastSeenId : the id of the oldest Transaction that was already seen
+	 * @param pageSize : the number of transactions per page; it is kept within [1, MAX_HISTORY_PAGE_SIZE]
+	 * @return List<Transaction>: the page of transactions, which is empty once the whole history has been seen
+	 */
+	@Override
+	public List<Transaction> getTransactionHistory(User user, int lastSeenId, int pageSize) {
+		pageSize = Math.max(1, Math.min(pageSize, MAX_HISTORY_PAGE_SIZE));
+		List<Transaction> page = users.getTransactionHistory(user.getId(), lastSeenId, pageSize);
+		return (page == null ? new ArrayList<Transaction>() : page);
+	}
+	
 	/**
 	 * Given a user, add a brand new account, but only if the account name is unique.
 	 * @param user : the User to add a new banking account from.
@@ -85,19 +123,15 @@ public class UserServicesImpl implements UserServices{
 	 */
 	@Override
 	public User registerBankAccount(User user, Account newAccount) throws SameUsernameException{
-		// Get a list of all of the User's bank accounts that are stored in the User object itself. 
-		// If the name of the inputted account is the same as any one of the Accounts, then throw an exception!
-		List<Account> userBankAccounts = user.getAllAccounts();
-		for(int i = 0; i < userBankAccounts.size(); i++) {
-			if(newAccount.equals(userBankAccounts.get(i)))
-				throw new SameUsernameException();
-		}
+		// If the User (the User object itself) already has an account with the same name as the inputted account, then throw an exception!
+		if(user.hasAccount(newAccount.getName()))
+			throw new SameUsernameException();
 		
 		// Next, add the new Account to the database
-		// If successful, retrieve it via a query and add it to the User account.
+		// If successful, it comes back with its generated id, so it can be added to the User account as is.
 		if(users.createBankAccount(user.getId(), newAccount)) {
-			user.addAccount(users.getAccount(user.getId(), newAccount.getName()));
-			user.addTransaction(new Transaction(user.getId(), "Created a new " + newAccount.getName() + " Bank Account"));
+			user.addAccount(newAccount);
+			user.addTransaction(toTransaction(TransactionType.CREATE, newAccount, newAccount.getBalance()));
 		}
 		
 		// Finally, return the updated User.
@@ -108,26 +142,27 @@ public class UserServicesImpl implements UserServices{
 	 * Given the current logged in User and an inputted accountName and balance, increase the User's bank account by the given balance
 	 * @param user : the current User that is logged in
 	 * @param accountName : the accountName to search for
-	 * @param balance : the amount to increase on the User's bank account.
+	 * @param balance : the amount (in cents) to increase on the User's bank account.
 	 * @throws NoSuchUserExistsException is thrown if there is no user with the given username.
 	 * @throws SameUsernameException should never be thrown in this method.
 	 * @throws NoSuchBankExistsException should be thrown if the User has no bank account with the given account name.
 	 */
 	@Override
-	public User deposit(User user, String accountName, double balance) throws NoSuchBankExistsException{
+	public User deposit(User user, String accountName, long balance) throws NoSuchBankExistsException{
 		// First, attempt to find the account with the provided account name
 		Account account = user.getAccount(accountName);
 		
 		// Second, update the balance (in this case, it's an increment)
-		account.setBalance(account.getBalance() + balance);
+		// The database adds the amount to whatever balance it currently stores (so concurrent sessions never overwrite each other),
+		// records the Transaction in the same round trip, and refreshes the account with the new balance.
+		if(!users.updateBankAccountWithTransaction(user.getId(), account, 0, balance)) {
+			System.out.println("Error, the deposit could not be completed.  Please try again.");
+			return user;
+		}
 		
 		// Third, update the User's specific account
 		user.updateAccount(account);
-		
-		// Fourth, update the database with the new balance
-		users.updateUserTransactions(user.getId(), accountName, 0, balance); 
-		users.updateBankAccount(user.getId(), account);
-		user.addTransaction(new Transaction("Deposited $" + (Math.round(balance)*100./100.) + " to the " + accountName + " Bank Account"));
+		user.addTransaction(toTransaction(TransactionType.DEPOSIT, account, balance));
 		
 		// And return the user itself.
 		System.out.println("Money successfully deposited onto your account!");
@@ -138,28 +173,24 @@ public class UserServicesImpl implements UserServices{
 	 * Given the current logged in User and an inputted accountName and balance, increase the User's bank account by the given balance
 	 * @param user : the current User that is logged in
 	 * @param accountName : the accountName to search for
-	 * @param balance : the amount to decrease on the User's bank account
+	 * @param balance : the amount (in cents) to decrease on the User's bank account
 	 * @throws NoSuchUserExistsException is thrown if there is no user with the given username
 	 * @throws SameUsernameException should never be thrown in this method
 	 */
 	@Override
-	public User withdraw(User user, String accountName, double balance) throws NoSuchBankExistsException, InvalidWithdrawException{
+	public User withdraw(User user, String accountName, long balance) throws NoSuchBankExistsException, InvalidWithdrawException{
 		// First, attempt to find the account with the provided account name
 		Account account = user.getAccount(accountName);
 		
 		// Second, update the balance (in this case, it's a decrement)
-		// However, throw an exception if the input balance is larger than what the Account has in the bank
-		if(balance > account.getBalance())
+		// The database only subtracts the amount if the balance it currently stores is large enough (the local copy may be out of date),
+		// so throw an exception if the input balance is larger than what the Account has in the bank
+		if(!users.updateBankAccountWithTransaction(user.getId(), account, 1, balance))
 			throw new InvalidWithdrawException(balance);
-		account.setBalance(account.getBalance() - balance);
 		
 		// Third, update the User's specific account
 		user.updateAccount(account);
-		
-		// Fourth, update the database with the new balance
-		users.updateUserTransactions(user.getId(), accountName, 1, balance); 
-		users.updateBankAccount(user.getId(), account);
-		user.addTransaction(new Transaction("Withdrawn $" + (Math.round(balance)*100./100.) + " fro the " + accountName + " Bank Account"));
+		user.addTransaction(toTransaction(TransactionType.WITHDRAW, account, balance));
 		
 		// And return the user itself.
 		System.out.println("Money successfully withdrawn from your account!");
@@ -224,11 +255,12 @@ public class UserServicesImpl implements UserServices{
 		if(account.getBalance() > 0)
 			throw new DeletingBankAccountWithMoneyException(account.getName());
 		
-		// If the delete operation was successful, then also get rid of it from the User object
-		if(users.deleteBankAccount(user.getId(), account.getName())) {
-			user.addTransaction(new Transaction(user.getId(), "Deleted the " + accountName + " Bank Account"));
-			user.deleteAccount(account.getName());
-		}
+		// If the delete operation was successful, then also get rid of it from the User object.
+		// The database only deletes the Account if it still holds no money, since this copy of it may be out of date (for example, a deposit from another session).
+		if(!users.deleteBankAccount(user.getId(), account.getId()))
+			throw new DeletingBankAccountWithMoneyException(account.getName());
+		user.addTransaction(toTransaction(TransactionType.DELETE, account, 0));
+		user.deleteAccount(account);
 		
 		return user;
 	}
@@ -254,4 +286,15 @@ public class UserServicesImpl implements UserServices{
 		return users.getKey();
 	}
 	
+	/**
+	 * Build the in-memory copy of a Transaction that was just recorded for the given Account.
+	 * @param type : what kind of change was recorded
+	 * @param account : the Account as it is after the change
+	 * @param amount : the amount of money (in cents) that moved
+	 * @return Transaction: the new Transaction
+	 */
+	private Transaction toTransaction(TransactionType type, Account account, long amount) {
+		return new Transaction(-1, type, account.getId(), account.getName(), amount, account.getBalance(), System.currentTimeMillis());
+	}
+	
 }
@@ -0,0 +1,325 @@
+package services;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import daos.UserDAO;
+import entities.Account;
+import entities.Transaction;
+import entities.User;
+import entities.UserProjection;
+import exceptions.DeleteUserWithAccountsException;
+import exceptions.DeletingBankAccountWithMoneyException;
+import exceptions.InvalidLoginException;
+import exceptions.InvalidPasswordException;
+import exceptions.InvalidWithdrawException;
+import exceptions.NoSuchBankExistsException;
+import exceptions.NoSuchUserExistsException;
+import exceptions.SameUsernameException;
+import util.BloomFilter;
+import util.LruCache;
+
+/**
+ * Wraps the UserServices with a Bloom filter of every (lower case) username, so looking up or logging in with a username that doesn't exist
+ * is answered right away, without a query. <br>
+ * The filter is loaded page by page when the services start, and every registered username is added to it.  Since a Bloom filter can't forget,
+ * usernames that turn out to be missing anyway (deleted users, and the occasional false positive) are remembered in a small negative cache. <br>
+ * Once more users were registered than the filter was sized for, a bigger one is loaded in the background while the current one keeps answering. <br>
+ * The filter only knows about users registered through this application (or loaded since), so it only has the final word when nothing else can register users
+ * (the in-memory backend).  Otherwise, a username the filter has never seen is still looked up before it is rejected, and the filter is reloaded
+ * every so often (and as soon as a few usernames it missed turn out to exist), so users registered by another instance or a DBA can log in right away.
+ * @author baoph
+ *
+ */
+public class UsernameFilteredUserServices implements UserServices{
+
+	// Defaults for the filter; each of these can be overridden with -Dbank.usernameFilter.expectedUsers, -Dbank.usernameFilter.falsePositiveRate,
+	// and -Dbank.usernameFilter.reloadMillis (how often the filter is reloaded when it isn't the final word; 0 turns this off).
+	public static final int DEFAULT_EXPECTED_USERS = 10000;
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+	public static final long DEFAULT_RELOAD_MILLIS = 300000;
+
+	// The negative cache, the page size used when loading usernames, and how many usernames the filter missed may turn up before it is reloaded
+	private static final int NEGATIVE_CACHE_SIZE = 10000, LOAD_PAGE_SIZE = 1000, STALE_MISSES_BEFORE_RELOAD = 16;
+	private static final long NEGATIVE_CACHE_TTL_MILLIS = 60000;
+
+	private final UserServices services;
+	private final UserDAO users;
+	private final double falsePositiveRate;
+	private final int expectedUsers;
+	private final boolean authoritative;
+	private final long reloadMillis;
+	private final LruCache<String, Boolean> missingUsernames = new LruCache<String, Boolean>(NEGATIVE_CACHE_SIZE, NEGATIVE_CACHE_TTL_MILLIS);
+
+	// The filter that answers lookups (NULL until the first load finishes), and the one being loaded to replace it (NULL unless loading)
+	private volatile BloomFilter filter = null;
+	private volatile BloomFilter loading = null;
+	private final AtomicBoolean reloading = new AtomicBoolean(false);
+	private final AtomicLong rejected = new AtomicLong(), staleMisses = new AtomicLong(), staleMissesSinceLoad = new AtomicLong();
+	private volatile long loadedMillis;
+
+	/**
+	 * Wrap the services with a filter sized from the system properties (or the defaults), and load it.
+	 * @param services : the services to wrap
+	 * @param users : the User DAO the services use, which the usernames are loaded from
+	 * @param authoritative : True if every user is registered through these services (the in-memory backend), so a username the filter never saw is rejected right away
+	 */
+	public UsernameFilteredUserServices(UserServices services, UserDAO users, boolean authoritative) {
+		this(services, users, Integer.getInteger("bank.usernameFilter.expectedUsers", DEFAULT_EXPECTED_USERS),
+				Double.parseDouble(System.getProperty("bank.usernameFilter.falsePositiveRate", Double.toString(DEFAULT_FALSE_POSITIVE_RATE))),
+				authoritative, Long.getLong("bank.usernameFilter.reloadMillis", DEFAULT_RELOAD_MILLIS));
+	}
+
+	/**
+	 * Wrap the services with a filter, and load it.
+	 * @param services : the services to wrap
+	 * @param users : the User DAO the services use, which the usernames are loaded from
+	 * @param expectedUsers : the number of users the first filter is sized for
+	 * @param falsePositiveRate : the false positive rate of every filter, within (0, 1)
+	 * @param authoritative : True if every user is registered through these services (the in-memory backend), so a username the filter never saw is rejected right away
+	 * @param reloadMillis : how often the filter is reloaded if it isn't authoritative (0 for never)
+	 */
+	public UsernameFilteredUserServices(UserServices services, UserDAO users, int expectedUsers, double falsePositiveRate, boolean authoritative, long reloadMillis) {
+		this.services = services;
+		this.users = users;
+		this.expectedUsers = expectedUsers;
+		this.falsePositiveRate = falsePositiveRate;
+		this.authoritative = authoritative;
+		this.reloadMillis = reloadMillis;
+		reload();
+	}
+
+	/**
+	 * Load a brand new filter from every username in the database, one page at a time, and then swap it in. <br>
+	 * Until it is swapped in, the current filter keeps answering, and usernames registered in the meantime go into both.
+	 * @return Boolean: True if the new filter is in use, False if the usernames could not be read (the current filter stays)
+	 */
+	public synchronized boolean reload() {
+		BloomFilter current = filter;
+		long expected = Math.max(expectedUsers, (current == null ? 0 : 2 * current.getInsertions()));
+		while(true) {
+			BloomFilter next = new BloomFilter(expected, falsePositiveRate);
+			loading = next;
+
+			long count = 0;
+			String lastSeenUsername = null;
+			List<String> page;
+			do {
+				page = users.getUsernames(lastSeenUsername, LOAD_PAGE_SIZE);
+				if(page == null) {
+					loading = null;
+					return false;
+				}
+				for(String username : page)
+					next.put(username);
+				count += page.size();
+				if(!page.isEmpty())
+					lastSeenUsername = page.get(page.size() - 1);
+			} while(page.size() == LOAD_PAGE_SIZE);
+
+			// If there turned out to be more usernames than the filter was sized for, simply load again with room to grow.
+			if(count > expected) {
+				expected = 2 * count;
+				continue;
+			}
+			filter = next;
+			loading = null;
+			loadedMillis = System.currentTimeMillis();
+			staleMissesSinceLoad.set(0);
+			return true;
+		}
+	}
+
+	/**
+	 * Check whether a username is definitely missing: it was already looked up and found missing, or the filter never saw it (and the filter is authoritative).
+	 */
+	private boolean isMissing(String key) {
+		if(missingUsernames.get(key) != null || (authoritative && !mightExist(key))) {
+			rejected.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether the filter has seen the username (or it isn't loaded yet).
+	 */
+	private boolean mightExist(String key) {
+		BloomFilter current = filter;
+		return (current == null || current.mightContain(key));
+	}
+
+	/**
+	 * Called when a username exists after all.  If the filter never saw it, then someone else registered it: it is added, and once that happens a few times
+	 * (or the filter is simply old), a fresh one is loaded in the background.
+	 */
+	private void confirmExists(String key) {
+		if(!mightExist(key)) {
+			staleMisses.incrementAndGet();
+			staleMissesSinceLoad.incrementAndGet();
+			addUsername(key);
+		}
+		if(!authoritative && (staleMissesSinceLoad.get() >= STALE_MISSES_BEFORE_RELOAD
+				|| (reloadMillis > 0 && System.currentTimeMillis() - loadedMillis >= reloadMillis)))
+			reloadInBackground();
+	}
+
+	/**
+	 * Load a new filter on a background thread while the current one keeps answering, unless one is being loaded already.
+	 */
+	private void reloadInBackground() {
+		if(!reloading.compareAndSet(false, true))
+			return;
+		Thread reloader = new Thread(() -> {
+			try {
+				reload();
+			}
+			finally {
+				reloading.set(false);
+			}
+		}, "username-filter-reload");
+		reloader.setDaemon(true);
+		reloader.start();
+	}
+
+	/**
+	 * Add a username that now exists to the filter (and to the one being loaded, if any), and forget that it was missing.
+	 */
+	private void addUsername(String key) {
+		missingUsernames.invalidate(key);
+		
+		// Read the filter being loaded first: it only becomes the current one (and stops being the loading one) in that order.
+		BloomFilter next = loading, current = filter;
+		if(current != null)
+			current.put(key);
+		if(next != null)
+			next.put(key);
+
+		// Once the filter holds more than it was sized for, load a bigger one in the background.
+		if(current != null && current.isOverCapacity())
+			reloadInBackground();
+	}
+
+	@Override
+	public User getUserByUsername(String username) throws NoSuchUserExistsException {
+		return getUserByUsername(username, UserProjection.ACCOUNTS);
+	}
+
+	@Override
+	public User getUserByUsername(String username, UserProjection projection) throws NoSuchUserExistsException {
+		String key = username.toLowerCase();
+		if(isMissing(key))
+			throw new NoSuchUserExistsException(username);
+
+		long generation = missingUsernames.getGeneration();
+		try {
+			User user = services.getUserByUsername(username, projection);
+			confirmExists(key);
+			return user;
+		}
+		catch(NoSuchUserExistsException e) {
+			missingUsernames.put(key, Boolean.TRUE, generation);
+			throw e;
+		}
+	}
+
+	/**
+	 * Log in, unless the username is definitely missing. <br>
+	 * A failed login isn't remembered as a missing username, since it may just as well have been the wrong password.
+	 */
+	@Override
+	public User login(String username, String password) throws InvalidLoginException {
+		String key = username.toLowerCase();
+		if(isMissing(key))
+			throw new InvalidLoginException();
+		User user = services.login(username, password);
+		confirmExists(key);
+		return user;
+	}
+
+	/**
+	 * Register the user, and add their username to the filter. <br>
+	 * The database still has the final word on whether the username is taken: the filter can only ever say that it probably is.
+	 */
+	@Override
+	public boolean registerUser(User user) throws InvalidPasswordException {
+		boolean registered = services.registerUser(user);
+
+		// Whether it was just created or was already taken, the username is in the database now.
+		addUsername(user.getUsername().toLowerCase());
+		return registered;
+	}
+
+	@Override
+	public User deleteUser(User user) throws NoSuchUserExistsException, DeleteUserWithAccountsException {
+		User deleted = services.deleteUser(user);
+		missingUsernames.put(user.getUsername().toLowerCase(), Boolean.TRUE);
+		return deleted;
+	}
+
+	/**
+	 * Simply return the number of lookups and logins that were answered without a query.
+	 * @return long: the number of rejected usernames
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Simply return the number of usernames the filter had never seen that turned out to exist (registered by someone else).
+	 * @return long: the number of stale misses
+	 */
+	public long getStaleMissCount() {
+		return staleMisses.get();
+	}
+
+	/**
+	 * Simply return the filter currently in use.
+	 * @return BloomFilter: the filter, or NULL if it was never loaded
+	 */
+	public BloomFilter getFilter() {
+		return filter;
+	}
+
+	// Everything else simply goes through the wrapped services.
+	@Override
+	public void viewAccounts(User user) {
+		services.viewAccounts(user);
+	}
+
+	@Override
+	public void viewTransactions(User user) {
+		services.viewTransactions(user);
+	}
+
+	@Override
+	public List<Transaction> getTransactionHistory(User user, int lastSeenId, int pageSize) {
+		return services.getTransactionHistory(user, lastSeenId, pageSize);
+	}
+
+	@Override
+	public User registerBankAccount(User user, Account account) throws SameUsernameException {
+		return services.registerBankAccount(user, account);
+	}
+
+	@Override
+	public User deposit(User user, String accountName, long balance) throws NoSuchBankExistsException {
+		return services.deposit(user, accountName, balance);
+	}
+
+	@Override
+	public User withdraw(User user, String accountName, long balance) throws NoSuchBankExistsException, InvalidWithdrawException {
+		return services.withdraw(user, accountName, balance);
+	}
+
+	@Override
+	public User deleteBankAccount(User user, String accountName) throws NoSuchBankExistsException, DeletingBankAccountWithMoneyException {
+		return services.deleteBankAccount(user, accountName);
+	}
+
+	@Override
+	public int getKey() {
+		return services.getKey();
+	}
+}
@@ -0,0 +1,161 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe Bloom filter of Strings. <br>
+ * mightContain() never answers False for a String that was put in, but may answer True for one that wasn't (a false positive).
+ * The filter is sized for an expected number of Strings and a false positive rate; once more Strings than expected are put in, the rate climbs. <br>
+ * Setting a bit is a single compare-and-set on a long, so putting and checking never block.
+ * @author baoph
+ *
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray words;
+	private final long numBits;
+	private final int numHashes;
+	private final long expectedInsertions;
+	private final double falsePositiveRate;
+	private final AtomicLong insertions = new AtomicLong();
+
+	/**
+	 * Creates an empty filter.
+	 * @param expectedInsertions : the number of Strings the filter is sized for
+	 * @param falsePositiveRate : the false positive rate once expectedInsertions Strings are in, within (0, 1)
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+		if(expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+			throw new IllegalArgumentException("Error, a Bloom filter needs at least 1 expected insertion and a false positive rate within (0, 1)");
+		this.expectedInsertions = expectedInsertions;
+		this.falsePositiveRate = falsePositiveRate;
+
+		// The optimal sizes: m = -n ln(p) / ln(2)^2 bits, and k = (m / n) ln(2) hash functions
+		long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		int wordCount = (int) Math.min(Integer.MAX_VALUE, (Math.max(bits, 64) + 63) / 64);
+		this.words = new AtomicLongArray(wordCount);
+		this.numBits = (long) wordCount * 64;
+		this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+	}
+
+	/**
+	 * Put a String into the filter.
+	 * @param value : the String to add
+	 * @return Boolean: True if the filter changed (so the String was definitely not in it before), False otherwise
+	 */
+	public boolean put(String value) {
+		long hash1 = hash(value), hash2 = mix(hash1) | 1;
+		boolean changed = false;
+		for(int i = 0; i < numHashes; i++) {
+			long bit = Math.floorMod(hash1 + i * hash2, numBits);
+			int index = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long word;
+			while(((word = words.get(index)) & mask) == 0) {
+				if(words.compareAndSet(index, word, word | mask)) {
+					changed = true;
+					break;
+				}
+			}
+		}
+		if(changed)
+			insertions.incrementAndGet();
+		return changed;
+	}
+
+	/**
+	 * Check whether a String might have been put into the filter.
+	 * @param value : the String to check
+	 * @return Boolean: False if the String was definitely never put in, True if it probably was
+	 */
+	public boolean mightContain(String value) {
+		long hash1 = hash(value), hash2 = mix(hash1) | 1;
+		for(int i = 0; i < numHashes; i++) {
+			long bit = Math.floorMod(hash1 + i * hash2, numBits);
+			if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The 64-bit FNV-1a hash of the String's characters, mixed once more so that similar Strings spread out.
+	 */
+	private static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * The finalizer of MurmurHash3: every input bit affects every output bit.
+	 */
+	private static long mix(long hash) {
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= (hash >>> 33);
+		return hash;
+	}
+
+	/**
+	 * Return the false positive rate to expect with the number of Strings put in so far.
+	 * @return double: the expected false positive rate
+	 */
+	public double getCurrentFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double) numHashes * insertions.get() / numBits), numHashes);
+	}
+
+	/**
+	 * Simply return whether more Strings were put in than the filter was sized for (i.e. the false positive rate is now above the target).
+	 * @return Boolean: True if the filter is over capacity, False otherwise
+	 */
+	public boolean isOverCapacity() {
+		return insertions.get() > expectedInsertions;
+	}
+
+	/**
+	 * Simply return the number of distinct Strings put in so far (give or take the false positives among them).
+	 * @return long: the number of insertions
+	 */
+	public long getInsertions() {
+		return insertions.get();
+	}
+
+	/**
+	 * Simply return the number of Strings the filter is sized for.
+	 * @return long: the expected number of insertions
+	 */
+	public long getExpectedInsertions() {
+		return expectedInsertions;
+	}
+
+	/**
+	 * Simply return the false positive rate the filter was sized for.
+	 * @return double: the target false positive rate
+	 */
+	public double getFalsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	/**
+	 * Simply return the size of the filter.
+	 * @return long: the number of bits
+	 */
+	public long getNumBits() {
+		return numBits;
+	}
+
+	/**
+	 * Simply return the number of bits set (and checked) per String.
+	 * @return int: the number of hash functions
+	 */
+	public int getNumHashes() {
+		return numHashes;
+	}
+}
@@ -0,0 +1,130 @@
+package util;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue backed by a ring of slots, for many producers and many consumers. <br>
+ * Every slot carries a sequence number that tells whose turn it is: a producer may only fill slot i once its sequence equals the producer's ticket,
+ * and a consumer may only empty it once the sequence equals the ticket + 1.  Claiming a ticket is a single compare-and-set, so nobody ever blocks. <br>
+ * offer() simply returns False when the ring is full; it is up to the caller to decide how to wait (back-pressure).
+ * @author baoph
+ *
+ * @param <E> : the type of the queued elements
+ */
+public class BoundedRingBuffer<E> {
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<E> elements;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Creates an empty ring buffer.
+	 * @param capacity : the maximum number of queued elements, rounded up to the next power of 2
+	 */
+	public BoundedRingBuffer(int capacity) {
+		if(capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Error, the capacity must be within [1, 2^30]");
+		this.capacity = (capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1);
+		this.mask = this.capacity - 1;
+		this.elements = new AtomicReferenceArray<E>(this.capacity);
+		this.sequences = new AtomicLongArray(this.capacity);
+		for(int i = 0; i < this.capacity; i++)
+			sequences.set(i, i);
+	}
+
+	/**
+	 * Add an element to the end of the queue, if there is room for it.
+	 * @param element : the element to add (must not be NULL)
+	 * @return Boolean: True if the element was queued, False if the ring is full
+	 */
+	public boolean offer(E element) {
+		if(element == null)
+			throw new NullPointerException();
+		while(true) {
+			long ticket = tail.get();
+			int slot = (int) (ticket & mask);
+			long difference = sequences.get(slot) - ticket;
+			if(difference == 0) {
+				// The slot is free; claim it and publish the element by moving the slot's sequence forward.
+				if(tail.compareAndSet(ticket, ticket + 1)) {
+					elements.set(slot, element);
+					sequences.set(slot, ticket + 1);
+					return true;
+				}
+			}
+			else if(difference < 0)
+				return false;
+			// Otherwise, another producer claimed the slot first; simply try the next ticket.
+		}
+	}
+
+	/**
+	 * Remove the element at the front of the queue.
+	 * @return E: the oldest element, or NULL if the queue is empty
+	 */
+	public E poll() {
+		while(true) {
+			long ticket = head.get();
+			int slot = (int) (ticket & mask);
+			long difference = sequences.get(slot) - (ticket + 1);
+			if(difference == 0) {
+				// The slot holds a published element; claim it and hand the slot back to the producers one lap later.
+				if(head.compareAndSet(ticket, ticket + 1)) {
+					E element = elements.get(slot);
+					elements.set(slot, null);
+					sequences.set(slot, ticket + capacity);
+					return element;
+				}
+			}
+			else if(difference < 0)
+				return null;
+		}
+	}
+
+	/**
+	 * Move up to maxElements elements from the front of the queue into the given list.
+	 * @param list : where the elements are added, oldest first
+	 * @param maxElements : the maximum number of elements to move
+	 * @return int: the number of elements that were moved
+	 */
+	public int drainTo(List<? super E> list, int maxElements) {
+		int drained = 0;
+		E element;
+		while(drained < maxElements && (element = poll()) != null) {
+			list.add(element);
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * Return the number of queued elements.  It is only a snapshot while other threads are still adding and removing.
+	 * @return int: the number of elements
+	 */
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, capacity));
+	}
+
+	/**
+	 * Simply return whether or not there is anything queued.
+	 * @return Boolean: True if the queue is empty, False otherwise
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Simply return the maximum number of queued elements.
+	 * @return int: the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,396 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections that sits behind DBConnection. <br>
+ * Connections are borrowed with getConnection() and handed back by simply calling close() on them. <br>
+ * The pool keeps between minSize and maxSize physical connections open, validates every connection before lending it out,
+ * and evicts connections that have been sitting idle for too long. <br>
+ * Every pooled connection also caches its prepared/callable statements by SQL text (see StatementCache).
+ * @author baoph
+ *
+ */
+public class ConnectionPool {
+
+	/**
+	 * Opens a brand new physical connection whenever the pool needs to grow.
+	 */
+	public interface ConnectionFactory {
+		Connection create() throws SQLException;
+	}
+
+	// Sizing and timing configuration
+	private final ConnectionFactory factory;
+	private final int minSize, maxSize;
+	private final long borrowTimeoutMillis, idleTimeoutMillis;
+	private final int validationTimeoutSeconds, statementCacheSize;
+
+	// Idle connections are kept in a deque so that the most recently returned one is lent out first (it is the most likely to still be valid).
+	// The semaphore bounds how many connections can be borrowed at the same time.
+	private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<PooledConnection>();
+	private final Semaphore permits;
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean closed = false;
+
+	// Statistics
+	private final AtomicInteger waitingThreads = new AtomicInteger();
+	private final AtomicLong borrowCount = new AtomicLong(), timeoutCount = new AtomicLong(), createdCount = new AtomicLong(),
+			evictedCount = new AtomicLong(), validationFailureCount = new AtomicLong();
+	private final AtomicLong statementHits = new AtomicLong(), statementMisses = new AtomicLong(), statementEvictions = new AtomicLong();
+
+	/**
+	 * Creates a new pool without a statement cache.  See the 7-parameter constructor for details.
+	 */
+	public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis, int validationTimeoutSeconds) throws SQLException {
+		this(factory, minSize, maxSize, borrowTimeoutMillis, idleTimeoutMillis, validationTimeoutSeconds, 0);
+	}
+
+	/**
+	 * Creates a new pool and immediately opens minSize connections. <br>
+	 * An idle eviction task runs in the background every half of idleTimeoutMillis.
+	 * @param factory : opens the physical connections
+	 * @param minSize : the number of connections to always keep open
+	 * @param maxSize : the maximum number of connections that may be open at the same time
+	 * @param borrowTimeoutMillis : how long getConnection() will wait for a free connection before giving up
+	 * @param idleTimeoutMillis : how long a connection above minSize may stay idle before it is closed
+	 * @param validationTimeoutSeconds : the timeout passed to Connection.isValid() when validating on borrow
+	 * @param statementCacheSize : how many statements each connection keeps parsed (0 turns the cache off)
+	 * @throws SQLException if the initial connections could not be opened
+	 */
+	public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis, int validationTimeoutSeconds, int statementCacheSize) throws SQLException {
+		if(minSize < 0 || maxSize < 1 || minSize > maxSize)
+			throw new IllegalArgumentException("Error, the pool size must satisfy 0 <= minSize <= maxSize and maxSize >= 1");
+
+		this.factory = factory;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		// Open the minimum number of connections right away, so that a bad configuration fails fast.
+		try {
+			fillToMinimum();
+		}
+		catch(SQLException e) {
+			closeIdleConnections();
+			throw e;
+		}
+
+		// Run the eviction task on a daemon thread, so it never keeps the application alive.
+		this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(idleTimeoutMillis / 2, 1000);
+		this.evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrow a connection from the pool. <br>
+	 * Calling close() on the returned connection gives it back to the pool instead of closing it.
+	 * @return Connection: a validated connection that belongs to the caller until it is closed
+	 * @throws SQLTimeoutException if no connection became available within the borrow timeout
+	 * @throws SQLException if the pool is closed or a new connection could not be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		if(closed)
+			throw new SQLException("Error, the connection pool has already been closed");
+
+		// First, wait for a permit.  There are only maxSize permits, so this is what bounds the pool.
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+		waitingThreads.incrementAndGet();
+		try {
+			if(!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.incrementAndGet();
+				throw new SQLTimeoutException("Error, timed out after " + borrowTimeoutMillis + "ms while waiting for a database connection");
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Error, interrupted while waiting for a database connection", e);
+		}
+		finally {
+			waitingThreads.decrementAndGet();
+		}
+
+		// Second, find a valid idle connection or open a new one.
+		// If anything goes wrong, make sure the permit is handed back.
+		try {
+			PooledConnection pooled = takeValidConnection(deadline);
+			borrowCount.incrementAndGet();
+			return pooled.lease();
+		}
+		catch(SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Return the first idle connection that passes validation, or open a new one if there is room.
+	 */
+	private PooledConnection takeValidConnection(long deadline) throws SQLException {
+		while(true) {
+			PooledConnection pooled = idleConnections.pollFirst();
+
+			// No idle connection, so try to grow the pool
+			if(pooled == null) {
+				if(reserveSlot())
+					return openConnection();
+
+				// Every slot is taken by a connection that is being created or evicted right now, so wait for one to come back.
+				long remaining = deadline - System.nanoTime();
+				try {
+					pooled = (remaining > 0 ? idleConnections.pollFirst(remaining, TimeUnit.NANOSECONDS) : null);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Error, interrupted while waiting for a database connection", e);
+				}
+				if(pooled == null) {
+					timeoutCount.incrementAndGet();
+					throw new SQLTimeoutException("Error, timed out after " + borrowTimeoutMillis + "ms while waiting for a database connection");
+				}
+			}
+
+			// Validate on borrow; a broken connection is thrown away and we try again.
+			if(pooled.isValid(validationTimeoutSeconds))
+				return pooled;
+			validationFailureCount.incrementAndGet();
+			destroy(pooled);
+		}
+	}
+
+	/**
+	 * Called by a leased connection when the borrower closes it.
+	 * @param pooled : the connection being handed back
+	 */
+	void release(PooledConnection pooled) {
+		try {
+			// A connection that cannot be reset, or that came back after the pool closed, is simply discarded.
+			if(closed || !pooled.reset())
+				destroy(pooled);
+			else
+				idleConnections.offerFirst(pooled);
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Close every idle connection that has been unused for longer than idleTimeoutMillis, as long as we stay at or above minSize. <br>
+	 * Afterwards, top the pool back up to minSize in case connections were lost.
+	 */
+	private void evictIdleConnections() {
+		long now = System.currentTimeMillis();
+		Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+		while(iterator.hasNext()) {
+			PooledConnection pooled = iterator.next();
+			if(totalConnections.get() <= minSize)
+				break;
+			if(now - pooled.getLastReturnedMillis() >= idleTimeoutMillis && idleConnections.remove(pooled)) {
+				evictedCount.incrementAndGet();
+				destroy(pooled);
+			}
+		}
+
+		try {
+			fillToMinimum();
+		}
+		catch(SQLException e) {
+			System.out.println("Error, the connection pool could not reopen its minimum connections: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Open idle connections until there are at least minSize of them in total.
+	 */
+	private void fillToMinimum() throws SQLException {
+		while(!closed && totalConnections.get() < minSize && reserveSlot())
+			idleConnections.offerLast(openConnection());
+	}
+
+	/**
+	 * Reserve room for one more physical connection, without ever going above maxSize.
+	 * @return Boolean: True if a slot was reserved, False if the pool is already full
+	 */
+	private boolean reserveSlot() {
+		while(true) {
+			int current = totalConnections.get();
+			if(current >= maxSize)
+				return false;
+			if(totalConnections.compareAndSet(current, current + 1))
+				return true;
+		}
+	}
+
+	/**
+	 * Open a new physical connection for a slot that has already been reserved.
+	 */
+	private PooledConnection openConnection() throws SQLException {
+		try {
+			PooledConnection pooled = new PooledConnection(this, factory.create(), statementCacheSize);
+			createdCount.incrementAndGet();
+			return pooled;
+		}
+		catch(SQLException | RuntimeException e) {
+			totalConnections.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Physically close a connection and give its slot back.
+	 */
+	private void destroy(PooledConnection pooled) {
+		totalConnections.decrementAndGet();
+		pooled.closePhysical();
+	}
+
+	private void closeIdleConnections() {
+		PooledConnection pooled;
+		while((pooled = idleConnections.pollFirst()) != null)
+			destroy(pooled);
+	}
+
+	/**
+	 * Close the pool.  Idle connections are closed right away, and borrowed connections are closed as soon as they are returned.
+	 */
+	public void close() {
+		closed = true;
+		if(evictor != null)
+			evictor.shutdownNow();
+		closeIdleConnections();
+	}
+
+	// Statistics
+	/**
+	 * Simply return the number of open physical connections (borrowed + idle).
+	 * @return Int: the total number of connections
+	 */
+	public int getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	/**
+	 * Simply return the number of connections sitting idle in the pool.
+	 * @return Int: the number of idle connections
+	 */
+	public int getIdleConnections() {
+		return idleConnections.size();
+	}
+
+	/**
+	 * Simply return the number of connections that are currently borrowed.
+	 * @return Int: the number of borrowed connections
+	 */
+	public int getActiveConnections() {
+		return maxSize - permits.availablePermits();
+	}
+
+	/**
+	 * Simply return the number of threads waiting for a connection right now.
+	 * @return Int: the number of waiting threads
+	 */
+	public int getWaitingThreads() {
+		return waitingThreads.get();
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	public long getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailureCount.get();
+	}
+
+	/**
+	 * Simply return how many times a cached statement was reused, summed over every connection.
+	 * @return long: the number of statement cache hits
+	 */
+	public long getStatementCacheHits() {
+		return statementHits.get();
+	}
+
+	/**
+	 * Simply return how many times a statement had to be parsed again, summed over every connection.
+	 * @return long: the number of statement cache misses
+	 */
+	public long getStatementCacheMisses() {
+		return statementMisses.get();
+	}
+
+	public long getStatementCacheEvictions() {
+		return statementEvictions.get();
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	// Called by the statement caches of the pooled connections
+	void recordStatementHit() {
+		statementHits.incrementAndGet();
+	}
+
+	void recordStatementMiss() {
+		statementMisses.incrementAndGet();
+	}
+
+	void recordStatementEviction() {
+		statementEvictions.incrementAndGet();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Return a String representation of the pool's statistics.
+	 * @return String: see description.
+	 */
+	@Override
+	public String toString() {
+		return "[Pool total: " + getTotalConnections() + ", active: " + getActiveConnections() + ", idle: " + getIdleConnections()
+			+ ", waiting: " + getWaitingThreads() + ", borrowed: " + getBorrowCount() + ", timeouts: " + getTimeoutCount()
+			+ ", created: " + getCreatedCount() + ", evicted: " + getEvictedCount() + ", invalid: " + getValidationFailureCount()
+			+ ", statement hits: " + getStatementCacheHits() + ", statement misses: " + getStatementCacheMisses() + "]";
+	}
+}
@@ -5,17 +5,34 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DBConnection {
 	
+	// Default sizing for the connection pool; each of these can be overridden in info.properties.
+	private static final int DEFAULT_POOL_MIN_SIZE = 2, DEFAULT_POOL_MAX_SIZE = 10, DEFAULT_VALIDATION_TIMEOUT_SECONDS = 2, DEFAULT_STATEMENT_CACHE_SIZE = 32;
+	private static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 5000, DEFAULT_IDLE_TIMEOUT_MILLIS = 300000;
 	
-	private static Connection database = connectToDatabase();
+	// The pool is only created the first time it is needed, so the in-memory backend never touches the database.
+	private static volatile ConnectionPool pool = null;
+	private static volatile boolean poolInitialized = false;
 	private static int key = -1;
 	
+	// The sequences whose ids are handed out in blocks by an IdAllocator (see V6__sequence_blocks.sql)
+	public static final String ACCOUNT_ID_SEQUENCE = "bank_account_id_generator", TRANSACTION_ID_SEQUENCE = "transaction_id_generator";
+	private static final ConcurrentHashMap<String, IdAllocator> idAllocators = new ConcurrentHashMap<String, IdAllocator>();
+	
+	// Work that still needs the pool when the application exits (for example, writing queued Transactions), run in order by shutdown().
+	private static final List<Runnable> shutdownTasks = new CopyOnWriteArrayList<Runnable>();
+	
 	/**
 	 * A specific method to return the key, but not before reading from key.properties.
 	 * @return Int: the key
@@ -26,64 +43,131 @@ public class DBConnection {
 	}
 	
 	/**
-	 * Determine if we are connected to the database, i.e the object associated with the Connection is NOT NULL.  
-	 * @return Boolean : True if the Connection object successfully references the database being connected, False otherwise
+	 * Determine if we are connected to the database, i.e the connection pool was successfully created.  
+	 * @return Boolean : True if the pool holds connections to the database, False otherwise
 	 */
 	public static boolean isConnected() {
-		return (database != null);	
+		ConnectionPool pool = getPool();
+		return (pool != null && !pool.isClosed());	
+	}
+	
+	/**
+	 * Create the connection pool using the credentials (and optional pool settings) provided in a hidden file. <br>
+	 * If the pool remains NULL after this call, then the entire application will exit prematurely.
+	 * @return ConnectionPool : a pool of connections that reference the connected database
+	 */
+	private static ConnectionPool createPool() {
+		try {
+			Properties p = loadDatabaseProperties();
+			ConnectionPool pool = new ConnectionPool(() -> openConnection(p),
+					Integer.parseInt(p.getProperty("pool.minSize", Integer.toString(DEFAULT_POOL_MIN_SIZE))),
+					Integer.parseInt(p.getProperty("pool.maxSize", Integer.toString(DEFAULT_POOL_MAX_SIZE))),
+					Long.parseLong(p.getProperty("pool.borrowTimeoutMillis", Long.toString(DEFAULT_BORROW_TIMEOUT_MILLIS))),
+					Long.parseLong(p.getProperty("pool.idleTimeoutMillis", Long.toString(DEFAULT_IDLE_TIMEOUT_MILLIS))),
+					Integer.parseInt(p.getProperty("pool.validationTimeoutSeconds", Integer.toString(DEFAULT_VALIDATION_TIMEOUT_SECONDS))),
+					Integer.parseInt(p.getProperty("pool.statementCacheSize", Integer.toString(DEFAULT_STATEMENT_CACHE_SIZE))));
+			
+			// Publish the pool's gauges over JMX (see Metrics).
+			Metrics.register(new Gauges("ConnectionPool")
+					.add("TotalConnections", pool::getTotalConnections)
+					.add("IdleConnections", pool::getIdleConnections)
+					.add("ActiveConnections", pool::getActiveConnections)
+					.add("WaitingThreads", pool::getWaitingThreads)
+					.add("BorrowCount", pool::getBorrowCount)
+					.add("TimeoutCount", pool::getTimeoutCount)
+					.add("CreatedCount", pool::getCreatedCount)
+					.add("EvictedCount", pool::getEvictedCount)
+					.add("ValidationFailureCount", pool::getValidationFailureCount)
+					.add("StatementCacheHits", pool::getStatementCacheHits)
+					.add("StatementCacheMisses", pool::getStatementCacheMisses)
+					.add("StatementCacheEvictions", pool::getStatementCacheEvictions));
+			return pool;
+		}
+		catch(Exception e) {
+			System.out.println("Error, something wrong happened when trying to connect to the database.  The banking application will now exit.");
+			return null;
+		}
 	}
 	
 	/**
 	 * Attempt to connect to the database using the credentials provided in a hidden file. <br>
-	 * If the Connection object remains NULL after this call, then the entire application will exit prematurely.
-	 * @return Connection : a Connection object that references the connected database
+	 * This opens a single connection outside of the pool; the application itself should use getConnection() instead.
+	 * @return Connection : a Connection object that references the connected database, or NULL if the connection failed
 	 */
 	public static Connection connectToDatabase() {
-		
-		// Require 3 pieces of info: url, username, password
-		String url = "jdbc:oracle:thin:@", username = "", password = "";
-		
-		// Normally, specifying the type of exception would be best.
-		// However, in this case, this would result in 3 different try/catch blocks nested within another try/catch block.
-		// Therefore, this will be simplified down to the base Exception object.
 		try {
-			
-			// First thing to do, force a check onto Oracle Drivers
-			// Oracle drivers had a problem when establishing a connection
-			// To fix this, they added a "hotfix" to ensure that ojdbc drivers would correctly load at the beginning of program.
-			Class.forName("oracle.jdbc.driver.OracleDriver");
-			
-			// Afterwards, read from a file using a composition of FileReader and BufferedReader
-			/*
-			FileReader fileReader = new FileReader(new File("src/main/resources/info.properties"));
-			BufferedReader bufferedReader = new BufferedReader(fileReader);
-			
-			// The information from info.properties is very simple: it just contains the url, username, and password all in their own separate lines.
-			url = url.concat(bufferedReader.readLine() + ":1521:ORCL");
-			username = bufferedReader.readLine();
-			password = bufferedReader.readLine();
-			
-			// Close the BufferedReader afterwards!  No need to close the FileReader because the BufferedReader also closes the FileReader.
-			bufferedReader.close();
-			*/
-			Properties p = new Properties();
-			FileInputStream input = new FileInputStream(DBConnection.class.getClassLoader().getResource("info.properties").getFile());
-			p.load(input);
-			url = url.concat(p.getProperty("url") + ":1521:ORCL");
-			username = p.getProperty("username");
-			password = p.getProperty("password");
-			input.close();
-			
-			// Finally, attempt to connect to the database!
-			database = DriverManager.getConnection(url, username, password);
+			return openConnection(loadDatabaseProperties());
 		}
 		catch(Exception e) {
 			System.out.println("Error, something wrong happened when trying to connect to the database.  The banking application will now exit.");
 			return null;
 		}
+	}
+	
+	/**
+	 * Open a brand new physical connection with the url, username, and password from info.properties.
+	 * @param p : the loaded info.properties
+	 * @return Connection : the new connection
+	 * @throws SQLException if the connection could not be opened
+	 */
+	private static Connection openConnection(Properties p) throws SQLException {
+		String url = "jdbc:oracle:thin:@".concat(p.getProperty("url") + ":1521:ORCL");
+		return DriverManager.getConnection(url, p.getProperty("username"), p.getProperty("password"));
+	}
+	
+	/**
+	 * Read info.properties, which contains the url, username, and password of the database.
+	 * @return Properties : the loaded properties
+	 * @throws Exception if the drivers or the file could not be loaded
+	 */
+	private static Properties loadDatabaseProperties() throws Exception {
+		
+		// Normally, specifying the type of exception would be best.
+		// However, in this case, this would result in 3 different throws clauses that the callers handle identically.
+		// Therefore, this will be simplified down to the base Exception object.
+		
+		// First thing to do, force a check onto Oracle Drivers
+		// Oracle drivers had a problem when establishing a connection
+		// To fix this, they added a "hotfix" to ensure that ojdbc drivers would correctly load at the beginning of program.
+		Class.forName("oracle.jdbc.driver.OracleDriver");
+		
+		// Afterwards, read from a file using a composition of FileReader and BufferedReader
+		/*
+		FileReader fileReader = new FileReader(new File("src/main/resources/info.properties"));
+		BufferedReader bufferedReader = new BufferedReader(fileReader);
+		
+		// The information from info.properties is very simple: it just contains the url, username, and password all in their own separate lines.
+		url = url.concat(bufferedReader.readLine() + ":1521:ORCL");
+		username = bufferedReader.readLine();
+		password = bufferedReader.readLine();
+		
+		// Close the BufferedReader afterwards!  No need to close the FileReader because the BufferedReader also closes the FileReader.
+		bufferedReader.close();
+		*/
+		Properties p = new Properties();
+		FileInputStream input = new FileInputStream(DBConnection.class.getClassLoader().getResource("info.properties").getFile());
+		p.load(input);
+		input.close();
 		
-		// Assuming the try block executed successfully, return the Connection object!  
-		return database;
+		// Assuming everything was read successfully, return the properties!
+		return p;
+	}
+	
+	/**
+	 * Write the cipher key into key.properties, so the next run encodes passwords with it.
+	 * @param newKey : the key to save
+	 * @return Boolean: True if the key was written, False otherwise
+	 */
+	public static boolean saveKeyToFile(int newKey) {
+		try(FileWriter writeNewKey = new FileWriter("src/main/resources/key.properties")) {
+			writeNewKey.write("key=" + Integer.toString(newKey));
+			key = newKey;
+			return true;
+		}
+		catch(IOException e) {
+			System.out.println("Error, failed to write onto key.properties");
+			return false;
+		}
 	}
 	
 	/**
@@ -93,6 +177,8 @@ public class DBConnection {
 		// Additionally, open a 2nd properties file to retrieve the key used for ciphering.
 		try {
 			Properties p = new Properties();
+			if(DBConnection.class.getClassLoader().getResource("key.properties") == null)
+				return -1;
 			FileInputStream input = new FileInputStream(DBConnection.class.getClassLoader().getResource("key.properties").getFile());
 			p.load(input);
 			if(p.getProperty("key") != null)
@@ -115,10 +201,79 @@ public class DBConnection {
 	}
 	
 	/**
-	 * A getter to retrieve the Connection, assuming that it was successful.
-	 * @return Connection: the connection made to the database.
+	 * Borrow a Connection from the pool. <br>
+	 * The caller MUST close the Connection when it is done (preferably with try-with-resources); closing it returns it to the pool.
+	 * @return Connection: a connection made to the database.
+	 * @throws SQLException if the pool is unavailable or no connection freed up within the borrow timeout.
+	 */
+	public static Connection getConnection() throws SQLException {
+		ConnectionPool pool = getPool();
+		if(pool == null)
+			throw new SQLException("Error, there is no connection to the database");
+		return pool.getConnection();
+	}
+	
+	/**
+	 * A getter to retrieve the pool itself, mainly to query its statistics. <br>
+	 * The pool is created on the first call.
+	 * @return ConnectionPool: the pool, or NULL if the database could not be reached.
+	 */
+	public static ConnectionPool getPool() {
+		if(!poolInitialized) {
+			synchronized(DBConnection.class) {
+				if(!poolInitialized) {
+					pool = createPool();
+					poolInitialized = true;
+				}
+			}
+		}
+		return pool;
+	}
+	
+	/**
+	 * Take the next id of a sequence, without calling the sequence for every single id (see IdAllocator). <br>
+	 * This may borrow a connection to reserve a new block, so call it BEFORE borrowing the connection for the insert itself.
+	 * @param sequenceName : the name of the sequence, for example TRANSACTION_ID_SEQUENCE
+	 * @return long: the new id
+	 * @throws SQLException if a new block had to be reserved and the database call failed
+	 */
+	public static long nextId(String sequenceName) throws SQLException {
+		return getIdAllocator(sequenceName).nextId();
+	}
+	
+	/**
+	 * A getter to retrieve the IdAllocator of a sequence, which is created on the first call.
+	 * @param sequenceName : the name of the sequence
+	 * @return IdAllocator: the allocator shared by the whole application
+	 * @throws SQLException if the sequence doesn't exist or can't be read
+	 */
+	public static IdAllocator getIdAllocator(String sequenceName) throws SQLException {
+		IdAllocator allocator = idAllocators.get(sequenceName);
+		if(allocator == null) {
+			IdAllocator created = IdAllocator.forSequence(sequenceName);
+			allocator = idAllocators.putIfAbsent(sequenceName, created);
+			if(allocator == null)
+				allocator = created;
+		}
+		return allocator;
+	}
+	
+	/**
+	 * Register some work that has to run right before the pool closes.
+	 * @param task : the work to run; it may still borrow connections
+	 */
+	public static void beforeShutdown(Runnable task) {
+		shutdownTasks.add(task);
+	}
+	
+	/**
+	 * Run every task registered with beforeShutdown(), and then close every connection in the pool (if it was ever created). <br>
+	 * Only call this right before the application exits.
 	 */
-	public static Connection getConnection() {
-		return database;
+	public static void shutdown() {
+		for(Runnable task : shutdownTasks)
+			task.run();
+		if(pool != null)
+			pool.close();
 	}
 }
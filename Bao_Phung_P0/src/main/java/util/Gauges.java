@@ -0,0 +1,108 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * A read-only group of gauges (for example, the connection pool's idle and active connections), published over JMX by Metrics. <br>
+ * Every gauge is read when JMX asks for it, so it is always current and costs nothing in between.
+ * @author baoph
+ *
+ */
+public class Gauges implements DynamicMBean {
+
+	private final String name;
+	private final Map<String, Supplier<? extends Number>> gauges = new LinkedHashMap<String, Supplier<? extends Number>>();
+
+	/**
+	 * Creates an empty group of gauges.
+	 * @param name : the name of the group (for example, ConnectionPool)
+	 */
+	public Gauges(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Add a gauge to the group.
+	 * @param gauge : the name of the gauge
+	 * @param value : how to read it
+	 * @return Gauges: the group itself, to add more
+	 */
+	public Gauges add(String gauge, Supplier<? extends Number> value) {
+		gauges.put(gauge, value);
+		return this;
+	}
+
+	/**
+	 * Simply return the name of the group.
+	 * @return String: the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Read a single gauge.
+	 * @param gauge : the name of the gauge
+	 * @return Number: its current value, or NULL if there is no such gauge
+	 */
+	public Number read(String gauge) {
+		Supplier<? extends Number> value = gauges.get(gauge);
+		return (value == null ? null : value.get());
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		if(!gauges.containsKey(attribute))
+			throw new AttributeNotFoundException(attribute);
+		return read(attribute);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for(String attribute : attributes)
+			if(gauges.containsKey(attribute))
+				list.add(new Attribute(attribute, read(attribute)));
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Error, gauges are read-only");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) {
+		throw new UnsupportedOperationException("Error, gauges have no operations");
+	}
+
+	/**
+	 * Every gauge is a read-only attribute, typed by what it currently reads.
+	 */
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[gauges.size()];
+		int i = 0;
+		for(String gauge : gauges.keySet()) {
+			Number value = read(gauge);
+			String type = (value == null ? Number.class : value.getClass()).getName();
+			attributes[i++] = new MBeanAttributeInfo(gauge, type, gauge, true, false, false);
+		}
+		return new MBeanInfo(Gauges.class.getName(), name, attributes, null, new MBeanOperationInfo[0], null);
+	}
+}
@@ -0,0 +1,131 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids from a database sequence without calling the sequence for every single row (the hi/lo scheme). <br>
+ * The sequence is created with INCREMENT BY N, so every nextval reserves the whole block [nextval, nextval + N) for whoever called it. <br>
+ * Ids inside the current block are claimed with a single atomic increment, so taking an id never blocks;
+ * only the thread that runs the block dry goes back to the database for the next one. <br>
+ * This allocator is the only consumer of the account and transaction id sequences, so every account and transaction id must be taken through it
+ * (see DBConnection.nextId()); an id made up any other way could land inside a block that is already being handed out here.
+ * @author baoph
+ *
+ */
+public class IdAllocator {
+
+	/**
+	 * Reserves a brand new block of ids, and returns the first id of it.
+	 */
+	public interface BlockSource {
+		long nextBlock() throws SQLException;
+	}
+
+	/**
+	 * A reserved range of ids [next, end).  Once next passes end, the block is used up and gets replaced as a whole.
+	 */
+	private static class Block {
+		final AtomicLong next;
+		final long end;
+
+		Block(long start, int size) {
+			this.next = new AtomicLong(start);
+			this.end = start + size;
+		}
+	}
+
+	private final BlockSource source;
+	private final int blockSize;
+	private volatile Block current;
+	private final AtomicLong blocksReserved = new AtomicLong();
+
+	/**
+	 * Creates an allocator on top of any source of blocks.  No block is reserved until the first id is needed.
+	 * @param source : where new blocks come from
+	 * @param blockSize : the number of ids in every block (must match the sequence's INCREMENT BY)
+	 */
+	public IdAllocator(BlockSource source, int blockSize) {
+		if(blockSize < 1)
+			throw new IllegalArgumentException("Error, the block size must be at least 1");
+		this.source = source;
+		this.blockSize = blockSize;
+		this.current = new Block(0, 0);
+	}
+
+	/**
+	 * Creates an allocator for a database sequence. <br>
+	 * The block size is read from the sequence itself, so it always matches its INCREMENT BY.
+	 * @param sequenceName : the name of the sequence, for example "transaction_id_generator"
+	 * @return IdAllocator: the new allocator
+	 * @throws SQLException if the sequence doesn't exist or can't be read
+	 */
+	public static IdAllocator forSequence(String sequenceName) throws SQLException {
+		int blockSize;
+		try(Connection connection = DBConnection.getConnection()) {
+			PreparedStatement ps = connection.prepareStatement("SELECT increment_by FROM user_sequences WHERE sequence_name = ?");
+			ps.setString(1, sequenceName.toUpperCase());
+			ResultSet rs = ps.executeQuery();
+			if(!rs.next())
+				throw new SQLException("Error, the sequence " + sequenceName + " doesn't exist");
+			blockSize = rs.getInt(1);
+			rs.close();
+			ps.close();
+		}
+
+		// The name can't be bound as a parameter, but it only ever comes from our own code.
+		String SQLStatement = "SELECT " + sequenceName + ".nextval FROM dual";
+		return new IdAllocator(() -> {
+			try(Connection connection = DBConnection.getConnection()) {
+				PreparedStatement ps = connection.prepareStatement(SQLStatement);
+				ResultSet rs = ps.executeQuery();
+				rs.next();
+				long start = rs.getLong(1);
+				rs.close();
+				ps.close();
+				return start;
+			}
+		}, blockSize);
+	}
+
+	/**
+	 * Take the next id.
+	 * @return long: an id that nobody else was or will be given
+	 * @throws SQLException if a new block had to be reserved and the database call failed
+	 */
+	public long nextId() throws SQLException {
+		while(true) {
+			Block block = current;
+			long id = block.next.getAndIncrement();
+			if(id < block.end)
+				return id;
+
+			// The block ran dry.  Only one thread reserves the next one; the rest simply retry with whatever it installed.
+			synchronized(this) {
+				if(current == block) {
+					current = new Block(source.nextBlock(), blockSize);
+					blocksReserved.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Simply return the number of ids in every block.
+	 * @return int: the block size
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Simply return the number of blocks reserved so far (i.e. the number of sequence calls made).
+	 * @return long: the number of blocks
+	 */
+	public long getBlocksReserved() {
+		return blocksReserved.get();
+	}
+}
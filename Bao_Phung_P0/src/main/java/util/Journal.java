@@ -0,0 +1,303 @@
+package util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A local, append-only write-ahead journal, kept in a single memory-mapped file. <br>
+ * Every record is framed as [length][CRC32][sequence][payload], so a record that was only partly written when the process died is simply ignored. <br>
+ * append() returns once the record is forced to disk.  Threads that append while a force is running wait for the next one,
+ * which covers all of them at once (group fsync), so a busy journal needs far fewer forces than records. <br>
+ * Whoever applies the records elsewhere calls checkpoint() afterwards; the records after the checkpoint are handed back by getUnapplied() when the journal is reopened.
+ * Once every record is applied and the file is full, writing simply starts over at the beginning of the file.
+ * @author baoph
+ *
+ */
+public class Journal implements AutoCloseable{
+
+	// The header holds the magic number, the format version, and the checkpoint (the sequence of the last applied record).
+	private static final int MAGIC = 0x42414E4B, FORMAT_VERSION = 1;
+	private static final int CHECKPOINT_OFFSET = 8, HEADER_SIZE = 64;
+
+	// Every record starts with its length (int), its CRC32 (int), and its sequence (long)
+	private static final int FRAME_HEADER_SIZE = 16;
+
+	// How long append() waits for the checkpoint to free up room in a full journal before giving up
+	private static final long FULL_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * A single record read back from the journal.
+	 */
+	public static class Record {
+		private final long sequence;
+		private final byte[] payload;
+
+		Record(long sequence, byte[] payload) {
+			this.sequence = sequence;
+			this.payload = payload;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public byte[] getPayload() {
+			return payload;
+		}
+	}
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final List<Record> unapplied;
+
+	// Guarded by this: where the next record goes, and the sequence of the last record written (also read without the lock)
+	private int position;
+	private volatile long lastSequence;
+	private volatile long checkpoint;
+
+	// Guarded by syncLock: the last sequence known to be on disk, and whether a force is currently running
+	private final Object syncLock = new Object();
+	private long durableSequence;
+	private boolean syncing = false;
+	private long syncCount = 0;
+
+	/**
+	 * Open (or create) a journal file, and read back every record that was not applied yet.
+	 * @param path : the journal file
+	 * @param capacity : the size of the file in bytes, which bounds how many unapplied records it can hold
+	 * @throws IOException if the file can't be opened, or it is not a journal
+	 */
+	public Journal(Path path, int capacity) throws IOException {
+		if(capacity < HEADER_SIZE + FRAME_HEADER_SIZE)
+			throw new IllegalArgumentException("Error, the journal capacity is too small");
+		this.capacity = capacity;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+		// First, check the header (or write one for a brand new file)
+		int magic = buffer.getInt(0);
+		if(magic == 0) {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, FORMAT_VERSION);
+			buffer.putLong(CHECKPOINT_OFFSET, 0);
+			buffer.force();
+		}
+		else if(magic != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+			channel.close();
+			throw new IOException("Error, " + path + " is not a journal");
+		}
+		checkpoint = buffer.getLong(CHECKPOINT_OFFSET);
+
+		// Second, read every intact record.  The records are numbered consecutively, so anything that breaks the chain
+		// (a torn write, or an old record left over from before the file started over) marks the end of the journal.
+		List<Record> records = new ArrayList<Record>();
+		int scan = HEADER_SIZE;
+		long last = -1;
+		while(true) {
+			Record record = read(scan, last == -1 ? -1 : last + 1);
+			if(record == null)
+				break;
+			if(record.getSequence() > checkpoint)
+				records.add(record);
+			last = record.getSequence();
+			scan += FRAME_HEADER_SIZE + record.getPayload().length;
+		}
+		this.unapplied = Collections.unmodifiableList(records);
+
+		// If everything was applied already, simply start over at the beginning of the file.
+		this.position = (records.isEmpty() ? HEADER_SIZE : scan);
+		this.lastSequence = Math.max(last, checkpoint);
+		this.durableSequence = lastSequence;
+	}
+
+	/**
+	 * Read the record at the given offset, if it is intact.
+	 * @param offset : where the record starts
+	 * @param expectedSequence : the sequence the record must have, or -1 for any
+	 * @return Record: the record, or NULL if there is no intact record there
+	 */
+	private Record read(int offset, long expectedSequence) {
+		if(offset + FRAME_HEADER_SIZE > capacity)
+			return null;
+		int length = buffer.getInt(offset);
+		if(length < 0 || length > capacity - offset - FRAME_HEADER_SIZE)
+			return null;
+		int crc = buffer.getInt(offset + 4);
+		long sequence = buffer.getLong(offset + 8);
+		if(sequence <= 0 || (expectedSequence != -1 && sequence != expectedSequence))
+			return null;
+
+		byte[] payload = new byte[length];
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset + FRAME_HEADER_SIZE);
+		view.get(payload);
+		return (checksum(sequence, payload) == crc ? new Record(sequence, payload) : null);
+	}
+
+	/**
+	 * The CRC32 of a record covers both its sequence and its payload.
+	 */
+	private static int checksum(long sequence, byte[] payload) {
+		CRC32 crc = new CRC32();
+		for(int shift = 56; shift >= 0; shift -= 8)
+			crc.update((int) (sequence >>> shift));
+		crc.update(payload, 0, payload.length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Append a record, and wait until it is on disk.
+	 * @param payload : the bytes to record
+	 * @return long: the record's sequence
+	 * @throws IOException if the journal stayed full (nothing was applied in time), or forcing it to disk failed
+	 */
+	public long append(byte[] payload) throws IOException {
+		int frameSize = FRAME_HEADER_SIZE + payload.length;
+		if(HEADER_SIZE + frameSize > capacity)
+			throw new IOException("Error, the record is larger than the journal");
+
+		long sequence;
+		synchronized(this) {
+			// Make room: once every record is applied, the file starts over; otherwise, wait for the checkpoint to catch up.
+			long deadline = System.currentTimeMillis() + FULL_TIMEOUT_MILLIS;
+			while(position + frameSize > capacity) {
+				if(checkpoint >= lastSequence) {
+					position = HEADER_SIZE;
+					break;
+				}
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+					throw new IOException("Error, the journal is full");
+				try {
+					wait(remaining);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Error, interrupted while waiting for room in the journal");
+				}
+			}
+
+			sequence = lastSequence + 1;
+			ByteBuffer view = buffer.duplicate();
+			view.position(position);
+			view.putInt(payload.length);
+			view.putInt(checksum(sequence, payload));
+			view.putLong(sequence);
+			view.put(payload);
+			position += frameSize;
+			lastSequence = sequence;
+		}
+
+		awaitDurable(sequence);
+		return sequence;
+	}
+
+	/**
+	 * Wait until the given record is on disk.  Only one thread forces the file at a time; everyone who shows up in the meantime
+	 * is covered by the next force, whoever ends up running it.
+	 */
+	private void awaitDurable(long sequence) throws IOException {
+		while(true) {
+			long target;
+			synchronized(syncLock) {
+				while(syncing && durableSequence < sequence) {
+					try {
+						syncLock.wait();
+					}
+					catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Error, interrupted while waiting for the journal to be written");
+					}
+				}
+				if(durableSequence >= sequence)
+					return;
+				syncing = true;
+				target = lastSequence;
+			}
+
+			boolean forced = false;
+			try {
+				buffer.force();
+				forced = true;
+			}
+			finally {
+				synchronized(syncLock) {
+					syncing = false;
+					if(forced) {
+						durableSequence = Math.max(durableSequence, target);
+						syncCount++;
+					}
+					syncLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record that every record up to (and including) the given sequence was applied. <br>
+	 * The checkpoint reaches the disk with the next force, so after a crash a few applied records may be handed back again.
+	 * @param sequence : the sequence of the last applied record
+	 */
+	public synchronized void checkpoint(long sequence) {
+		if(sequence <= checkpoint)
+			return;
+		checkpoint = sequence;
+		buffer.putLong(CHECKPOINT_OFFSET, sequence);
+		notifyAll();
+	}
+
+	/**
+	 * Simply return the records that were not applied yet when the journal was opened, oldest first.
+	 * @return List<Record>: the unapplied records
+	 */
+	public List<Record> getUnapplied() {
+		return unapplied;
+	}
+
+	/**
+	 * Simply return the sequence of the last record written.
+	 * @return long: the last sequence
+	 */
+	public long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Simply return the sequence of the last applied record.
+	 * @return long: the checkpoint
+	 */
+	public long getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * Simply return the number of times the file was forced to disk by append().
+	 * @return long: the number of forces
+	 */
+	public long getSyncCount() {
+		synchronized(syncLock) {
+			return syncCount;
+		}
+	}
+
+	/**
+	 * Force everything (including the checkpoint) to disk, and close the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(this) {
+			buffer.force();
+		}
+		channel.close();
+	}
+}
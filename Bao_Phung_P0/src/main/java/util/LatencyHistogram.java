@@ -0,0 +1,148 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram of latencies (or any positive long), laid out the way an HdrHistogram is. <br>
+ * Values are kept to a fixed number of significant digits: every power of 2 gets the same number of buckets, so a value of 1,000 and one of 1,000,000
+ * are both recorded to within the same relative error, and the whole range fits in a few thousand counters. <br>
+ * Recording is a single atomic increment (plus a few for the totals), so any number of threads can record into the same histogram without blocking.
+ * @author baoph
+ *
+ */
+public class LatencyHistogram {
+
+	private final long highestTrackableValue;
+	private final int subBucketBits, subBucketCount, subBucketHalfCount;
+	private final AtomicLongArray counts;
+	private final AtomicLong totalCount = new AtomicLong(), totalValue = new AtomicLong(), maxValue = new AtomicLong();
+
+	/**
+	 * Creates an empty histogram.
+	 * @param highestTrackableValue : the highest value to tell apart; anything higher is recorded as this value
+	 * @param significantDigits : the number of significant decimal digits every value is kept to, within [1, 5]
+	 */
+	public LatencyHistogram(long highestTrackableValue, int significantDigits) {
+		if(highestTrackableValue < 2 || significantDigits < 1 || significantDigits > 5)
+			throw new IllegalArgumentException("Error, a histogram needs a highest value of at least 2 and 1 to 5 significant digits");
+		this.highestTrackableValue = highestTrackableValue;
+
+		// Enough sub-buckets per power of 2 to tell apart every value within 10^digits of each other (twice that, for the lower half)
+		this.subBucketBits = 64 - Long.numberOfLeadingZeros(2 * (long) Math.pow(10, significantDigits) - 1);
+		this.subBucketCount = 1 << subBucketBits;
+		this.subBucketHalfCount = subBucketCount / 2;
+		this.counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+	}
+
+	/**
+	 * Return the counter of a value: values below subBucketCount get one each, and above that, each power of 2 is split into subBucketHalfCount counters.
+	 */
+	private int indexOf(long value) {
+		if(value < subBucketCount)
+			return (int) value;
+		int shift = 64 - Long.numberOfLeadingZeros(value) - subBucketBits;
+		return subBucketCount + (shift - 1) * subBucketHalfCount + (int) ((value >>> shift) - subBucketHalfCount);
+	}
+
+	/**
+	 * Return the highest value that is recorded in the same counter as the given index.
+	 */
+	private long highestValueAt(int index) {
+		if(index < subBucketCount)
+			return index;
+		int shift = (index - subBucketCount) / subBucketHalfCount + 1;
+		long subBucket = (index - subBucketCount) % subBucketHalfCount + subBucketHalfCount;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Record a single value.
+	 * @param value : the value; negative values are recorded as 0, and values above the highest trackable one as that value
+	 */
+	public void record(long value) {
+		value = Math.max(0, Math.min(value, highestTrackableValue));
+		counts.incrementAndGet(indexOf(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		maxValue.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * Add every value recorded in another histogram to this one.
+	 * @param other : a histogram with the same highest trackable value and significant digits
+	 */
+	public void add(LatencyHistogram other) {
+		if(other.highestTrackableValue != highestTrackableValue || other.subBucketBits != subBucketBits)
+			throw new IllegalArgumentException("Error, only histograms with the same range and significant digits can be added");
+		for(int i = 0; i < counts.length(); i++)
+			counts.addAndGet(i, other.counts.get(i));
+		totalCount.addAndGet(other.totalCount.get());
+		totalValue.addAndGet(other.totalValue.get());
+		maxValue.accumulateAndGet(other.maxValue.get(), Math::max);
+	}
+
+	/**
+	 * Return the value that the given percentage of the recorded values are at or below. <br>
+	 * Just like an HdrHistogram, this is the highest value of the counter it falls in (but never more than the highest recorded value).
+	 * @param percentile : the percentage, within [0, 100]
+	 * @return long: the value at the percentile, or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = totalCount.get();
+		if(total == 0)
+			return 0;
+		long target = Math.max(1, (long) (Math.min(100, Math.max(0, percentile)) / 100 * total + 0.5));
+		long seen = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if(seen >= target)
+				return Math.min(highestValueAt(i), maxValue.get());
+		}
+		return maxValue.get();
+	}
+
+	/**
+	 * Simply return the number of values recorded.
+	 * @return long: the count
+	 */
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * Simply return the highest value recorded.
+	 * @return long: the maximum, or 0 if nothing was recorded
+	 */
+	public long getMaxValue() {
+		return maxValue.get();
+	}
+
+	/**
+	 * Simply return the average of the values recorded.
+	 * @return double: the mean, or 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long total = totalCount.get();
+		return (total == 0 ? 0 : (double) totalValue.get() / total);
+	}
+
+	/**
+	 * Simply return the highest value to tell apart.
+	 * @return long: the highest trackable value
+	 */
+	public long getHighestTrackableValue() {
+		return highestTrackableValue;
+	}
+
+	/**
+	 * Forget every recorded value.
+	 */
+	public void reset() {
+		for(int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	}
+}
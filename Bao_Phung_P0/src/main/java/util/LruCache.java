@@ -0,0 +1,218 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread safe cache that evicts the least recently used entries, and expires every entry a fixed time after it was added. <br>
+ * The entries are spread over several segments (each one an access ordered LinkedHashMap with its own lock), so threads working on
+ * different keys rarely wait on each other.  Each segment holds an equal share of the maximum size. <br>
+ * Every invalidation moves the cache to a new generation.  Values loaded before an invalidation can be put with the generation they were loaded in,
+ * and are then simply dropped, so a slow load never puts back something that was already invalidated.
+ * @author baoph
+ *
+ * @param <K> : the type of the keys
+ * @param <V> : the type of the cached values
+ */
+public class LruCache<K, V> {
+
+	private static final int MAX_SEGMENTS = 16;
+
+	/**
+	 * A cached value, along with when it expires.
+	 */
+	private static class Entry<V> {
+		final V value;
+		final long expiresAt;
+
+		Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * A single segment: an access ordered map that drops its least recently used entry once it grows past its capacity.
+	 */
+	private static class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+		private final AtomicLong evictions;
+
+		Segment(int capacity, AtomicLong evictions) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+			if(size() <= capacity)
+				return false;
+			evictions.incrementAndGet();
+			return true;
+		}
+	}
+
+	private final Segment<K, V>[] segments;
+	private final long ttlNanos;
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong(), expirations = new AtomicLong();
+
+	/**
+	 * Creates an empty cache.
+	 * @param maxSize : the maximum number of entries
+	 * @param ttlMillis : how long an entry stays valid after it was added
+	 */
+	@SuppressWarnings("unchecked")
+	public LruCache(int maxSize, long ttlMillis) {
+		if(maxSize < 1 || ttlMillis < 1)
+			throw new IllegalArgumentException("Error, the size and time to live of a cache must be at least 1");
+
+		// Use as many segments as possible (up to MAX_SEGMENTS, and a power of 2), as long as each one can hold at least 1 entry.
+		int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize));
+		segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+		for(int i = 0; i < count; i++)
+			segments[i] = new Segment<K, V>(maxSize / count + (i < maxSize % count ? 1 : 0), evictions);
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (segments.length - 1)];
+	}
+
+	/**
+	 * Return the value cached for the key, if there is one and it hasn't expired yet.
+	 * @param key : the key to look for
+	 * @return V: the cached value, or NULL if there is none
+	 */
+	public V get(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized(segment) {
+			Entry<V> entry = segment.get(key);
+			if(entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+				segment.remove(key);
+				expirations.incrementAndGet();
+				entry = null;
+			}
+			if(entry == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			return entry.value;
+		}
+	}
+
+	/**
+	 * Add (or replace) the value cached for the key.
+	 * @param key : the key
+	 * @param value : the value to cache
+	 */
+	public void put(K key, V value) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized(segment) {
+			segment.put(key, new Entry<V>(value, System.nanoTime() + ttlNanos));
+		}
+	}
+
+	/**
+	 * Add (or replace) the value cached for the key, but only if nothing was invalidated since the value was loaded.
+	 * @param key : the key
+	 * @param value : the value to cache
+	 * @param loadedGeneration : what getGeneration() returned right before the value was loaded
+	 * @return Boolean: True if the value was cached, False if it was dropped
+	 */
+	public boolean put(K key, V value, long loadedGeneration) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized(segment) {
+			// Invalidations move the generation forward while holding the segment's lock, so checking it here is enough.
+			if(generation.get() != loadedGeneration)
+				return false;
+			segment.put(key, new Entry<V>(value, System.nanoTime() + ttlNanos));
+			return true;
+		}
+	}
+
+	/**
+	 * Remove whatever is cached for the key.
+	 * @param key : the key
+	 */
+	public void invalidate(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized(segment) {
+			generation.incrementAndGet();
+			segment.remove(key);
+		}
+	}
+
+	/**
+	 * Remove every cached entry.
+	 */
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		for(Segment<K, V> segment : segments) {
+			synchronized(segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Simply return the current generation, which changes with every invalidation.
+	 * @return long: the generation
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Return the number of cached entries (including the ones that expired but were not looked up since).
+	 * @return int: the number of entries
+	 */
+	public int size() {
+		int size = 0;
+		for(Segment<K, V> segment : segments) {
+			synchronized(segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Simply return the number of lookups that found a value.
+	 * @return long: the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Simply return the number of lookups that found nothing (or only an expired value).
+	 * @return long: the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Simply return the number of entries that were dropped to make room for newer ones.
+	 * @return long: the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Simply return the number of entries that were dropped because they expired.
+	 * @return long: the number of expirations
+	 */
+	public long getExpirations() {
+		return expirations.get();
+	}
+}
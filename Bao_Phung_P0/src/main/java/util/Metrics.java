@@ -0,0 +1,172 @@
+package util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records the call count, error count, and latency of every operation of the services and the DAOs, and publishes them (along with
+ * the gauges of the pool, the caches, and so on) as MBeans under the "bank" domain, so they can be watched with jconsole or any other JMX client. <br>
+ * An interface is instrumented by wrapping its implementation in a proxy that times every call (see instrument()), so the services layer,
+ * each DAO, and the steps within a DAO (such as running a query versus building the User from its rows) can be told apart. <br>
+ * A call fails if it throws, or if whatever it calls reports an error with recordError() (the DAOs do this for every SQLException they catch),
+ * so a failed query counts against the DAO method and the service method that led to it. <br>
+ * Everything is on by default; -Dbank.metrics=false turns it off, and instrument() then simply returns the implementation itself.
+ * @author baoph
+ *
+ */
+public class Metrics {
+
+	public static final String DOMAIN = "bank";
+	private static final boolean enabled = !"false".equalsIgnoreCase(System.getProperty("bank.metrics"));
+	private static final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+
+	// Whether the innermost call being timed on this thread has failed so far
+	private static final ThreadLocal<boolean[]> failed = ThreadLocal.withInitial(() -> new boolean[1]);
+
+	/**
+	 * Simply return whether metrics are being recorded at all.
+	 * @return Boolean: True unless -Dbank.metrics=false
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Return the metrics of an operation, creating (and publishing) them the first time.
+	 * @param layer : the layer the operation belongs to (for example, UserDAO)
+	 * @param name : the name of the operation (for example, getUserByUsername)
+	 * @return OperationMetrics: the metrics of the operation
+	 */
+	public static OperationMetrics operation(String layer, String name) {
+		String key = layer + "." + name;
+		OperationMetrics metrics = operations.get(key);
+		if(metrics != null)
+			return metrics;
+		metrics = new OperationMetrics(layer, name);
+		OperationMetrics existing = operations.putIfAbsent(key, metrics);
+		if(existing != null)
+			return existing;
+		register("type=Operation,layer=" + layer + ",name=" + name, metrics);
+		return metrics;
+	}
+
+	/**
+	 * Record a single call of an operation that is timed by hand (for a step within a method, rather than the method itself).
+	 * @param layer : the layer the operation belongs to
+	 * @param name : the name of the operation
+	 * @param nanos : how long it took
+	 */
+	public static void record(String layer, String name, long nanos) {
+		if(enabled)
+			operation(layer, name).record(nanos, false);
+	}
+
+	/**
+	 * Report that the call being timed on this thread has failed, even though it didn't throw (for example, a DAO that caught an SQLException).
+	 */
+	public static void recordError() {
+		if(enabled)
+			failed.get()[0] = true;
+	}
+
+	/**
+	 * Wrap an implementation of an interface in a proxy that records every call of every method of that interface. <br>
+	 * Overloads of a method share the same metrics.
+	 * @param type : the interface
+	 * @param target : its implementation
+	 * @param layer : the layer every method is recorded under (usually the name of the interface)
+	 * @return T: the proxy, or the implementation itself if metrics are turned off
+	 */
+	public static <T> T instrument(Class<T> type, T target, String layer) {
+		if(!enabled || target == null)
+			return target;
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new Timer(target, layer)));
+	}
+
+	/**
+	 * Times every call made through an instrumented proxy.
+	 */
+	private static class Timer implements InvocationHandler {
+		private final Object target;
+		private final String layer;
+		private final ConcurrentHashMap<Method, OperationMetrics> byMethod = new ConcurrentHashMap<Method, OperationMetrics>();
+
+		Timer(Object target, String layer) {
+			this.target = target;
+			this.layer = layer;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if(method.getDeclaringClass() == Object.class) {
+				if(method.getName().equals("equals"))
+					return proxy == args[0];
+				if(method.getName().equals("hashCode"))
+					return System.identityHashCode(proxy);
+				return method.invoke(target, args);
+			}
+
+			OperationMetrics metrics = byMethod.get(method);
+			if(metrics == null) {
+				metrics = operation(layer, method.getName());
+				byMethod.put(method, metrics);
+			}
+
+			// Keep whether an outer call failed so far, and start this one without a failure.
+			boolean[] flag = failed.get();
+			boolean outerFailed = flag[0];
+			flag[0] = false;
+			boolean threw = true;
+			long start = System.nanoTime();
+			try {
+				Object result = method.invoke(target, args);
+				threw = false;
+				return result;
+			}
+			catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+			finally {
+				// Whatever failed in this call also counts against the call that made it.
+				boolean callFailed = threw || flag[0];
+				metrics.record(System.nanoTime() - start, callFailed);
+				flag[0] = outerFailed || callFailed;
+			}
+		}
+	}
+
+	/**
+	 * Publish a group of gauges as bank:type=Gauges,name=..., replacing any group of the same name.
+	 * @param gauges : the gauges
+	 */
+	public static void register(Gauges gauges) {
+		if(enabled)
+			register("type=Gauges,name=" + gauges.getName(), gauges);
+	}
+
+	/**
+	 * Publish an MBean under the bank domain, replacing whatever was published under the same name.
+	 */
+	private static void register(String properties, Object mbean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+			synchronized(Metrics.class) {
+				if(server.isRegistered(name))
+					server.unregisterMBean(name);
+				server.registerMBean(mbean, name);
+			}
+		}
+		catch(JMException e) {
+			System.out.println("Error, the metrics could not be published: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Every amount of money in this application is a primitive long holding a number of cents. <br>
+ * This class simply groups the helpers that convert to and from that representation: <br>
+ * - parsing what the user types in the console, <br>
+ * - formatting an amount for display, <br>
+ * - and binding/reading the NUMBER(*, 2) columns through JDBC. <br>
+ * Arithmetic itself is plain long arithmetic, so it is exact and never allocates.
+ * @author baoph
+ *
+ */
+public final class Money {
+
+	private Money() {
+	}
+
+	/**
+	 * Parse a dollar amount typed by the user (for example "12", "12.5", or "12.345") into cents. <br>
+	 * Anything past 2 decimal places is rounded half-up.
+	 * @param dollars : the dollar amount as text
+	 * @return long: the amount in cents
+	 * @throws NumberFormatException if the text isn't a number or the amount is too large
+	 */
+	public static long parse(String dollars) {
+		try {
+			return new BigDecimal(dollars.trim()).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+		}
+		catch(ArithmeticException e) {
+			throw new NumberFormatException("Error, the amount " + dollars + " is too large");
+		}
+	}
+
+	/**
+	 * Convert a whole number of dollars into cents.
+	 * @param dollars : the number of dollars
+	 * @return long: the amount in cents
+	 */
+	public static long ofDollars(long dollars) {
+		return Math.multiplyExact(dollars, 100);
+	}
+
+	/**
+	 * Format an amount of cents as dollars with exactly 2 decimal places, for example 1234 => "12.34".
+	 * @param cents : the amount in cents
+	 * @return String: the formatted amount (without the dollar sign)
+	 */
+	public static String format(long cents) {
+		StringBuilder builder = new StringBuilder(24);
+		if(cents < 0)
+			builder.append('-');
+
+		// Work with the magnitude; Long.MIN_VALUE is handled by staying in negative numbers for the division.
+		long dollars = Math.abs(cents / 100), remainder = Math.abs(cents % 100);
+		builder.append(dollars).append('.');
+		if(remainder < 10)
+			builder.append('0');
+		return builder.append(remainder).toString();
+	}
+
+	/**
+	 * Convert cents into the BigDecimal that is bound to a NUMBER(*, 2) column.
+	 * @param cents : the amount in cents
+	 * @return BigDecimal: the amount in dollars, with a scale of 2
+	 */
+	public static BigDecimal toBigDecimal(long cents) {
+		return BigDecimal.valueOf(cents, 2);
+	}
+
+	/**
+	 * Convert the BigDecimal read from a NUMBER(*, 2) column back into cents.
+	 * @param dollars : the amount in dollars (NULL is treated as 0)
+	 * @return long: the amount in cents
+	 */
+	public static long fromBigDecimal(BigDecimal dollars) {
+		if(dollars == null)
+			return 0;
+		return dollars.setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+	}
+}
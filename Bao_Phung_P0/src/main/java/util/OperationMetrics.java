@@ -0,0 +1,100 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The call count, error count, and latency histogram of a single operation (a DAO or service method, or a step within one). <br>
+ * Each one is published over JMX by Metrics as bank:type=Operation,layer=...,name=...
+ * @author baoph
+ *
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+	// Latencies are kept up to a minute, to 3 significant digits
+	private static final long HIGHEST_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final String layer, name;
+	private final AtomicLong calls = new AtomicLong(), errors = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram(HIGHEST_LATENCY_NANOS, 3);
+
+	/**
+	 * Creates the metrics of an operation, with nothing recorded yet.
+	 * @param layer : the layer the operation belongs to (for example, UserDAO)
+	 * @param name : the name of the operation (for example, getUserByUsername)
+	 */
+	public OperationMetrics(String layer, String name) {
+		this.layer = layer;
+		this.name = name;
+	}
+
+	/**
+	 * Record a single call.
+	 * @param nanos : how long it took
+	 * @param failed : whether it failed
+	 */
+	public void record(long nanos, boolean failed) {
+		calls.incrementAndGet();
+		if(failed)
+			errors.incrementAndGet();
+		latency.record(nanos);
+	}
+
+	public String getLayer() {
+		return layer;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Simply return the latencies recorded so far (in nanoseconds).
+	 * @return LatencyHistogram: the latencies
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public long getCalls() {
+		return calls.get();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.get();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		return latency.getMean() / 1000;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return latency.getValueAtPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return latency.getValueAtPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getP999Micros() {
+		return latency.getValueAtPercentile(99.9) / 1000.0;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return latency.getMaxValue() / 1000.0;
+	}
+
+	@Override
+	public void reset() {
+		calls.set(0);
+		errors.set(0);
+		latency.reset();
+	}
+}
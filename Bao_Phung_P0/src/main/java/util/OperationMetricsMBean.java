@@ -0,0 +1,17 @@
+package util;
+
+/**
+ * What JMX shows of a single operation (see OperationMetrics); every latency is in microseconds.
+ * @author baoph
+ *
+ */
+public interface OperationMetricsMBean {
+	long getCalls();
+	long getErrors();
+	double getMeanMicros();
+	double getP50Micros();
+	double getP99Micros();
+	double getP999Micros();
+	double getMaxMicros();
+	void reset();
+}
@@ -0,0 +1,346 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import ciphers.PasswordMasker;
+
+/**
+ * Rotates the cipher key of every stored password, while the application keeps running. <br>
+ * Every row of Users is streamed (with a large fetch size), re-encoded from its own key to the new one on a fork/join pool,
+ * and written back in JDBC batches, one commit per chunk.  The checkpoint (the last u_id done) is committed along with each chunk,
+ * so a rotation that was stopped simply picks up where it left off the next time it runs. <br>
+ * Every password records its key, and the one it replaced is kept (see V7__password_keys.sql), so logins work throughout the rotation.
+ * Once every password is re-keyed, the new key is written into key.properties. <br>
+ * Run it with: java util.PasswordRekeyer newKey [oldKey]  (the old key defaults to the one in key.properties)
+ * @author baoph
+ *
+ */
+public class PasswordRekeyer implements AutoCloseable{
+
+	// Defaults for the job; each of these can be overridden with -Dbank.rekey.fetchSize, -Dbank.rekey.chunkSize, and -Dbank.rekey.parallelism.
+	public static final int DEFAULT_FETCH_SIZE = 5000, DEFAULT_CHUNK_SIZE = 10000;
+
+	// Passwords registered with the old key while the rotation runs are caught by going over the table again, at most this many times.
+	private static final int MAX_PASSES = 3;
+
+	/**
+	 * A single password being re-keyed, along with the password an earlier rotation replaced (if any).
+	 */
+	public static final class Row {
+		private final int id;
+		private final String password, previousPassword;
+		private final Integer key, previousKey;
+		private String rekeyed;
+
+		/**
+		 * Creates a row as it is stored in Users.
+		 * @param id : the u_id
+		 * @param password : the (encoded) password
+		 * @param key : the key of the password, or NULL for the key in key.properties
+		 * @param previousPassword : the password an earlier rotation replaced, or NULL
+		 * @param previousKey : the key of the previous password, or NULL
+		 */
+		public Row(int id, String password, Integer key, String previousPassword, Integer previousKey) {
+			this.id = id;
+			this.password = password;
+			this.key = key;
+			this.previousPassword = previousPassword;
+			this.previousKey = previousKey;
+		}
+
+		/**
+		 * Re-encode the password with the new key.
+		 * @param oldMasker : the masker of a password without a key of its own
+		 * @param newMasker : the masker with the new key
+		 * @return String: the re-keyed password, or NULL if it can't be re-encoded at all
+		 */
+		public String rekey(PasswordMasker oldMasker, PasswordMasker newMasker) {
+			PasswordMasker from = (key == null ? oldMasker : new PasswordMasker(key));
+			rekeyed = (password == null ? null : from.rekey(password, newMasker));
+			return rekeyed;
+		}
+
+		/**
+		 * Return the password to keep once this one is replaced. <br>
+		 * Only the first rotation's copy is the password exactly as it was set (see PasswordMasker.rekey() for what isn't re-encoded exactly),
+		 * so once there is a previous password, it is kept until a login replaces both.
+		 * @return String: the previous password
+		 */
+		public String getPreviousPassword() {
+			return (previousPassword == null ? password : previousPassword);
+		}
+
+		/**
+		 * Return the key of the password getPreviousPassword() returns.
+		 * @param oldKey : the key of a password without a key of its own
+		 * @return int: the previous key
+		 */
+		public int getPreviousKey(int oldKey) {
+			if(previousPassword != null)
+				return previousKey;
+			return (key == null ? oldKey : key);
+		}
+	}
+
+	private final int oldKey, newKey, fetchSize, chunkSize;
+	private final PasswordMasker oldMasker, newMasker;
+	private final ForkJoinPool pool;
+	private long rekeyed = 0, skipped = 0;
+
+	/**
+	 * Creates a job sized from the system properties (or the defaults).
+	 * @param oldKey : the key of every password without a key of its own (i.e. the key in key.properties)
+	 * @param newKey : the key to re-encode every password with
+	 */
+	public PasswordRekeyer(int oldKey, int newKey) {
+		this(oldKey, newKey, Integer.getInteger("bank.rekey.fetchSize", DEFAULT_FETCH_SIZE), Integer.getInteger("bank.rekey.chunkSize", DEFAULT_CHUNK_SIZE),
+				Integer.getInteger("bank.rekey.parallelism", Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Creates a job.
+	 * @param oldKey : the key of every password without a key of its own (i.e. the key in key.properties)
+	 * @param newKey : the key to re-encode every password with
+	 * @param fetchSize : the number of rows fetched per round trip while streaming Users
+	 * @param chunkSize : the number of rows written (and committed) at once
+	 * @param parallelism : the number of threads that re-encode passwords
+	 */
+	public PasswordRekeyer(int oldKey, int newKey, int fetchSize, int chunkSize, int parallelism) {
+		if(oldKey < 10 || oldKey > 30 || newKey < 10 || newKey > 30)
+			throw new IllegalArgumentException("Error, both keys must be within [10, 30]");
+		this.oldKey = oldKey;
+		this.newKey = newKey;
+		this.fetchSize = Math.max(1, fetchSize);
+		this.chunkSize = Math.max(1, chunkSize);
+		this.oldMasker = new PasswordMasker(oldKey);
+		this.newMasker = new PasswordMasker(newKey);
+		this.pool = new ForkJoinPool(Math.max(1, parallelism));
+	}
+
+	/**
+	 * Re-key every password that isn't on the new key yet, resuming from the checkpoint of an earlier run (if any).
+	 * @return long: the number of passwords re-keyed by this run
+	 * @throws SQLException if reading or writing fails; everything committed so far stays, and running again resumes from there
+	 */
+	public long run() throws SQLException {
+		try(Connection reader = DBConnection.getConnection(); Connection writer = DBConnection.getConnection()) {
+			writer.setAutoCommit(false);
+
+			// First, finish the pass an earlier run started (or start from the beginning).
+			// Then, go over the table again for whatever was registered with the old key in the meantime.
+			int fromId = startOrResume(writer);
+			for(int pass = 1; pass <= MAX_PASSES; pass++) {
+				long done = rekeyPass(reader, writer, fromId);
+				if(done == 0 && fromId == 0)
+					break;
+				fromId = 0;
+				checkpoint(writer, 0, 0);
+			}
+
+			PreparedStatement ps = writer.prepareStatement("UPDATE rekey_checkpoint SET finished_on = SYSTIMESTAMP WHERE old_key = ? AND new_key = ?");
+			ps.setInt(1, oldKey);
+			ps.setInt(2, newKey);
+			ps.executeUpdate();
+			ps.close();
+			writer.commit();
+		}
+		return rekeyed;
+	}
+
+	/**
+	 * Read the checkpoint of this rotation, or create it if this is the first run.
+	 * @return int: the last u_id that was already re-keyed
+	 */
+	private int startOrResume(Connection writer) throws SQLException {
+		PreparedStatement ps = writer.prepareStatement("SELECT last_u_id, finished_on FROM rekey_checkpoint WHERE old_key = ? AND new_key = ?");
+		ps.setInt(1, oldKey);
+		ps.setInt(2, newKey);
+		ResultSet rs = ps.executeQuery();
+		int lastId = 0;
+		boolean exists = rs.next();
+		if(exists && rs.getTimestamp(2) == null)
+			lastId = rs.getInt(1);
+		rs.close();
+		ps.close();
+
+		// A finished rotation that runs again simply starts over (there may be a few passwords left on the old key).
+		String SQLStatement = (exists ? "UPDATE rekey_checkpoint SET last_u_id = ?, finished_on = NULL WHERE old_key = ? AND new_key = ?"
+				: "INSERT INTO rekey_checkpoint (last_u_id, old_key, new_key) VALUES (?, ?, ?)");
+		ps = writer.prepareStatement(SQLStatement);
+		ps.setInt(1, lastId);
+		ps.setInt(2, oldKey);
+		ps.setInt(3, newKey);
+		ps.executeUpdate();
+		ps.close();
+		writer.commit();
+		return lastId;
+	}
+
+	/**
+	 * Stream every User after fromId whose password isn't on the new key yet, and re-key them one chunk at a time.
+	 * @return long: the number of passwords re-keyed in this pass
+	 */
+	private long rekeyPass(Connection reader, Connection writer, int fromId) throws SQLException {
+		String SQLStatement = "SELECT u_id, password, password_key, previous_password, previous_key FROM Users "
+				+ "WHERE u_id > ? AND NVL(password_key, ?) <> ? ORDER BY u_id";
+		PreparedStatement ps = reader.prepareStatement(SQLStatement);
+		ps.setFetchSize(fetchSize);
+		ps.setInt(1, fromId);
+		ps.setInt(2, oldKey);
+		ps.setInt(3, newKey);
+		ResultSet rs = ps.executeQuery();
+
+		long done = 0;
+		List<Row> chunk = new ArrayList<Row>(chunkSize);
+		while(rs.next()) {
+			int key = rs.getInt(3);
+			Integer passwordKey = (rs.wasNull() ? null : key);
+			key = rs.getInt(5);
+			chunk.add(new Row(rs.getInt(1), rs.getString(2), passwordKey, rs.getString(4), (rs.wasNull() ? null : key)));
+			if(chunk.size() == chunkSize) {
+				done += rekeyChunk(writer, chunk);
+				chunk.clear();
+			}
+		}
+		if(!chunk.isEmpty())
+			done += rekeyChunk(writer, chunk);
+
+		// Safely close the statements
+		rs.close();
+		ps.close();
+		return done;
+	}
+
+	/**
+	 * Re-encode a chunk of passwords in parallel, then write them (and the checkpoint) with a single commit.
+	 * @return long: the number of passwords re-keyed
+	 */
+	private long rekeyChunk(Connection writer, List<Row> chunk) throws SQLException {
+		// First, re-encode every password on the fork/join pool.
+		pool.submit(() -> chunk.parallelStream().forEach(row -> row.rekey(oldMasker, newMasker))).join();
+
+		// Second, write them back in one batch; the old password is kept, in case it couldn't be re-encoded exactly.
+		// An earlier rotation's previous password is never overwritten, since it is the only exact copy (see Row.getPreviousPassword()).
+		// A password that changed since it was read is left alone (the next pass gets it).
+		// Passwords that can't be re-encoded at all keep their old key, which is recorded so they no longer depend on key.properties.
+		PreparedStatement update = writer.prepareStatement("UPDATE Users SET password = ?, password_key = ?, previous_password = ?, previous_key = ? "
+				+ "WHERE u_id = ? AND password = ?");
+		PreparedStatement keep = writer.prepareStatement("UPDATE Users SET password_key = ? WHERE u_id = ? AND password_key IS NULL");
+		int batched = 0, kept = 0;
+		for(Row row : chunk) {
+			if(row.rekeyed == null) {
+				keep.setInt(1, oldKey);
+				keep.setInt(2, row.id);
+				keep.addBatch();
+				kept++;
+				continue;
+			}
+			update.setString(1, row.rekeyed);
+			update.setInt(2, newKey);
+			update.setString(3, row.getPreviousPassword());
+			update.setInt(4, row.getPreviousKey(oldKey));
+			update.setInt(5, row.id);
+			update.setString(6, row.password);
+			update.addBatch();
+			batched++;
+		}
+
+		long done = 0;
+		if(batched > 0) {
+			for(int count : update.executeBatch())
+				done += (count == Statement.SUCCESS_NO_INFO ? 1 : count);
+		}
+		if(kept > 0)
+			keep.executeBatch();
+		update.close();
+		keep.close();
+
+		// Third, move the checkpoint forward and commit everything at once.
+		checkpoint(writer, chunk.get(chunk.size() - 1).id, done);
+		rekeyed += done;
+		skipped += kept;
+		return done;
+	}
+
+	/**
+	 * Record how far the rotation got, and commit.
+	 */
+	private void checkpoint(Connection writer, int lastId, long done) throws SQLException {
+		PreparedStatement ps = writer.prepareStatement("UPDATE rekey_checkpoint SET last_u_id = ?, rows_rekeyed = rows_rekeyed + ? WHERE old_key = ? AND new_key = ?");
+		ps.setInt(1, lastId);
+		ps.setLong(2, done);
+		ps.setInt(3, oldKey);
+		ps.setInt(4, newKey);
+		ps.executeUpdate();
+		ps.close();
+		writer.commit();
+	}
+
+	/**
+	 * Simply return the number of passwords re-keyed so far.
+	 * @return long: the number of re-keyed passwords
+	 */
+	public long getRekeyedCount() {
+		return rekeyed;
+	}
+
+	/**
+	 * Simply return the number of passwords that could not be re-keyed at all (they keep working with their old key).
+	 * @return long: the number of skipped passwords
+	 */
+	public long getSkippedCount() {
+		return skipped;
+	}
+
+	/**
+	 * Stop the fork/join pool.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Rotate the key of every stored password, and then save the new key in key.properties.
+	 * @param args : the new key, and optionally the old key (otherwise, the one in key.properties)
+	 */
+	public static void main(String[] args) {
+		int newKey, oldKey;
+		try {
+			newKey = Integer.parseInt(args[0]);
+			oldKey = (args.length > 1 ? Integer.parseInt(args[1]) : DBConnection.getKeyFromFile());
+		}
+		catch(ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			System.out.println("Usage: java util.PasswordRekeyer newKey [oldKey]");
+			System.exit(1);
+			return;
+		}
+
+		if(!DBConnection.isConnected() || !SchemaMigrator.migrate())
+			System.exit(1);
+
+		try(PasswordRekeyer rekeyer = new PasswordRekeyer(oldKey, newKey)) {
+			long start = System.currentTimeMillis();
+			rekeyer.run();
+			DBConnection.saveKeyToFile(newKey);
+			System.out.println("Re-keyed " + rekeyer.getRekeyedCount() + " password(s) from key " + oldKey + " to key " + newKey + " in "
+					+ (System.currentTimeMillis() - start) / 1000 + "s (" + rekeyer.getSkippedCount() + " kept their old key).");
+		}
+		catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		}
+		catch(SQLException e) {
+			System.out.println("Error, the rotation stopped: " + e.getMessage() + ".  Run it again to resume where it left off.");
+		}
+		finally {
+			DBConnection.shutdown();
+		}
+	}
+}
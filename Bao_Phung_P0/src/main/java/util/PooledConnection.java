@@ -0,0 +1,148 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A single physical connection owned by the ConnectionPool. <br>
+ * Every time it is borrowed, the borrower receives a lightweight proxy (a "lease") instead of the physical connection itself,
+ * so that calling close() hands the connection back to the pool and any later use of that lease fails instead of touching someone else's connection. <br>
+ * Each physical connection also keeps its own StatementCache, so statements prepared through a lease survive across borrows.
+ * @author baoph
+ *
+ */
+class PooledConnection {
+	private final ConnectionPool pool;
+	private final Connection physical;
+	private final StatementCache statements;
+	private volatile long lastReturnedMillis;
+
+	/**
+	 * Wraps a freshly opened physical connection.
+	 * @param pool : the pool this connection belongs to
+	 * @param physical : the physical JDBC connection
+	 * @param statementCacheSize : how many prepared/callable statements to keep open on this connection
+	 */
+	PooledConnection(ConnectionPool pool, Connection physical, int statementCacheSize) {
+		this.pool = pool;
+		this.physical = physical;
+		this.statements = new StatementCache(physical, pool, statementCacheSize);
+		this.lastReturnedMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Create a new lease for the borrower.
+	 * @return Connection: a proxy that forwards to the physical connection until close() is called
+	 */
+	Connection lease() {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new Lease());
+	}
+
+	/**
+	 * Check that the physical connection is still usable.
+	 * @param timeoutSeconds : how long the driver may take to answer
+	 * @return Boolean: True if the connection is valid, False otherwise
+	 */
+	boolean isValid(int timeoutSeconds) {
+		try {
+			return !physical.isClosed() && physical.isValid(timeoutSeconds);
+		}
+		catch(SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Undo anything a borrower might have changed before the connection goes back to the idle list. <br>
+	 * Any open transaction is rolled back and auto-commit is switched back on.
+	 * @return Boolean: True if the connection can be reused, False if it should be thrown away
+	 */
+	boolean reset() {
+		try {
+			if(physical.isClosed())
+				return false;
+			if(!physical.getAutoCommit()) {
+				physical.rollback();
+				physical.setAutoCommit(true);
+			}
+			physical.clearWarnings();
+			lastReturnedMillis = System.currentTimeMillis();
+			return true;
+		}
+		catch(SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Close the cached statements and then the physical connection, ignoring any errors (the connection is being thrown away anyways).
+	 */
+	void closePhysical() {
+		statements.clear();
+		try {
+			physical.close();
+		}
+		catch(SQLException e) {
+		}
+	}
+
+	/**
+	 * Simply return the last time this connection was handed back to the pool.
+	 * @return long: the time in milliseconds
+	 */
+	long getLastReturnedMillis() {
+		return lastReturnedMillis;
+	}
+
+	/**
+	 * The handler behind a single lease. <br>
+	 * close() checks in any statement still open and returns the connection to the pool exactly once, prepareStatement(sql)/prepareCall(sql) go through the statement cache,
+	 * and every other call is forwarded to the physical connection.
+	 */
+	private class Lease implements InvocationHandler {
+		private boolean returned = false;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if(name.equals("close")) {
+				if(!returned) {
+					returned = true;
+					statements.checkInAll();
+					pool.release(PooledConnection.this);
+				}
+				return null;
+			}
+			if(name.equals("isClosed"))
+				return returned;
+			if(name.equals("equals"))
+				return proxy == args[0];
+			if(name.equals("hashCode"))
+				return System.identityHashCode(proxy);
+			if(name.equals("toString"))
+				return "PooledConnection[" + physical + (returned ? ", returned]" : "]");
+			if(returned)
+				throw new SQLException("Error, this connection has already been returned to the pool");
+			
+			// Only the plain single-String overloads are cached; the others (result set types, generated keys...) go straight through.
+			if(args != null && args.length == 1 && args[0] instanceof String) {
+				if(name.equals("prepareStatement"))
+					return statements.prepareStatement((String) args[0]);
+				if(name.equals("prepareCall"))
+					return statements.prepareCall((String) args[0]);
+			}
+
+			try {
+				return method.invoke(physical, args);
+			}
+			catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package util;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A fixed size ring of the most recent elements, for a single owner (it is not thread safe). <br>
+ * Pushing an element once the ring is full simply overwrites the oldest one, so pushing never allocates and the ring never grows. <br>
+ * The ring itself is a read-only List, newest first: get(0) is the element pushed last, so it can be read and iterated without copying it.
+ * @author baoph
+ *
+ * @param <E> : the type of the elements
+ */
+public class RecentBuffer<E> extends AbstractList<E> {
+
+	private final Object[] elements;
+
+	// The slot the next element goes into, and the number of elements held
+	private int next = 0;
+	private int size = 0;
+
+	/**
+	 * Creates an empty ring.
+	 * @param capacity : the number of most recent elements to keep
+	 */
+	public RecentBuffer(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("Error, the capacity must be at least 1");
+		this.elements = new Object[capacity];
+	}
+
+	/**
+	 * Creates a ring with the same capacity and elements as another one.
+	 * @param other : the ring to copy
+	 */
+	public RecentBuffer(RecentBuffer<E> other) {
+		this.elements = other.elements.clone();
+		this.next = other.next;
+		this.size = other.size;
+	}
+
+	/**
+	 * Push a new element, dropping the oldest one if the ring is full.
+	 * @param element : the newest element
+	 */
+	public void push(E element) {
+		elements[next] = element;
+		next = (next + 1 == elements.length ? 0 : next + 1);
+		if(size < elements.length)
+			size++;
+		modCount++;
+	}
+
+	/**
+	 * Replace every element with the given ones, which are ordered newest first (just like the ring itself). <br>
+	 * If there are more of them than the capacity, only the newest ones are kept.
+	 * @param newestFirst : the new elements, newest first
+	 */
+	@SuppressWarnings("unchecked")
+	public void reset(List<E> newestFirst) {
+		// Take the new elements out first, in case they are a view of this very ring.
+		Object[] newElements = newestFirst.toArray();
+		clear();
+		for(int i = Math.min(newElements.length, elements.length) - 1; i >= 0; i--)
+			push((E) newElements[i]);
+	}
+
+	/**
+	 * Remove every element.
+	 */
+	@Override
+	public void clear() {
+		for(int i = 0; i < elements.length; i++)
+			elements[i] = null;
+		next = size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Return an element by its age.
+	 * @param index : 0 for the newest element, size() - 1 for the oldest one
+	 * @return E: the element
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public E get(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		int slot = next - 1 - index;
+		return (E) elements[slot < 0 ? slot + elements.length : slot];
+	}
+
+	/**
+	 * Simply return the number of elements held, which is never more than the capacity.
+	 * @return int: the number of elements
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Simply return the maximum number of elements held.
+	 * @return int: the capacity
+	 */
+	public int getCapacity() {
+		return elements.length;
+	}
+}
@@ -0,0 +1,181 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings the database schema up to date when the application starts. <br>
+ * Every change to the schema is a versioned script under src/main/resources/db/migration, named V<version>__<description>.sql. <br>
+ * The versions that were already applied are recorded in the schema_version table, so each script only ever runs once per database. <br>
+ * Scripts hold one statement per block, and every block ends with a line holding a single "/" (just like SQL*Plus), so PL/SQL can contain semicolons.
+ * @author baoph
+ *
+ */
+public class SchemaMigrator {
+
+	// Every migration, in the order it has to be applied.  New migrations are only ever appended.
+	public static final String[] MIGRATIONS = {
+		"V1__baseline.sql",
+		"V2__account_version_and_cents.sql",
+		"V3__typed_transactions.sql",
+		"V4__lookup_indexes.sql",
+		"V5__add_user_returns_id.sql",
+		"V6__sequence_blocks.sql",
+		"V7__password_keys.sql",
+		"V8__ledger_dead_letter.sql"
+	};
+
+	private static final String MIGRATION_FOLDER = "db/migration/";
+
+	// ORA-00955 (name already used), ORA-01430 (column already exists), ORA-01408 (column list already indexed),
+	// ORA-02260/02261 (primary/unique key already exists), and ORA-02275 (foreign key already exists).
+	// The baseline may run against a database whose tables were created by hand, so these are not failures.
+	private static final Set<Integer> ALREADY_EXISTS_ERRORS = new HashSet<Integer>(Arrays.asList(955, 1430, 1408, 2260, 2261, 2275));
+
+	/**
+	 * Apply every migration that the pooled database hasn't seen yet.
+	 * @return Boolean: True if the schema is up to date, False if a migration failed
+	 */
+	public static boolean migrate() {
+		try(Connection connection = DBConnection.getConnection()) {
+			int applied = migrate(connection);
+			if(applied > 0)
+				System.out.println("Applied " + applied + " schema migration(s).");
+			return true;
+		}
+		catch(SQLException | IOException e) {
+			System.out.println("Error, the database schema could not be updated: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Apply every migration that the given database hasn't seen yet, in order. <br>
+	 * Each migration is recorded in schema_version right after its statements ran, so running this again is a no-op.
+	 * @param connection : the connection to the database to migrate
+	 * @return int: the number of migrations that were applied
+	 * @throws SQLException if a statement fails (for any reason other than the object already existing)
+	 * @throws IOException if a migration script can't be read
+	 */
+	public static int migrate(Connection connection) throws SQLException, IOException {
+		// First, make sure there is somewhere to record the applied versions, and read them.
+		execute(connection, "CREATE TABLE schema_version (version NUMBER(5) CONSTRAINT schema_version_pk PRIMARY KEY, "
+				+ "description VARCHAR2(100), installed_on TIMESTAMP DEFAULT SYSTIMESTAMP)");
+		Set<Integer> appliedVersions = new HashSet<Integer>();
+		Statement query = connection.createStatement();
+		ResultSet rs = query.executeQuery("SELECT version FROM schema_version");
+		while(rs.next())
+			appliedVersions.add(rs.getInt(1));
+		rs.close();
+		query.close();
+
+		// Second, run every migration that is missing, and record it.
+		int applied = 0;
+		for(String migration : MIGRATIONS) {
+			int version = getVersion(migration);
+			if(appliedVersions.contains(version))
+				continue;
+
+			for(String statement : readStatements(migration))
+				execute(connection, statement);
+
+			PreparedStatement ps = connection.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)");
+			ps.setInt(1, version);
+			ps.setString(2, getDescription(migration));
+			ps.executeUpdate();
+			ps.close();
+			if(!connection.getAutoCommit())
+				connection.commit();
+			applied++;
+		}
+		return applied;
+	}
+
+	/**
+	 * Read the version out of a migration's name, for example "V3__typed_transactions.sql" => 3.
+	 * @param migration : the name of the migration script
+	 * @return int: the version
+	 */
+	public static int getVersion(String migration) {
+		return Integer.parseInt(migration.substring(1, migration.indexOf("__")));
+	}
+
+	/**
+	 * Read the description out of a migration's name, for example "V3__typed_transactions.sql" => "typed transactions".
+	 * @param migration : the name of the migration script
+	 * @return String: the description
+	 */
+	public static String getDescription(String migration) {
+		return migration.substring(migration.indexOf("__") + 2, migration.lastIndexOf(".sql")).replace('_', ' ');
+	}
+
+	/**
+	 * Split a migration script into its statements. <br>
+	 * A statement ends at a line holding a single "/", and comment lines in between statements are dropped.
+	 * @param migration : the name of the migration script (inside db/migration)
+	 * @return List<String>: the statements, in order
+	 * @throws IOException if the script is missing or can't be read
+	 */
+	public static List<String> readStatements(String migration) throws IOException {
+		InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_FOLDER + migration);
+		if(in == null)
+			throw new IOException("the migration " + migration + " is missing");
+
+		List<String> statements = new ArrayList<String>();
+		StringBuilder statement = new StringBuilder();
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				String trimmed = line.trim();
+				if(trimmed.equals("/")) {
+					addStatement(statements, statement);
+					continue;
+				}
+
+				// Skip blank lines and comments until a statement starts
+				if(statement.length() == 0 && (trimmed.isEmpty() || trimmed.startsWith("--")))
+					continue;
+				statement.append(line).append('\n');
+			}
+		}
+		addStatement(statements, statement);
+		return statements;
+	}
+
+	private static void addStatement(List<String> statements, StringBuilder statement) {
+		String text = statement.toString().trim();
+		if(!text.isEmpty())
+			statements.add(text);
+		statement.setLength(0);
+	}
+
+	/**
+	 * Execute a single DDL statement, skipping it if what it creates already exists.
+	 */
+	private static void execute(Connection connection, String SQLStatement) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(SQLStatement);
+		}
+		catch(SQLException e) {
+			if(!ALREADY_EXISTS_ERRORS.contains(e.getErrorCode()))
+				throw e;
+		}
+		finally {
+			statement.close();
+		}
+	}
+}
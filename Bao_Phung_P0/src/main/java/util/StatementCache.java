@@ -0,0 +1,246 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of prepared and callable statements that belongs to a single pooled connection. <br>
+ * Statements are keyed by their SQL text, so calling prepareStatement()/prepareCall() with the same String twice on the same connection
+ * reuses the statement that was already parsed instead of paying for another parse. <br>
+ * Closing a cached statement simply hands it back to the cache; it is only physically closed when it is evicted or the connection is closed. <br>
+ * Every statement still checked out when the lease is returned is checked back in then (see checkInAll()), so a statement left open by a failed query
+ * is neither leaked nor kept busy for the next borrower.
+ * @author baoph
+ *
+ */
+class StatementCache {
+	private final Connection physical;
+	private final ConnectionPool pool;
+	private final int capacity;
+	private final LinkedHashMap<String, Entry> statements;
+	private final List<Handle> outstanding = new ArrayList<Handle>();
+
+	/**
+	 * Create an empty cache for a single physical connection.
+	 * @param physical : the connection that prepares the statements
+	 * @param pool : the pool that keeps the hit/miss/eviction counters
+	 * @param capacity : the maximum number of statements to keep open on this connection
+	 */
+	StatementCache(Connection physical, ConnectionPool pool, int capacity) {
+		this.physical = physical;
+		this.pool = pool;
+		this.capacity = capacity;
+
+		// An access-ordered LinkedHashMap keeps the least recently used statement at the head of the map.
+		this.statements = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if(size() <= StatementCache.this.capacity)
+					return false;
+
+				// A statement that is still checked out is closed when it comes back instead.
+				Entry entry = eldest.getValue();
+				entry.evicted = true;
+				if(!entry.inUse)
+					entry.closePhysical();
+				StatementCache.this.pool.recordStatementEviction();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Return a prepared statement for the given SQL, reusing a cached one if possible.
+	 * @param sql : the SQL text
+	 * @return PreparedStatement: a statement whose close() returns it to the cache
+	 * @throws SQLException if the statement could not be prepared
+	 */
+	PreparedStatement prepareStatement(String sql) throws SQLException {
+		return (PreparedStatement) checkOut(sql, false);
+	}
+
+	/**
+	 * Return a callable statement for the given SQL, reusing a cached one if possible.
+	 * @param sql : the SQL text
+	 * @return CallableStatement: a statement whose close() returns it to the cache
+	 * @throws SQLException if the statement could not be prepared
+	 */
+	CallableStatement prepareCall(String sql) throws SQLException {
+		return (CallableStatement) checkOut(sql, true);
+	}
+
+	private Object checkOut(String sql, boolean callable) throws SQLException {
+		// Caching is turned off, so simply prepare a brand new statement every time (it is closed for real once it's checked in)
+		if(capacity <= 0)
+			return checkOut(uncached(sql, callable));
+
+		Entry entry = statements.get(sql);
+
+		// Hit: the statement is parsed already and nobody is using it right now
+		if(entry != null && !entry.inUse && entry.callable == callable) {
+			pool.recordStatementHit();
+			return checkOut(entry);
+		}
+
+		// Miss: prepare the statement.  If the cached one is busy (the same SQL is open twice on one connection), the new one is not cached.
+		pool.recordStatementMiss();
+		if(entry != null && entry.inUse)
+			return checkOut(uncached(sql, callable));
+		PreparedStatement statement = (callable ? physical.prepareCall(sql) : physical.prepareStatement(sql));
+		if(entry != null)
+			entry.closePhysical();
+		entry = new Entry(statement, callable);
+		statements.put(sql, entry);
+		return checkOut(entry);
+	}
+
+	/**
+	 * Prepare a statement that is not kept in the cache: it is physically closed as soon as it is checked in.
+	 */
+	private Entry uncached(String sql, boolean callable) throws SQLException {
+		Entry entry = new Entry((callable ? physical.prepareCall(sql) : physical.prepareStatement(sql)), callable);
+		entry.evicted = true;
+		return entry;
+	}
+
+	/**
+	 * Hand the statement to a caller, wrapped so that close() gives it back instead of closing it.
+	 */
+	private Object checkOut(Entry entry) {
+		entry.inUse = true;
+		Handle handle = new Handle(entry);
+		outstanding.add(handle);
+		Class<?> type = (entry.callable ? CallableStatement.class : PreparedStatement.class);
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handle);
+	}
+
+	/**
+	 * Check in every statement the borrower didn't close (for example, because a query threw before it got to close()). <br>
+	 * Called when the lease is returned, so the next borrower can reuse them; the handles that were left open simply fail from now on.
+	 */
+	void checkInAll() {
+		while(!outstanding.isEmpty())
+			outstanding.get(outstanding.size() - 1).checkIn();
+	}
+
+	/**
+	 * Simply return the number of statements currently cached.
+	 * @return Int: the number of cached statements
+	 */
+	int size() {
+		return statements.size();
+	}
+
+	/**
+	 * Physically close every cached statement.  Called right before the connection itself is closed.
+	 */
+	void clear() {
+		Iterator<Entry> iterator = statements.values().iterator();
+		while(iterator.hasNext()) {
+			iterator.next().closePhysical();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * A single cached statement along with whether it is currently checked out.
+	 */
+	private static class Entry {
+		private final PreparedStatement statement;
+		private final boolean callable;
+		private boolean inUse = false, evicted = false;
+
+		Entry(PreparedStatement statement, boolean callable) {
+			this.statement = statement;
+			this.callable = callable;
+		}
+
+		/**
+		 * Called when the caller closes its handle.  Parameters are cleared so the next caller starts fresh.
+		 */
+		void checkIn() {
+			inUse = false;
+			if(evicted) {
+				closePhysical();
+				return;
+			}
+			try {
+				statement.clearParameters();
+			}
+			catch(SQLException e) {
+				evicted = true;
+				closePhysical();
+			}
+		}
+
+		void closePhysical() {
+			try {
+				statement.close();
+			}
+			catch(SQLException e) {
+			}
+		}
+	}
+
+	/**
+	 * The handler behind a single checked out statement. <br>
+	 * close() returns the statement to the cache exactly once; every other call is forwarded to the physical statement.
+	 */
+	private class Handle implements InvocationHandler {
+		private final Entry entry;
+		private boolean returned = false;
+
+		Handle(Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if(name.equals("close")) {
+				checkIn();
+				return null;
+			}
+			if(name.equals("isClosed"))
+				return returned;
+			if(name.equals("equals"))
+				return proxy == args[0];
+			if(name.equals("hashCode"))
+				return System.identityHashCode(proxy);
+			if(returned)
+				throw new SQLException("Error, this statement has already been closed");
+
+			try {
+				return method.invoke(entry.statement, args);
+			}
+			catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		/**
+		 * Give the statement back to the cache, exactly once.
+		 */
+		void checkIn() {
+			if(returned)
+				return;
+			returned = true;
+			outstanding.remove(this);
+			entry.checkIn();
+		}
+	}
+}
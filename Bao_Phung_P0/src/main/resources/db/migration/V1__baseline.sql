@@ -0,0 +1,46 @@
+-- The original schema of the Bank Application (see ERD0.PNG).
+-- Databases that were set up by hand already have these objects; "already exists" errors are skipped by util.SchemaMigrator.
+-- Every statement ends with a line holding a single "/".
+
+CREATE SEQUENCE user_id_generator START WITH 1 INCREMENT BY 1
+/
+CREATE SEQUENCE bank_account_id_generator START WITH 1 INCREMENT BY 1
+/
+CREATE SEQUENCE transaction_id_generator START WITH 1 INCREMENT BY 1
+/
+
+CREATE TABLE Users (
+	u_id NUMBER(5) CONSTRAINT users_pk PRIMARY KEY,
+	full_name VARCHAR2(100),
+	username VARCHAR2(100) CONSTRAINT users_username_un UNIQUE,
+	password VARCHAR2(100),
+	is_super NUMBER(1)
+)
+/
+
+CREATE TABLE Accounts (
+	a_id NUMBER(6) CONSTRAINT accounts_pk PRIMARY KEY,
+	account_name VARCHAR2(100),
+	balance NUMBER(10),
+	u_id NUMBER(5) CONSTRAINT fk_accounts_users REFERENCES Users (u_id)
+)
+/
+
+CREATE TABLE Transactions (
+	t_id NUMBER(6) CONSTRAINT transactions_pk PRIMARY KEY,
+	message VARCHAR2(100),
+	u_id NUMBER(5) CONSTRAINT fk_transactions_users REFERENCES Users (u_id)
+)
+/
+
+-- Add a single user, but only if nobody else has the same username (ignoring case)
+CREATE OR REPLACE PROCEDURE add_user(p_full_name IN VARCHAR2, p_username IN VARCHAR2, p_password IN VARCHAR2, p_is_super IN NUMBER) AS
+	v_taken NUMBER;
+BEGIN
+	SELECT COUNT(*) INTO v_taken FROM Users WHERE LOWER(username) = LOWER(p_username);
+	IF v_taken > 0 THEN
+		RAISE_APPLICATION_ERROR(-20001, 'the username ' || p_username || ' is already taken');
+	END IF;
+	INSERT INTO Users (u_id, full_name, username, password, is_super) VALUES (user_id_generator.nextval, p_full_name, p_username, p_password, p_is_super);
+END;
+/
@@ -0,0 +1,6 @@
+-- Balances are kept to the cent (util.Money) and every balance change bumps the version (optimistic locking).
+
+ALTER TABLE Accounts MODIFY (balance NUMBER(12, 2))
+/
+ALTER TABLE Accounts ADD (version NUMBER(10) DEFAULT 0 NOT NULL)
+/
@@ -0,0 +1,11 @@
+-- Transactions are typed records; the message column is only kept for rows that were recorded before these columns existed.
+
+ALTER TABLE Transactions ADD (
+	t_type VARCHAR2(10),
+	a_id NUMBER(6),
+	account_name VARCHAR2(100),
+	amount NUMBER(12, 2),
+	balance_after NUMBER(12, 2),
+	created_at TIMESTAMP DEFAULT SYSTIMESTAMP
+)
+/
@@ -0,0 +1,10 @@
+-- Every hot lookup ignores case, so index the lower-cased names instead of scanning Users and Accounts.
+
+CREATE INDEX users_lower_username_ix ON Users (LOWER(username))
+/
+CREATE INDEX accounts_lower_name_ix ON Accounts (u_id, LOWER(account_name))
+/
+
+-- Transaction history is read newest first, one page at a time (t_id < last seen id)
+CREATE INDEX transactions_user_ix ON Transactions (u_id, t_id)
+/
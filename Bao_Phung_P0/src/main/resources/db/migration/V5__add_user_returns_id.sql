@@ -0,0 +1,13 @@
+-- add_user hands back the id it generated, so registering a user doesn't need a follow-up SELECT.
+
+CREATE OR REPLACE PROCEDURE add_user(p_full_name IN VARCHAR2, p_username IN VARCHAR2, p_password IN VARCHAR2, p_is_super IN NUMBER, p_u_id OUT NUMBER) AS
+	v_taken NUMBER;
+BEGIN
+	SELECT COUNT(*) INTO v_taken FROM Users WHERE LOWER(username) = LOWER(p_username);
+	IF v_taken > 0 THEN
+		RAISE_APPLICATION_ERROR(-20001, 'the username ' || p_username || ' is already taken');
+	END IF;
+	INSERT INTO Users (u_id, full_name, username, password, is_super) VALUES (user_id_generator.nextval, p_full_name, p_username, p_password, p_is_super)
+		RETURNING u_id INTO p_u_id;
+END;
+/
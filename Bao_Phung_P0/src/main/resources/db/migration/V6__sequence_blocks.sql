@@ -0,0 +1,11 @@
+-- Account and transaction ids are handed out by util.IdAllocator in blocks: every nextval reserves [nextval, nextval + 20).
+-- The ids are widened first, since blocks leave gaps behind whenever the application restarts.
+
+ALTER TABLE Accounts MODIFY (a_id NUMBER(10))
+/
+ALTER TABLE Transactions MODIFY (t_id NUMBER(10), a_id NUMBER(10))
+/
+ALTER SEQUENCE bank_account_id_generator INCREMENT BY 20
+/
+ALTER SEQUENCE transaction_id_generator INCREMENT BY 20
+/
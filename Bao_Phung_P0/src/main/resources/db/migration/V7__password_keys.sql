@@ -0,0 +1,34 @@
+-- Every password records the cipher key it was encoded with, so the key can be rotated (see util.PasswordRekeyer) while users keep logging in.
+-- Passwords without a key were encoded with the key in key.properties.
+-- A rotation keeps the password it replaced (and its key) as well, since passwords with characters outside [a-zA-Z0-9] can't be re-encoded exactly;
+-- logging in with the previous password still works, and fixes the current one.
+
+ALTER TABLE Users ADD (password_key NUMBER(2), previous_password VARCHAR2(100), previous_key NUMBER(2))
+/
+
+-- add_user records the key as well
+CREATE OR REPLACE PROCEDURE add_user(p_full_name IN VARCHAR2, p_username IN VARCHAR2, p_password IN VARCHAR2, p_is_super IN NUMBER, p_u_id OUT NUMBER,
+		p_password_key IN NUMBER) AS
+	v_taken NUMBER;
+BEGIN
+	SELECT COUNT(*) INTO v_taken FROM Users WHERE LOWER(username) = LOWER(p_username);
+	IF v_taken > 0 THEN
+		RAISE_APPLICATION_ERROR(-20001, 'the username ' || p_username || ' is already taken');
+	END IF;
+	INSERT INTO Users (u_id, full_name, username, password, is_super, password_key)
+		VALUES (user_id_generator.nextval, p_full_name, p_username, p_password, p_is_super, p_password_key)
+		RETURNING u_id INTO p_u_id;
+END;
+/
+
+-- How far each key rotation got, committed along with every chunk of re-keyed passwords so a stopped rotation resumes where it left off
+CREATE TABLE rekey_checkpoint (
+	old_key NUMBER(2),
+	new_key NUMBER(2),
+	last_u_id NUMBER(10) DEFAULT 0,
+	rows_rekeyed NUMBER(12) DEFAULT 0,
+	started_on TIMESTAMP DEFAULT SYSTIMESTAMP,
+	finished_on TIMESTAMP,
+	CONSTRAINT rekey_checkpoint_pk PRIMARY KEY (old_key, new_key)
+)
+/
@@ -0,0 +1,18 @@
+-- Transactions the write-behind ledger (see daos.TransactionDAOWriteBehindImpl) could not insert, even one at a time, along with why.
+-- They are set aside here so the Transactions queued after them keep flowing; they can be looked into and re-inserted by hand.
+-- Journaled deposits to an account that no longer exists are parked here as well (see daos.AccountDAOImpl.depositOnce()).
+-- The columns are deliberately loose (no keys or checks), so a row that broke a constraint of Transactions still fits.
+
+CREATE TABLE transactions_dead_letter (
+	t_id NUMBER,
+	t_type VARCHAR2(4000),
+	a_id NUMBER,
+	account_name VARCHAR2(4000),
+	amount NUMBER,
+	balance_after NUMBER,
+	u_id NUMBER,
+	created_at TIMESTAMP,
+	error VARCHAR2(4000),
+	failed_on TIMESTAMP DEFAULT SYSTIMESTAMP
+)
+/
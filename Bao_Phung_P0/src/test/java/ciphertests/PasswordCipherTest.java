@@ -1,8 +1,12 @@
 package ciphertests;
 
+import java.util.Random;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import ciphers.CipherPhase1;
+import ciphers.CipherPhase2;
 import ciphers.PasswordMasker;
 
 class PasswordCipherTest {
@@ -29,5 +33,55 @@ class PasswordCipherTest {
 	void testPasswordDecryptionWithUppercase() {
 		Assertions.assertEquals("pass3WorD12", masker.decode("dsaaz MebF1 0"));
 	}
+	
+	@Test
+	void testMatchesAgainstStoredPassword() {
+		Assertions.assertTrue(masker.matches("pass3WorD12", "dsaaz MebF1 0"));
+		Assertions.assertFalse(masker.matches("pass3word12", "dsaaz MebF1 0"));
+		Assertions.assertFalse(masker.matches("pass3WorD1", "dsaaz MebF1 0"));
+		Assertions.assertFalse(masker.matches("pass3WorD12", "dsaazMebF1 0 "));
+		Assertions.assertTrue(masker.matches("", ""));
+	}
+	
+	@Test
+	void testSameAsBothPhasesForEveryKey() {
+		Random random = new Random(17);
+		for(int key = 10; key <= 30; key++) {
+			PasswordMasker keyed = new PasswordMasker(key);
+			for(int n = 0; n < 200; n++) {
+				// Mostly letters and digits, with the odd symbol or non-ASCII letter
+				char[] password = new char[random.nextInt(16)];
+				for(int i = 0; i < password.length; i++)
+					password[i] = (random.nextInt(8) == 0 ? (char) random.nextInt(0x3000) : "abcXYZ0189qrsTUV".charAt(random.nextInt(16)));
+				String plain = new String(password);
+				
+				String expected = new CipherPhase2().encode(new CipherPhase1(key).encode(plain));
+				Assertions.assertEquals(expected, keyed.encode(plain));
+				Assertions.assertTrue(keyed.matches(plain, expected));
+			}
+		}
+	}
+	
+	@Test
+	void testDecodeReversesEncode() {
+		PasswordMasker keyed = new PasswordMasker(12);
+		Assertions.assertEquals("abcdefghij0123456789", keyed.decode(keyed.encode("abcdefghij0123456789")));
+		Assertions.assertEquals("ABCDEFGHIJKLMN", keyed.decode(keyed.encode("ABCDEFGHIJKLMN")));
+	}
+	
+	@Test
+	void testRekeyMatchesEncodingWithTheNewKey() {
+		String plain = "abcXYZ0189qrsTUV";
+		for(int from = 10; from <= 30; from++) {
+			PasswordMasker oldKeyed = new PasswordMasker(from);
+			for(int to = 10; to <= 30; to++) {
+				PasswordMasker newKeyed = new PasswordMasker(to);
+				Assertions.assertEquals(newKeyed.encode(plain), oldKeyed.rekey(oldKeyed.encode(plain), newKeyed));
+			}
+		}
+		Assertions.assertEquals("", masker.rekey("", new PasswordMasker(25)));
+		Assertions.assertNull(masker.rekey("dsa!z", new PasswordMasker(25)));
+		Assertions.assertNull(masker.rekey("dsa z", new PasswordMasker(25)));
+	}
 
 }
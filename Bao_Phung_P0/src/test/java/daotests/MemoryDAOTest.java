@@ -0,0 +1,140 @@
+package daotests;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import daos.UserDAO;
+import daos.UserDAOMemoryImpl;
+import entities.Account;
+import entities.Transaction;
+import entities.User;
+import entities.UserProjection;
+import exceptions.InvalidLoginException;
+import exceptions.NoSuchUserExistsException;
+import util.Money;
+
+class MemoryDAOTest {
+	
+	private UserDAO users;
+	
+	@BeforeEach
+	void setUp() {
+		users = new UserDAOMemoryImpl(17);
+		users.createUser(new User("Bao Phung", "Nindoge", "pass3word12", true));
+	}
+	
+	@Test
+	void testUsernamesAreUniqueIgnoringCase() {
+		Assertions.assertFalse(users.createUser(new User("Someone Else", "NINDOGE", "password123", true)));
+	}
+	
+	@Test
+	void testUsernamesArePagedInOrder() {
+		users.createUser(new User("Someone Else", "Charlie", "password123"));
+		users.createUser(new User("Someone Else", "alice", "password123"));
+		users.createUser(new User("Someone Else", "Bob", "password123"));
+		
+		Assertions.assertEquals(Arrays.asList("alice", "bob"), users.getUsernames(null, 2));
+		Assertions.assertEquals(Arrays.asList("charlie", "nindoge"), users.getUsernames("bob", 2));
+		Assertions.assertTrue(users.getUsernames("nindoge", 2).isEmpty());
+	}
+	
+	@Test
+	void testLoginStoresEncodedPassword() throws InvalidLoginException {
+		User user = users.getUserByLoginInformation("nindoge", "pass3word12");
+		Assertions.assertEquals("dsaaz 6ebp1 0", user.getPassword());
+		Assertions.assertThrows(InvalidLoginException.class, () -> users.getUserByLoginInformation("nindoge", "wrongpassword"));
+	}
+	
+	@Test
+	void testInsertsReturnGeneratedIds() throws InvalidLoginException {
+		User user = new User("Someone Else", "someone", "password123");
+		Assertions.assertTrue(users.createUser(user));
+		Assertions.assertEquals(2, user.getId());
+		
+		Account account = new Account("Checkings", 50);
+		Assertions.assertTrue(users.createBankAccount(user.getId(), account));
+		Assertions.assertEquals(1, account.getId());
+		Assertions.assertEquals(account.getId(), users.getTransactionHistory(user.getId(), Integer.MAX_VALUE, 1).get(0).getAccountId());
+	}
+	
+	@Test
+	void testAccountsUseTheAccountSequence() throws NoSuchUserExistsException {
+		int id = users.getUserByUsername("nindoge").getId();
+		Assertions.assertTrue(users.createBankAccount(id, new Account("Checkings", 50)));
+		Assertions.assertTrue(users.createBankAccount(id, new Account("Savings", 0)));
+		Assertions.assertFalse(users.createBankAccount(id, new Account("checkings", 0)));
+		
+		User user = users.getUserByUsername("NinDoge");
+		Assertions.assertEquals(2, user.getNumBankAccounts());
+		Assertions.assertEquals(1, users.getAccount(id, "CHECKINGS").getId());
+		Assertions.assertEquals(2, users.getAccount(id, "savings").getId());
+	}
+	
+	@Test
+	void testRecentTransactionsAreNewestFirst() throws InvalidLoginException {
+		int id = users.getUserByLoginInformation("nindoge", "pass3word12").getId();
+		users.createBankAccount(id, new Account("Checkings", 0));
+		int checkings = users.getAccount(id, "Checkings").getId();
+		for(int i = 1; i <= 12; i++)
+			users.updateUserTransactions(id, checkings, 0, Money.ofDollars(i));
+		
+		User user = users.getUserByLoginInformation("nindoge", "pass3word12");
+		Assertions.assertEquals(10, user.getAllRecentTransactions().size());
+		Assertions.assertEquals("Deposited $12.00 to the Checkings Bank Account", user.getAllRecentTransactions().get(0).getMessage());
+	}
+	
+	@Test
+	void testTransactionHistoryPagesWithoutGapsOrRepeats() throws InvalidLoginException {
+		int id = users.getUserByLoginInformation("nindoge", "pass3word12").getId();
+		users.createBankAccount(id, new Account("Checkings", 0));
+		int checkings = users.getAccount(id, "Checkings").getId();
+		for(int i = 1; i <= 24; i++)
+			users.updateUserTransactions(id, checkings, 0, i);
+		
+		// 25 transactions in pages of 10: 10, 10, 5, and then nothing
+		int lastSeenId = Integer.MAX_VALUE, seen = 0;
+		for(int expectedSize : new int[] { 10, 10, 5, 0 }) {
+			List<Transaction> page = users.getTransactionHistory(id, lastSeenId, 10);
+			Assertions.assertEquals(expectedSize, page.size());
+			for(Transaction transaction : page) {
+				Assertions.assertTrue(transaction.getId() < lastSeenId);
+				lastSeenId = transaction.getId();
+				seen++;
+			}
+		}
+		Assertions.assertEquals(25, seen);
+	}
+	
+	@Test
+	void testProjectionsLoadTheRestLazily() throws NoSuchUserExistsException {
+		int id = users.getUserByUsername("nindoge").getId();
+		users.createBankAccount(id, new Account("Checkings", 50));
+		
+		User identity = users.getUserByUsername("nindoge", UserProjection.IDENTITY);
+		Assertions.assertTrue(identity.getSuperUserStatus());
+		Assertions.assertFalse(identity.isAccountsLoaded());
+		Assertions.assertFalse(identity.isTransactionsLoaded());
+		
+		// Accounts created after the lookup are still there, since nothing was loaded yet
+		users.createBankAccount(id, new Account("Savings", 0));
+		Assertions.assertEquals(2, identity.getNumBankAccounts());
+		Assertions.assertTrue(identity.isAccountsLoaded());
+		Assertions.assertEquals(2, identity.getAllRecentTransactions().size());
+		
+		User withAccounts = users.getUserByUsername("nindoge", UserProjection.ACCOUNTS);
+		Assertions.assertTrue(withAccounts.isAccountsLoaded());
+		Assertions.assertFalse(withAccounts.isTransactionsLoaded());
+	}
+	
+	@Test
+	void testNewUsersHaveNoPlaceholderAccounts() {
+		User user = new User("Someone Else", "someone", "password123");
+		Assertions.assertEquals(0, user.getNumBankAccounts());
+		Assertions.assertTrue(user.getAllRecentTransactions().isEmpty());
+	}
+}
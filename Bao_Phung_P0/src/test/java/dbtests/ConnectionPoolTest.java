@@ -0,0 +1,134 @@
+package dbtests;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.ConnectionPool;
+
+class ConnectionPoolTest {
+	
+	/**
+	 * A stand-in for a physical connection: it is always valid until closed, and answers the few calls the pool makes.
+	 */
+	private static Connection fakeConnection() {
+		boolean[] closed = { false };
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+			switch(method.getName()) {
+				case "close": closed[0] = true; return null;
+				case "isClosed": return closed[0];
+				case "isValid": return !closed[0];
+				case "getAutoCommit": return true;
+				case "prepareStatement": return fakeStatement(PreparedStatement.class);
+				case "prepareCall": return fakeStatement(CallableStatement.class);
+				case "hashCode": return System.identityHashCode(proxy);
+				case "equals": return proxy == args[0];
+				default: return null;
+			}
+		});
+	}
+	
+	private static Object fakeStatement(Class<?> type) {
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			switch(method.getName()) {
+				case "hashCode": return System.identityHashCode(proxy);
+				case "equals": return proxy == args[0];
+				case "isClosed": return false;
+				default: return null;
+			}
+		});
+	}
+	
+	@Test
+	void testPoolOpensMinimumConnections() throws SQLException {
+		ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::fakeConnection, 2, 4, 100, 60000, 1);
+		Assertions.assertEquals(2, pool.getTotalConnections());
+		Assertions.assertEquals(2, pool.getIdleConnections());
+		pool.close();
+	}
+	
+	@Test
+	void testClosingReturnsConnectionToPool() throws SQLException {
+		ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::fakeConnection, 1, 4, 100, 60000, 1);
+		Connection connection = pool.getConnection();
+		Assertions.assertEquals(1, pool.getActiveConnections());
+		connection.close();
+		Assertions.assertEquals(0, pool.getActiveConnections());
+		Assertions.assertTrue(connection.isClosed());
+		Assertions.assertThrows(SQLException.class, () -> connection.getAutoCommit());
+		pool.close();
+	}
+	
+	@Test
+	void testBorrowTimesOutWhenPoolIsExhausted() throws SQLException {
+		ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::fakeConnection, 0, 2, 50, 60000, 1);
+		Connection first = pool.getConnection(), second = pool.getConnection();
+		Assertions.assertThrows(SQLTimeoutException.class, () -> pool.getConnection());
+		Assertions.assertEquals(1, pool.getTimeoutCount());
+		first.close();
+		second.close();
+		Assertions.assertEquals(2, pool.getTotalConnections());
+		pool.close();
+	}
+	
+	@Test
+	void testStatementsAreReusedAcrossBorrows() throws SQLException {
+		ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::fakeConnection, 1, 1, 100, 60000, 1, 2);
+		String sql = "SELECT * FROM Users WHERE LOWER(username) = ?";
+		for(int i = 0; i < 3; i++) {
+			try(Connection connection = pool.getConnection()) {
+				PreparedStatement ps = connection.prepareStatement(sql);
+				ps.setString(1, "nindoge");
+				ps.close();
+			}
+		}
+		Assertions.assertEquals(1, pool.getStatementCacheMisses());
+		Assertions.assertEquals(2, pool.getStatementCacheHits());
+		pool.close();
+	}
+	
+	@Test
+	void testStatementLeftOpenIsCheckedInWithTheLease() throws SQLException {
+		ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::fakeConnection, 1, 1, 100, 60000, 1, 2);
+		String sql = "UPDATE Accounts SET balance = ? WHERE a_id = ?";
+		PreparedStatement leaked;
+		
+		// The query "fails" before the statement is closed
+		try(Connection connection = pool.getConnection()) {
+			leaked = connection.prepareStatement(sql);
+		}
+		Assertions.assertTrue(leaked.isClosed());
+		Assertions.assertThrows(SQLException.class, () -> leaked.setInt(1, 0));
+		
+		for(int i = 0; i < 2; i++) {
+			try(Connection connection = pool.getConnection()) {
+				connection.prepareStatement(sql).close();
+			}
+		}
+		Assertions.assertEquals(1, pool.getStatementCacheMisses());
+		Assertions.assertEquals(2, pool.getStatementCacheHits());
+		pool.close();
+	}
+	
+	@Test
+	void testLeastRecentlyUsedStatementIsEvicted() throws SQLException {
+		ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::fakeConnection, 1, 1, 100, 60000, 1, 2);
+		try(Connection connection = pool.getConnection()) {
+			connection.prepareCall("A").close();
+			connection.prepareCall("B").close();
+			connection.prepareCall("A").close();
+			connection.prepareCall("C").close();
+			connection.prepareCall("A").close();
+		}
+		Assertions.assertEquals(1, pool.getStatementCacheEvictions());
+		Assertions.assertEquals(2, pool.getStatementCacheHits());
+		pool.close();
+	}
+	
+}
@@ -0,0 +1,41 @@
+package dbtests;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.SchemaMigrator;
+
+class SchemaMigratorTest {
+
+	@Test
+	void testMigrationsAreNumberedInOrder() {
+		for(int i = 0; i < SchemaMigrator.MIGRATIONS.length; i++)
+			Assertions.assertEquals(i + 1, SchemaMigrator.getVersion(SchemaMigrator.MIGRATIONS[i]));
+		Assertions.assertEquals("typed transactions", SchemaMigrator.getDescription("V3__typed_transactions.sql"));
+	}
+
+	@Test
+	void testEveryMigrationSplitsIntoStatements() throws IOException {
+		for(String migration : SchemaMigrator.MIGRATIONS) {
+			List<String> statements = SchemaMigrator.readStatements(migration);
+			Assertions.assertFalse(statements.isEmpty(), migration);
+			for(String statement : statements) {
+				Assertions.assertFalse(statement.startsWith("--"), statement);
+				// Only PL/SQL ends with a semicolon; a plain SQL statement sent through JDBC must not.
+				Assertions.assertTrue(!statement.endsWith(";") || statement.contains("END;"), statement);
+			}
+		}
+	}
+
+	@Test
+	void testBaselineKeepsProcedureIntact() throws IOException {
+		List<String> statements = SchemaMigrator.readStatements("V1__baseline.sql");
+		Assertions.assertEquals(7, statements.size());
+		String procedure = statements.get(6);
+		Assertions.assertTrue(procedure.startsWith("CREATE OR REPLACE PROCEDURE add_user"));
+		Assertions.assertTrue(procedure.endsWith("END;"));
+	}
+}
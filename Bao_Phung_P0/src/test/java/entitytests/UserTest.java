@@ -0,0 +1,80 @@
+package entitytests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import entities.Account;
+import entities.Transaction;
+import entities.User;
+import exceptions.NoSuchBankExistsException;
+
+class UserTest {
+
+	private static User userWithAccounts() {
+		User user = new User(1, "Nin Doge", "nindoge", "password");
+		List<Account> accounts = new ArrayList<Account>();
+		accounts.add(new Account(10, "Checkings", 100, 0));
+		accounts.add(new Account(11, "Savings", 200, 0));
+		user.setNewAccounts(accounts);
+		return user;
+	}
+
+	@Test
+	void testAccountsAreFoundIgnoringCase() throws NoSuchBankExistsException {
+		User user = userWithAccounts();
+		Assertions.assertEquals(10, user.getAccount("CHECKINGS").getId());
+		Assertions.assertEquals(11, user.getAccount("savings").getId());
+		Assertions.assertTrue(user.hasAccount("cHeCkInGs"));
+		Assertions.assertFalse(user.hasAccount("Retirement"));
+		Assertions.assertThrows(NoSuchBankExistsException.class, () -> user.getAccount("Retirement"));
+	}
+
+	@Test
+	void testUpdateAndDeleteFindAccountsById() throws NoSuchBankExistsException {
+		User user = userWithAccounts();
+		user.updateAccount(new Account(11, "Savings", 250, 1));
+		Assertions.assertEquals(250, user.getAccount("Savings").getBalance());
+		Assertions.assertEquals(1, user.getAccount("Savings").getVersion());
+
+		user.deleteAccount(new Account(10, "Checkings", 0, 0));
+		Assertions.assertFalse(user.hasAccount("Checkings"));
+		Assertions.assertEquals(1, user.getNumBankAccounts());
+		Assertions.assertThrows(NoSuchBankExistsException.class, () -> user.updateAccount(new Account(10, "Checkings", 0, 0)));
+		Assertions.assertThrows(NoSuchBankExistsException.class, () -> user.deleteAccount(new Account(10, "Checkings", 0, 0)));
+	}
+
+	@Test
+	void testAllAccountsIsAReadOnlySnapshot() throws NoSuchBankExistsException {
+		User user = userWithAccounts();
+		List<Account> snapshot = user.getAllAccounts();
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> snapshot.add(new Account("Retirement", 0)));
+
+		user.addAccount(new Account(12, "Retirement", 0, 0));
+		Assertions.assertEquals(2, snapshot.size());
+		Assertions.assertEquals(3, user.getAllAccounts().size());
+		Assertions.assertEquals(12, user.getAccount("retirement").getId());
+	}
+
+	@Test
+	void testRenamedAccountIsNormalizedAgain() {
+		Account account = new Account(10, "Checkings", 0, 0);
+		account.setName("Rainy Day");
+		Assertions.assertEquals("rainy day", account.getNormalizedName());
+		Assertions.assertEquals(new Account("RAINY DAY", 0), account);
+		Assertions.assertEquals(new Account("RAINY DAY", 0).hashCode(), account.hashCode());
+	}
+
+	@Test
+	void testRecentTransactionsAreBoundedAndNewestFirst() {
+		User user = userWithAccounts();
+		for(int i = 0; i < 3 * User.RECENT_TRANSACTIONS; i++)
+			user.addTransaction(new Transaction("Transaction " + i));
+		List<Transaction> recent = user.getAllRecentTransactions();
+		Assertions.assertEquals(User.RECENT_TRANSACTIONS, recent.size());
+		Assertions.assertEquals("Transaction " + (3 * User.RECENT_TRANSACTIONS - 1), recent.get(0).getMessage());
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> recent.clear());
+	}
+}
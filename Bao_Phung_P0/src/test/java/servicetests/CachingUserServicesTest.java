@@ -0,0 +1,46 @@
+package servicetests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import daos.UserDAOMemoryImpl;
+import entities.Account;
+import entities.User;
+import services.CachingUserServices;
+import services.UserServicesImpl;
+
+class CachingUserServicesTest {
+
+	private CachingUserServices services;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		services = new CachingUserServices(new UserServicesImpl(new UserDAOMemoryImpl(17)), 10, 60000);
+		services.registerUser(new User("Bao Phung", "Nindoge", "pass3word12", true));
+		User user = services.login("nindoge", "pass3word12");
+		services.registerBankAccount(user, new Account("Checkings", 100));
+	}
+
+	@Test
+	void testRepeatedLookupsAreCached() throws Exception {
+		User first = services.getUserByUsername("Nindoge");
+		User second = services.getUserByUsername("NINDOGE");
+		Assertions.assertEquals(1, services.getCache().getMisses());
+		Assertions.assertEquals(1, services.getCache().getHits());
+
+		// Every caller gets its own copy
+		Assertions.assertNotSame(first, second);
+		first.getAccount("Checkings").setBalance(0);
+		Assertions.assertEquals(100, services.getUserByUsername("nindoge").getAccount("Checkings").getBalance());
+	}
+
+	@Test
+	void testChangesInvalidateTheUser() throws Exception {
+		User user = services.getUserByUsername("nindoge");
+		services.deposit(user, "checkings", 25);
+
+		Assertions.assertEquals(125, services.getUserByUsername("nindoge").getAccount("Checkings").getBalance());
+		Assertions.assertEquals(2, services.getCache().getMisses());
+	}
+}
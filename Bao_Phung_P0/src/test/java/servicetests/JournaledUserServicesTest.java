@@ -0,0 +1,129 @@
+package servicetests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import daos.UserDAO;
+import daos.UserDAOMemoryImpl;
+import entities.Account;
+import entities.User;
+import exceptions.InvalidWithdrawException;
+import services.JournaledUserServices;
+import services.UserServices;
+import services.UserServicesImpl;
+import util.Journal;
+
+class JournaledUserServicesTest {
+
+	@TempDir
+	Path folder;
+
+	private UserDAO users;
+	private UserServices services;
+	private User user;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		users = new UserDAOMemoryImpl(17);
+		services = new UserServicesImpl(users);
+		services.registerUser(new User("Bao Phung", "Nindoge", "pass3word12", true));
+		user = services.login("nindoge", "pass3word12");
+		user = services.registerBankAccount(user, new Account("Checkings", 100));
+	}
+
+	@Test
+	void testDepositIsAcknowledgedAndApplied() throws Exception {
+		try(JournaledUserServices journaled = new JournaledUserServices(services, users, new Journal(folder.resolve("bank.journal"), 1 << 16))) {
+			user = journaled.deposit(user, "checkings", 25);
+			user = journaled.deposit(user, "checkings", 50);
+			Assertions.assertEquals(175, user.getAccount("Checkings").getBalance());
+
+			// A withdraw waits for the deposits to reach the database, so it can use all of the money
+			user = journaled.withdraw(user, "checkings", 175);
+			Assertions.assertEquals(0, user.getAccount("Checkings").getBalance());
+			Assertions.assertThrows(InvalidWithdrawException.class, () -> journaled.withdraw(user, "checkings", 1));
+		}
+		Assertions.assertEquals(0, users.getAccount(user.getId(), "Checkings").getBalance());
+	}
+
+	@Test
+	void testUnappliedDepositsAreReplayed() throws Exception {
+		// Write a deposit to the journal as if the application died right after acknowledging it
+		Path path = folder.resolve("bank.journal");
+		JournaledUserServices crashed = new JournaledUserServices(services, users, new Journal(path, 1 << 16));
+		crashed.deposit(user, "checkings", 25);
+		crashed.close();
+		Assertions.assertEquals(125, users.getAccount(user.getId(), "Checkings").getBalance());
+
+		try(Journal journal = new Journal(path, 1 << 16)) {
+			Assertions.assertTrue(journal.getUnapplied().isEmpty());
+		}
+
+		// A record past the checkpoint is applied when the journal is opened again
+		try(Journal journal = new Journal(path, 1 << 16)) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(1);
+			out.writeInt(user.getId());
+			out.writeInt(user.getAccount("Checkings").getId());
+			out.writeLong(10);
+			journal.append(bytes.toByteArray());
+		}
+		new JournaledUserServices(services, users, new Journal(path, 1 << 16)).close();
+		Assertions.assertEquals(135, users.getAccount(user.getId(), "Checkings").getBalance());
+	}
+
+	@Test
+	void testDepositAppliedBeforeTheCheckpointIsNotCreditedTwice() throws Exception {
+		// The application died after the deposit was committed to the database, but before the journal was checkpointed
+		Path path = folder.resolve("bank.journal");
+		int accountId = user.getAccount("Checkings").getId();
+		long transactionId = users.reserveTransactionId();
+		try(Journal journal = new Journal(path, 1 << 16)) {
+			journal.append(keyedDeposit(accountId, 25, transactionId));
+		}
+		Assertions.assertTrue(users.depositBankAccountOnce(user.getId(), accountId, transactionId, 25));
+		Assertions.assertEquals(125, users.getAccount(user.getId(), "Checkings").getBalance());
+
+		new JournaledUserServices(services, users, new Journal(path, 1 << 16)).close();
+		Assertions.assertEquals(125, users.getAccount(user.getId(), "Checkings").getBalance());
+		try(Journal journal = new Journal(path, 1 << 16)) {
+			Assertions.assertTrue(journal.getUnapplied().isEmpty());
+		}
+	}
+
+	@Test
+	void testDepositToMissingAccountIsParked() throws Exception {
+		Path path = folder.resolve("bank.journal");
+		try(Journal journal = new Journal(path, 1 << 16)) {
+			journal.append(keyedDeposit(-1, 25, users.reserveTransactionId()));
+			journal.append(keyedDeposit(user.getAccount("Checkings").getId(), 10, users.reserveTransactionId()));
+		}
+
+		// The deposit that can never be applied doesn't hold up the one after it
+		JournaledUserServices journaled = new JournaledUserServices(services, users, new Journal(path, 1 << 16));
+		Assertions.assertEquals(1, journaled.getParkedCount());
+		journaled.close();
+		Assertions.assertEquals(110, users.getAccount(user.getId(), "Checkings").getBalance());
+	}
+
+	/**
+	 * Encode a deposit the way the journal stores it, along with its transaction id.
+	 */
+	private byte[] keyedDeposit(int accountId, long amount, long transactionId) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(2);
+		out.writeInt(user.getId());
+		out.writeInt(accountId);
+		out.writeLong(amount);
+		out.writeLong(transactionId);
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,126 @@
+package servicetests;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import daos.UserDAO;
+import daos.UserDAOMemoryImpl;
+import entities.Account;
+import entities.Transaction;
+import entities.TransactionType;
+import entities.User;
+import exceptions.DeletingBankAccountWithMoneyException;
+import exceptions.InvalidLoginException;
+import exceptions.InvalidWithdrawException;
+import exceptions.NoSuchBankExistsException;
+import exceptions.SameUsernameException;
+import services.UserServices;
+import services.UserServicesImpl;
+
+class UserServicesMemoryTest {
+	
+	private UserDAO users;
+	private UserServices services;
+	private User user;
+	
+	@BeforeEach
+	void setUp() throws Exception {
+		users = new UserDAOMemoryImpl(17);
+		services = new UserServicesImpl(users);
+		services.registerUser(new User("Bao Phung", "Nindoge", "pass3word12", true));
+		user = services.login("nindoge", "pass3word12");
+		user = services.registerBankAccount(user, new Account("Checkings", 100));
+	}
+	
+	@Test
+	void testDepositWritesBalanceAndTransactionTogether() throws NoSuchBankExistsException, InvalidLoginException {
+		user = services.deposit(user, "checkings", 25);
+		Assertions.assertEquals(125, user.getAccount("Checkings").getBalance());
+		
+		User reloaded = services.login("nindoge", "pass3word12");
+		Assertions.assertEquals(125, reloaded.getAccount("Checkings").getBalance());
+		Assertions.assertEquals("Deposited $0.25 to the Checkings Bank Account", reloaded.getAllRecentTransactions().get(0).getMessage());
+	}
+	
+	@Test
+	void testTransactionsAreTyped() throws NoSuchBankExistsException, InvalidWithdrawException, InvalidLoginException {
+		services.withdraw(user, "checkings", 40);
+		
+		List<Transaction> recent = services.login("nindoge", "pass3word12").getAllRecentTransactions();
+		Transaction withdraw = recent.get(0), create = recent.get(1);
+		Assertions.assertEquals(TransactionType.WITHDRAW, withdraw.getType());
+		Assertions.assertEquals(user.getAccount("Checkings").getId(), withdraw.getAccountId());
+		Assertions.assertEquals(40, withdraw.getAmount());
+		Assertions.assertEquals(60, withdraw.getBalanceAfter());
+		Assertions.assertEquals("Withdrawn $0.40 from the Checkings Bank Account", withdraw.getMessage());
+		Assertions.assertEquals(TransactionType.CREATE, create.getType());
+		Assertions.assertEquals(100, create.getBalanceAfter());
+		Assertions.assertTrue(withdraw.getTimestamp() >= create.getTimestamp());
+	}
+	
+	@Test
+	void testWithdrawMoreThanBalanceIsRejected() {
+		Assertions.assertThrows(InvalidWithdrawException.class, () -> services.withdraw(user, "Checkings", 500));
+	}
+	
+	@Test
+	void testConcurrentSessionsDoNotLoseUpdates() throws Exception {
+		// Two sessions loaded the same account; each deposit is applied to the stored balance, not the stale local copy.
+		User otherSession = services.login("nindoge", "pass3word12");
+		services.deposit(user, "Checkings", 10);
+		otherSession = services.deposit(otherSession, "Checkings", 20);
+		Assertions.assertEquals(130, otherSession.getAccount("Checkings").getBalance());
+		Assertions.assertEquals(2, otherSession.getAccount("Checkings").getVersion());
+		
+		// The first session still thinks there is 110, but the withdraw is checked against what is stored.
+		user = services.withdraw(user, "Checkings", 125);
+		Assertions.assertEquals(5, user.getAccount("Checkings").getBalance());
+	}
+	
+	@Test
+	void testStaleOptimisticUpdateIsRejected() throws Exception {
+		Account stale = users.getAccount(user.getId(), "Checkings");
+		services.deposit(user, "Checkings", 10);
+		stale.setBalance(0);
+		Assertions.assertFalse(users.updateBankAccount(user.getId(), stale));
+		Assertions.assertEquals(110, users.getAccount(user.getId(), "Checkings").getBalance());
+	}
+	
+	@Test
+	void testDuplicateAccountNameIsRejected() {
+		Assertions.assertThrows(SameUsernameException.class, () -> services.registerBankAccount(user, new Account("CHECKINGS", 0)));
+	}
+	
+	@Test
+	void testDeleteAccountById() throws Exception {
+		user = services.withdraw(user, "Checkings", 100);
+		int checkings = user.getAccount("Checkings").getId();
+		user = services.deleteBankAccount(user, "checkings");
+		
+		Assertions.assertEquals(0, user.getNumBankAccounts());
+		Assertions.assertNull(users.getAccount(user.getId(), "Checkings"));
+		Transaction deleted = services.login("nindoge", "pass3word12").getAllRecentTransactions().get(0);
+		Assertions.assertEquals(TransactionType.DELETE, deleted.getType());
+		Assertions.assertEquals(checkings, deleted.getAccountId());
+		
+		// The name is free again, and the new account gets a new id
+		user = services.registerBankAccount(user, new Account("Checkings", 0));
+		Assertions.assertNotEquals(checkings, user.getAccount("Checkings").getId());
+	}
+	
+	@Test
+	void testDeleteFromStaleCopyKeepsMoneyDepositedSince() throws Exception {
+		user = services.withdraw(user, "Checkings", 100);
+		
+		// Another session deposits into the account after this one saw it empty
+		services.deposit(services.login("nindoge", "pass3word12"), "Checkings", 25);
+		User stale = user;
+		Assertions.assertThrows(DeletingBankAccountWithMoneyException.class, () -> services.deleteBankAccount(stale, "Checkings"));
+		Assertions.assertEquals(25, users.getAccount(user.getId(), "Checkings").getBalance());
+		Assertions.assertEquals(1, user.getNumBankAccounts());
+	}
+	
+}
@@ -0,0 +1,82 @@
+package servicetests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import daos.UserDAO;
+import daos.UserDAOMemoryImpl;
+import entities.User;
+import exceptions.InvalidLoginException;
+import exceptions.NoSuchUserExistsException;
+import services.UserServicesImpl;
+import services.UsernameFilteredUserServices;
+
+class UsernameFilteredUserServicesTest {
+
+	private UserDAO users;
+	private UsernameFilteredUserServices services;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		users = new UserDAOMemoryImpl(17);
+		users.createUser(new User("Bao Phung", "Nindoge", "pass3word12", true));
+		services = new UsernameFilteredUserServices(new UserServicesImpl(users), users, 100, 0.01, true, 0);
+	}
+
+	@Test
+	void testExistingUsersAreLoaded() throws Exception {
+		Assertions.assertEquals("Nindoge", services.getUserByUsername("NINDOGE").getUsername());
+		Assertions.assertEquals(0, services.getRejectedCount());
+	}
+
+	@Test
+	void testMissingUsersAreRejectedWithoutAQuery() {
+		Assertions.assertThrows(NoSuchUserExistsException.class, () -> services.getUserByUsername("nobody"));
+		Assertions.assertThrows(InvalidLoginException.class, () -> services.login("nobody", "pass3word12"));
+		Assertions.assertEquals(2, services.getRejectedCount());
+	}
+
+	@Test
+	void testRegisteredAndDeletedUsers() throws Exception {
+		Assertions.assertTrue(services.registerUser(new User("Some One", "someone", "pass3word12", true)));
+		User someone = services.getUserByUsername("someone");
+
+		// Deleted users are still in the filter, so the negative cache answers for them
+		services.deleteUser(someone);
+		Assertions.assertThrows(NoSuchUserExistsException.class, () -> services.getUserByUsername("someone"));
+		Assertions.assertEquals(1, services.getRejectedCount());
+
+		// Registering the name again makes it available right away
+		Assertions.assertTrue(services.registerUser(new User("Some One", "someone", "pass3word12", true)));
+		Assertions.assertEquals("someone", services.getUserByUsername("someone").getUsername());
+	}
+
+	@Test
+	void testUsersRegisteredElsewhereAreConfirmedBeforeRejecting() throws Exception {
+		services = new UsernameFilteredUserServices(new UserServicesImpl(users), users, 100, 0.01, false, 0);
+		
+		// Another instance (or a DBA) adds a user the filter has never seen
+		users.createUser(new User("Some One", "someone", "pass3word12", true));
+		Assertions.assertEquals("someone", services.login("someone", "pass3word12").getUsername());
+		Assertions.assertEquals("someone", services.getUserByUsername("SOMEONE").getUsername());
+		Assertions.assertEquals(1, services.getStaleMissCount());
+		Assertions.assertTrue(services.getFilter().mightContain("someone"));
+		
+		// A username that really is missing is still remembered once it was looked up
+		Assertions.assertThrows(NoSuchUserExistsException.class, () -> services.getUserByUsername("nobody"));
+		Assertions.assertThrows(InvalidLoginException.class, () -> services.login("nobody", "pass3word12"));
+		Assertions.assertEquals(1, services.getRejectedCount());
+	}
+	
+	@Test
+	void testReloadPagesThroughEveryUsername() throws Exception {
+		for(int i = 0; i < 2500; i++)
+			users.createUser(new User("User", "user" + i, "pass3word12", true));
+		Assertions.assertTrue(services.reload());
+		Assertions.assertTrue(services.getFilter().getExpectedInsertions() > 2500);
+		Assertions.assertFalse(services.getFilter().isOverCapacity());
+		for(int i = 0; i < 2500; i += 100)
+			Assertions.assertEquals("user" + i, services.getUserByUsername("user" + i).getUsername());
+	}
+}
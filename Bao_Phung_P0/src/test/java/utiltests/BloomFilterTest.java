@@ -0,0 +1,50 @@
+package utiltests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.BloomFilter;
+
+class BloomFilterTest {
+
+	@Test
+	void testNoFalseNegatives() {
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		for(int i = 0; i < 1000; i++)
+			filter.put("user" + i);
+		for(int i = 0; i < 1000; i++)
+			Assertions.assertTrue(filter.mightContain("user" + i));
+		Assertions.assertFalse(filter.isOverCapacity());
+	}
+
+	@Test
+	void testFalsePositiveRateIsNearTheTarget() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for(int i = 0; i < 10000; i++)
+			filter.put("user" + i);
+
+		int falsePositives = 0;
+		for(int i = 0; i < 100000; i++)
+			if(filter.mightContain("someone" + i))
+				falsePositives++;
+		Assertions.assertTrue(falsePositives < 2000, "false positives: " + falsePositives);
+		Assertions.assertEquals(0.01, filter.getCurrentFalsePositiveRate(), 0.005);
+	}
+
+	@Test
+	void testSizing() {
+		// About 9.6 bits and 7 hash functions per String for a 1% false positive rate
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		Assertions.assertTrue(filter.getNumBits() >= 9586);
+		Assertions.assertEquals(7, filter.getNumHashes());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new BloomFilter(1000, 1.5));
+	}
+
+	@Test
+	void testPutReportsChanges() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		Assertions.assertTrue(filter.put("nindoge"));
+		Assertions.assertFalse(filter.put("nindoge"));
+		Assertions.assertEquals(1, filter.getInsertions());
+	}
+}
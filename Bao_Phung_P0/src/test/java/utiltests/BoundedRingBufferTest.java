@@ -0,0 +1,83 @@
+package utiltests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.BoundedRingBuffer;
+
+class BoundedRingBufferTest {
+
+	@Test
+	void testCapacityIsRoundedUpToAPowerOfTwo() {
+		Assertions.assertEquals(8, new BoundedRingBuffer<Integer>(5).getCapacity());
+		Assertions.assertEquals(8, new BoundedRingBuffer<Integer>(8).getCapacity());
+		Assertions.assertEquals(1, new BoundedRingBuffer<Integer>(1).getCapacity());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new BoundedRingBuffer<Integer>(0));
+	}
+
+	@Test
+	void testOfferFailsWhenFull() {
+		BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<Integer>(4);
+		for(int i = 0; i < 4; i++)
+			Assertions.assertTrue(ring.offer(i));
+		Assertions.assertFalse(ring.offer(4));
+		Assertions.assertEquals(4, ring.size());
+
+		// Freeing up a slot makes room for exactly one more, and the order is kept
+		Assertions.assertEquals(0, ring.poll());
+		Assertions.assertTrue(ring.offer(4));
+		List<Integer> drained = new ArrayList<Integer>();
+		Assertions.assertEquals(3, ring.drainTo(drained, 3));
+		Assertions.assertEquals(Arrays.asList(1, 2, 3), drained);
+		Assertions.assertEquals(4, ring.poll());
+		Assertions.assertNull(ring.poll());
+		Assertions.assertTrue(ring.isEmpty());
+	}
+
+	@Test
+	void testManyProducersOneConsumer() throws Exception {
+		BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<Integer>(64);
+		int producers = 4, perProducer = 10000;
+		ExecutorService pool = Executors.newFixedThreadPool(producers);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for(int p = 0; p < producers; p++) {
+			int first = p * perProducer;
+			futures.add(pool.submit(() -> {
+				for(int i = first; i < first + perProducer; i++)
+					while(!ring.offer(i))
+						Thread.yield();
+			}));
+		}
+
+		// Every element comes out exactly once, and each producer's elements come out in the order they went in
+		boolean[] seen = new boolean[producers * perProducer];
+		int[] lastOfProducer = new int[producers];
+		Arrays.fill(lastOfProducer, -1);
+		int received = 0;
+		while(received < seen.length) {
+			Integer element = ring.poll();
+			if(element == null) {
+				Thread.yield();
+				continue;
+			}
+			Assertions.assertFalse(seen[element]);
+			seen[element] = true;
+			Assertions.assertTrue(element > lastOfProducer[element / perProducer]);
+			lastOfProducer[element / perProducer] = element;
+			received++;
+		}
+		for(Future<?> future : futures)
+			future.get();
+		pool.shutdown();
+		Assertions.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		Assertions.assertTrue(ring.isEmpty());
+	}
+}
@@ -0,0 +1,59 @@
+package utiltests;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.IdAllocator;
+
+class IdAllocatorTest {
+
+	// Behaves like a sequence created with INCREMENT BY blockSize
+	private static IdAllocator.BlockSource sequence(int blockSize) {
+		AtomicLong value = new AtomicLong(1 - blockSize);
+		return () -> value.addAndGet(blockSize);
+	}
+
+	@Test
+	void testIdsComeFromOneBlockAtATime() throws Exception {
+		IdAllocator allocator = new IdAllocator(sequence(20), 20);
+		Assertions.assertEquals(0, allocator.getBlocksReserved());
+		for(long expected = 1; expected <= 45; expected++)
+			Assertions.assertEquals(expected, allocator.nextId());
+		Assertions.assertEquals(3, allocator.getBlocksReserved());
+	}
+
+	@Test
+	void testIdsAreUniqueAcrossThreads() throws Exception {
+		IdAllocator allocator = new IdAllocator(sequence(20), 20);
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		Future<?>[] workers = new Future<?>[8];
+		for(int i = 0; i < workers.length; i++) {
+			workers[i] = pool.submit(() -> {
+				for(int j = 0; j < 1000; j++)
+					Assertions.assertTrue(ids.add(allocator.nextId()));
+				return null;
+			});
+		}
+		for(Future<?> worker : workers)
+			worker.get();
+		pool.shutdown();
+		Assertions.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+		Assertions.assertEquals(8000, ids.size());
+		Assertions.assertEquals(8000 / 20, allocator.getBlocksReserved());
+	}
+
+	@Test
+	void testInvalidBlockSize() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new IdAllocator(sequence(1), 0));
+	}
+}
@@ -0,0 +1,109 @@
+package utiltests;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import util.Journal;
+
+class JournalTest {
+
+	@TempDir
+	Path folder;
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testUnappliedRecordsAreReplayed() throws Exception {
+		Path path = folder.resolve("bank.journal");
+		try(Journal journal = new Journal(path, 4096)) {
+			Assertions.assertEquals(1, journal.append(bytes("first")));
+			Assertions.assertEquals(2, journal.append(bytes("second")));
+			Assertions.assertEquals(3, journal.append(bytes("third")));
+			journal.checkpoint(1);
+		}
+
+		try(Journal journal = new Journal(path, 4096)) {
+			List<Journal.Record> unapplied = journal.getUnapplied();
+			Assertions.assertEquals(2, unapplied.size());
+			Assertions.assertEquals(2, unapplied.get(0).getSequence());
+			Assertions.assertEquals("second", new String(unapplied.get(0).getPayload(), StandardCharsets.UTF_8));
+			Assertions.assertEquals("third", new String(unapplied.get(1).getPayload(), StandardCharsets.UTF_8));
+
+			// New records carry on from the last sequence
+			Assertions.assertEquals(4, journal.append(bytes("fourth")));
+		}
+	}
+
+	@Test
+	void testTornRecordEndsTheJournal() throws Exception {
+		Path path = folder.resolve("bank.journal");
+		try(Journal journal = new Journal(path, 4096)) {
+			journal.append(bytes("kept"));
+			journal.append(bytes("torn"));
+		}
+
+		// Flip a byte inside the second record's payload: 64 byte header, then 16 + 4 bytes for the first record, then 16 for the second's frame
+		try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.seek(64 + 20 + 16);
+			file.write('X');
+		}
+
+		try(Journal journal = new Journal(path, 4096)) {
+			Assertions.assertEquals(1, journal.getUnapplied().size());
+			Assertions.assertEquals(1, journal.getUnapplied().get(0).getSequence());
+		}
+	}
+
+	@Test
+	void testStartsOverOnceEverythingIsApplied() throws Exception {
+		Path path = folder.resolve("bank.journal");
+		try(Journal journal = new Journal(path, 256)) {
+			// Every record takes 16 + 32 bytes, so only 4 fit after the header
+			byte[] payload = new byte[32];
+			for(int i = 1; i <= 4; i++)
+				journal.append(payload);
+			journal.checkpoint(4);
+			Assertions.assertEquals(5, journal.append(payload));
+		}
+
+		// The old records left behind the new one are not mistaken for part of the journal
+		try(Journal journal = new Journal(path, 256)) {
+			Assertions.assertEquals(1, journal.getUnapplied().size());
+			Assertions.assertEquals(5, journal.getUnapplied().get(0).getSequence());
+		}
+	}
+
+	@Test
+	void testConcurrentAppendsShareForces() throws Exception {
+		try(Journal journal = new Journal(folder.resolve("bank.journal"), 1 << 20)) {
+			ExecutorService pool = Executors.newFixedThreadPool(8);
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int i = 0; i < 8; i++)
+				futures.add(pool.submit(() -> {
+					for(int j = 0; j < 50; j++)
+						journal.append(bytes("deposit"));
+					return null;
+				}));
+			for(Future<?> future : futures)
+				future.get();
+			pool.shutdown();
+			Assertions.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+			Assertions.assertEquals(400, journal.getLastSequence());
+			Assertions.assertTrue(journal.getSyncCount() <= 400);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package utiltests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.LatencyHistogram;
+
+class LatencyHistogramTest {
+
+	@Test
+	void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram(1000000, 3);
+		for(int i = 1; i <= 100; i++)
+			histogram.record(i);
+		Assertions.assertEquals(100, histogram.getTotalCount());
+		Assertions.assertEquals(50, histogram.getValueAtPercentile(50));
+		Assertions.assertEquals(99, histogram.getValueAtPercentile(99));
+		Assertions.assertEquals(100, histogram.getValueAtPercentile(100));
+		Assertions.assertEquals(50.5, histogram.getMean(), 0.0001);
+		Assertions.assertEquals(100, histogram.getMaxValue());
+	}
+
+	@Test
+	void testLargeValuesKeepTheirSignificantDigits() {
+		LatencyHistogram histogram = new LatencyHistogram(3600L * 1000000000L, 3);
+		List<Long> values = new ArrayList<Long>();
+		for(long value = 1; value < 3600L * 1000000000L; value = value * 3 + 7) {
+			values.add(value);
+			histogram.record(value);
+		}
+
+		// Every value is reported to within 0.1% of itself
+		for(int i = 0; i < values.size(); i++) {
+			long reported = histogram.getValueAtPercentile(100.0 * (i + 1) / values.size());
+			Assertions.assertTrue(reported >= values.get(i) && reported <= values.get(i) + values.get(i) / 1000, values.get(i) + " was reported as " + reported);
+		}
+	}
+
+	@Test
+	void testAddCombinesHistograms() {
+		LatencyHistogram first = new LatencyHistogram(1000000, 3), second = new LatencyHistogram(1000000, 3);
+		for(int i = 1; i <= 50; i++) {
+			first.record(i);
+			second.record(i + 50);
+		}
+		first.add(second);
+		Assertions.assertEquals(100, first.getTotalCount());
+		Assertions.assertEquals(90, first.getValueAtPercentile(90));
+		Assertions.assertEquals(100, first.getMaxValue());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> first.add(new LatencyHistogram(1000, 3)));
+	}
+
+	@Test
+	void testOutOfRangeValuesAndReset() {
+		LatencyHistogram histogram = new LatencyHistogram(1000, 2);
+		histogram.record(-5);
+		histogram.record(5000);
+		Assertions.assertEquals(0, histogram.getValueAtPercentile(50));
+		Assertions.assertEquals(1000, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		Assertions.assertEquals(0, histogram.getTotalCount());
+		Assertions.assertEquals(0, histogram.getValueAtPercentile(99));
+		Assertions.assertEquals(0, histogram.getMean(), 0);
+	}
+}
@@ -0,0 +1,52 @@
+package utiltests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.LruCache;
+
+class LruCacheTest {
+
+	@Test
+	void testLeastRecentlyUsedIsEvicted() {
+		// A single segment, so the order is exact
+		LruCache<String, Integer> cache = new LruCache<String, Integer>(1, 60000);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		Assertions.assertNull(cache.get("a"));
+		Assertions.assertEquals(2, cache.get("b"));
+		Assertions.assertEquals(1, cache.getEvictions());
+		Assertions.assertEquals(1, cache.getHits());
+		Assertions.assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	void testSizeIsBounded() {
+		LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(100, 60000);
+		for(int i = 0; i < 1000; i++)
+			cache.put(i, i);
+		Assertions.assertTrue(cache.size() <= 100);
+		Assertions.assertEquals(1000 - cache.size(), cache.getEvictions());
+	}
+
+	@Test
+	void testEntriesExpire() throws InterruptedException {
+		LruCache<String, Integer> cache = new LruCache<String, Integer>(10, 20);
+		cache.put("a", 1);
+		Assertions.assertEquals(1, cache.get("a"));
+		Thread.sleep(60);
+		Assertions.assertNull(cache.get("a"));
+		Assertions.assertEquals(1, cache.getExpirations());
+	}
+
+	@Test
+	void testStaleLoadsAreDropped() {
+		LruCache<String, Integer> cache = new LruCache<String, Integer>(10, 60000);
+		long generation = cache.getGeneration();
+		cache.invalidate("a");
+		Assertions.assertFalse(cache.put("a", 1, generation));
+		Assertions.assertNull(cache.get("a"));
+		Assertions.assertTrue(cache.put("a", 2, cache.getGeneration()));
+		Assertions.assertEquals(2, cache.get("a"));
+	}
+}
@@ -0,0 +1,89 @@
+package utiltests;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.Gauges;
+import util.Metrics;
+import util.OperationMetrics;
+
+class MetricsTest {
+
+	public interface Ledger {
+		int post(int amount);
+		int postTwice(int amount);
+	}
+
+	/**
+	 * A ledger that rejects negative amounts by throwing, and reports (without throwing) an error for amounts of 0.
+	 */
+	private static class ThrowingLedger implements Ledger {
+		Ledger inner = this;
+
+		@Override
+		public int post(int amount) {
+			if(amount < 0)
+				throw new IllegalArgumentException("negative");
+			if(amount == 0)
+				Metrics.recordError();
+			return amount;
+		}
+
+		@Override
+		public int postTwice(int amount) {
+			return inner.post(amount) + inner.post(1);
+		}
+	}
+
+	@Test
+	void testCallsAndErrorsAreCounted() {
+		Ledger ledger = Metrics.instrument(Ledger.class, new ThrowingLedger(), "MetricsTestCounts");
+		Assertions.assertEquals(5, ledger.post(5));
+		Assertions.assertEquals(0, ledger.post(0));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ledger.post(-1));
+
+		OperationMetrics post = Metrics.operation("MetricsTestCounts", "post");
+		Assertions.assertEquals(3, post.getCalls());
+		Assertions.assertEquals(2, post.getErrors());
+		Assertions.assertEquals(3, post.getLatency().getTotalCount());
+		Assertions.assertTrue(post.getMaxMicros() >= post.getP50Micros());
+	}
+
+	@Test
+	void testInnerErrorsCountAgainstTheOuterCall() {
+		ThrowingLedger target = new ThrowingLedger();
+		Ledger ledger = Metrics.instrument(Ledger.class, target, "MetricsTestOuter");
+		target.inner = Metrics.instrument(Ledger.class, target, "MetricsTestInner");
+
+		ledger.postTwice(3);
+		ledger.postTwice(0);
+		Assertions.assertEquals(2, Metrics.operation("MetricsTestOuter", "postTwice").getCalls());
+		Assertions.assertEquals(1, Metrics.operation("MetricsTestOuter", "postTwice").getErrors());
+		Assertions.assertEquals(4, Metrics.operation("MetricsTestInner", "post").getCalls());
+		Assertions.assertEquals(1, Metrics.operation("MetricsTestInner", "post").getErrors());
+
+		// A later call on the same thread starts without the earlier failure
+		ledger.post(2);
+		Assertions.assertEquals(0, Metrics.operation("MetricsTestOuter", "post").getErrors());
+	}
+
+	@Test
+	void testPublishedOverJmx() throws Exception {
+		Ledger ledger = Metrics.instrument(Ledger.class, new ThrowingLedger(), "MetricsTestJmx");
+		ledger.post(7);
+		AtomicInteger queued = new AtomicInteger(42);
+		Metrics.register(new Gauges("MetricsTestGauges").add("Queued", queued::get));
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Assertions.assertEquals(1L, server.getAttribute(new ObjectName("bank:type=Operation,layer=MetricsTestJmx,name=post"), "Calls"));
+		Assertions.assertEquals(42, server.getAttribute(new ObjectName("bank:type=Gauges,name=MetricsTestGauges"), "Queued"));
+		queued.set(43);
+		Assertions.assertEquals(43, server.getAttribute(new ObjectName("bank:type=Gauges,name=MetricsTestGauges"), "Queued"));
+	}
+}
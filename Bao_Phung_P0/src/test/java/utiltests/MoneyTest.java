@@ -0,0 +1,34 @@
+package utiltests;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.Money;
+
+class MoneyTest {
+
+	@Test
+	void testParseRoundsToCents() {
+		Assertions.assertEquals(1200, Money.parse("12"));
+		Assertions.assertEquals(1250, Money.parse("12.5"));
+		Assertions.assertEquals(1235, Money.parse("12.345"));
+		Assertions.assertEquals(30, Money.parse("0.1") + Money.parse("0.2"));
+		Assertions.assertThrows(NumberFormatException.class, () -> Money.parse("twelve"));
+	}
+
+	@Test
+	void testFormat() {
+		Assertions.assertEquals("12.34", Money.format(1234));
+		Assertions.assertEquals("0.05", Money.format(5));
+		Assertions.assertEquals("-1.50", Money.format(-150));
+	}
+
+	@Test
+	void testBigDecimalRoundTrip() {
+		Assertions.assertEquals(new BigDecimal("12.34"), Money.toBigDecimal(1234));
+		Assertions.assertEquals(1234, Money.fromBigDecimal(new BigDecimal("12.34")));
+		Assertions.assertEquals(0, Money.fromBigDecimal(null));
+	}
+}
@@ -0,0 +1,37 @@
+package utiltests;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import ciphers.PasswordMasker;
+import util.PasswordRekeyer.Row;
+
+class PasswordRekeyerTest {
+
+	@Test
+	void testTwoRotationsKeepTheExactPassword() {
+		String plain = "pa$$word12";
+		PasswordMasker first = new PasswordMasker(12), second = new PasswordMasker(17), third = new PasswordMasker(25);
+
+		// The first rotation (from the key in key.properties) keeps the password as it was set
+		Row stored = new Row(1, first.encode(plain), null, null, null);
+		String rekeyed = stored.rekey(first, second);
+		Assertions.assertEquals(first.encode(plain), stored.getPreviousPassword());
+		Assertions.assertEquals(12, stored.getPreviousKey(12));
+
+		// The second rotation must not replace it with the inexact one
+		stored = new Row(1, rekeyed, 17, stored.getPreviousPassword(), stored.getPreviousKey(12));
+		stored.rekey(first, third);
+		Assertions.assertEquals(first.encode(plain), stored.getPreviousPassword());
+		Assertions.assertEquals(12, stored.getPreviousKey(12));
+		Assertions.assertTrue(new PasswordMasker(stored.getPreviousKey(12)).matches(plain, stored.getPreviousPassword()));
+	}
+
+	@Test
+	void testExactPasswordIsRekeyed() {
+		PasswordMasker first = new PasswordMasker(12), second = new PasswordMasker(17);
+		Row stored = new Row(1, first.encode("pass3word12"), 12, null, null);
+		Assertions.assertTrue(second.matches("pass3word12", stored.rekey(first, second)));
+		Assertions.assertNull(new Row(2, "dsa!z", null, null, null).rekey(first, second));
+	}
+}
@@ -0,0 +1,51 @@
+package utiltests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import util.RecentBuffer;
+
+class RecentBufferTest {
+
+	@Test
+	void testNewestFirstAndOldestDropped() {
+		RecentBuffer<Integer> recent = new RecentBuffer<Integer>(3);
+		for(int i = 1; i <= 5; i++)
+			recent.push(i);
+		Assertions.assertEquals(3, recent.size());
+		Assertions.assertEquals(Arrays.asList(5, 4, 3), new ArrayList<Integer>(recent));
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> recent.get(3));
+	}
+
+	@Test
+	void testResetKeepsTheNewest() {
+		RecentBuffer<Integer> recent = new RecentBuffer<Integer>(3);
+		recent.push(42);
+		recent.reset(Arrays.asList(9, 8, 7, 6));
+		Assertions.assertEquals(Arrays.asList(9, 8, 7), new ArrayList<Integer>(recent));
+
+		// Resetting a ring with a view of itself keeps it as is
+		recent.reset(recent);
+		Assertions.assertEquals(Arrays.asList(9, 8, 7), new ArrayList<Integer>(recent));
+	}
+
+	@Test
+	void testCopyIsIndependent() {
+		RecentBuffer<Integer> recent = new RecentBuffer<Integer>(2);
+		recent.push(1);
+		RecentBuffer<Integer> copy = new RecentBuffer<Integer>(recent);
+		recent.push(2);
+		Assertions.assertEquals(Arrays.asList(1), new ArrayList<Integer>(copy));
+		Assertions.assertEquals(Arrays.asList(2, 1), new ArrayList<Integer>(recent));
+	}
+
+	@Test
+	void testIsReadOnly() {
+		List<Integer> recent = new RecentBuffer<Integer>(2);
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> recent.add(1));
+	}
+}